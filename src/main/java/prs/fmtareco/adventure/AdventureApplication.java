@@ -2,10 +2,12 @@ package prs.fmtareco.adventure;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 
 @SpringBootApplication
 @EnableAspectJAutoProxy
+@ConfigurationPropertiesScan
 public class AdventureApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,37 @@
+package prs.fmtareco.adventure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * settings of the games (adventure.gameplay.*)
+ *
+ * @param cacheWeight - maximum (approximate) heap size of the compiled books kept in memory
+ * @param storeEnabled - keeps the compiled books on memory mapped files (off heap, kept across restarts)
+ * @param storeDirectory - directory of the compiled book files
+ * @param writeBehind - keeps the active games in memory, written to the database by periodic flushes
+ * @param flushInterval - time between the flushes of the changed games
+ * @param flushBatchSize - maximum number of games per JDBC batch
+ * @param maxActiveGames - number of games kept in memory above which the unchanged ones are dropped
+ * @param journalDirectory - directory of the journal of the moves not yet flushed
+ * @param maxBatchMoves - maximum number of options of a multi-move request
+ * @param snapshotMoves - moves between the writes of a game row, without the write-behind store
+ *                      (the moves are always logged, and a finished game is written at once)
+ */
+@ConfigurationProperties(prefix = "adventure.gameplay")
+public record GameplayProperties(
+        @DefaultValue("64MB") DataSize cacheWeight,
+        @DefaultValue("false") boolean storeEnabled,
+        @DefaultValue("compiled-books") Path storeDirectory,
+        @DefaultValue("false") boolean writeBehind,
+        @DefaultValue("1s") Duration flushInterval,
+        @DefaultValue("500") int flushBatchSize,
+        @DefaultValue("100000") int maxActiveGames,
+        @DefaultValue("game-journal") Path journalDirectory,
+        @DefaultValue("500") int maxBatchMoves,
+        @DefaultValue("20") int snapshotMoves
+) {}
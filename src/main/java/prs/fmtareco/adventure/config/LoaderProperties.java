@@ -0,0 +1,33 @@
+package prs.fmtareco.adventure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * settings of the books loads (adventure.loader.*)
+ *
+ * @param bulkCopy - loads the books files with the PostgreSQL COPY (instead of JPA batches)
+ * @param batchSize - number of books loaded per bulk transaction (startup loads and bulk imports)
+ * @param background - loads the books files once the application is ready, in the background
+ *                     (the readiness reports OUT_OF_SERVICE until done)
+ * @param parallelism - number of books files parsed at once (0 = number of processors)
+ * @param watchDirectory - directory whose books files are loaded as they are added or changed (none = no watch)
+ * @param watchDebounce - time without changes to a file before it's loaded
+ * @param streamThreshold - size above which a books file is read as a stream (StreamingBookLoader)
+ * @param streamChunkSize - number of sections of a streamed book copied at once
+ */
+@ConfigurationProperties(prefix = "adventure.loader")
+public record LoaderProperties(
+        @DefaultValue("false") boolean bulkCopy,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("true") boolean background,
+        @DefaultValue("0") int parallelism,
+        Path watchDirectory,
+        @DefaultValue("2s") Duration watchDebounce,
+        @DefaultValue("32MB") DataSize streamThreshold,
+        @DefaultValue("1000") int streamChunkSize
+) {}
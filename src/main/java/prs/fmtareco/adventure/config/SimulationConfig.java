@@ -0,0 +1,47 @@
+package prs.fmtareco.adventure.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class SimulationConfig {
+
+    /**
+     * dedicated pool for the parallel book simulations,
+     * to avoid competing with the common pool users
+     *
+     * @param props - simulation settings
+     * @return ForkJoinPool instance
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool simulationPool(SimulationProperties props) {
+        int parallelism = props.parallelism() > 0
+                ? props.parallelism()
+                : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * bounded executor of the asynchronous validation jobs, keeping the
+     * simulations away from the request threads
+     * A job submitted while all threads are busy and the queue is full is rejected
+     *
+     * @param props - simulation settings
+     * @return ThreadPoolExecutor instance
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor validationExecutor(SimulationProperties props) {
+        return new ThreadPoolExecutor(
+                props.jobThreads(),
+                props.jobThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(props.jobQueueSize()),
+                Thread.ofPlatform().name("validation-", 1).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
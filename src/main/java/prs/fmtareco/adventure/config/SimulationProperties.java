@@ -0,0 +1,41 @@
+package prs.fmtareco.adventure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * settings of the book simulations (adventure.simulation.*)
+ *
+ * @param healthCap - maximum health tracked by the health aware exploration
+ * @param parallelism - number of threads of the parallel simulation pool (0 = available processors)
+ * @param splitDepth - path length up to which the parallel simulation splits into tasks
+ * @param maxPaths - number of paths after which the parallel simulation stops
+ * @param parallelTimeBudget - default (and maximum) duration of a parallel simulation request
+ * @param parallelJobTimeBudget - maximum duration of a parallel simulation job
+ * @param maxSamples - maximum number of random games of a sampling
+ * @param sampleTimeBudget - default (and maximum) duration of a sampling
+ * @param cacheSize - maximum number of books w/ cached simulation results
+ * @param jobThreads - number of threads running the asynchronous validation jobs
+ * @param jobQueueSize - maximum number of validation jobs waiting for a thread
+ * @param jobRetention - how long a finished validation job can be polled
+ * @param batchConcurrency - books simulated at once by the catalog validation (0 = available processors),
+ *                           at most half of the connection pool
+ */
+@ConfigurationProperties(prefix = "adventure.simulation")
+public record SimulationProperties(
+        @DefaultValue("100") int healthCap,
+        @DefaultValue("0") int parallelism,
+        @DefaultValue("12") int splitDepth,
+        @DefaultValue("100000000") long maxPaths,
+        @DefaultValue("2s") Duration parallelTimeBudget,
+        @DefaultValue("1m") Duration parallelJobTimeBudget,
+        @DefaultValue("10000000") long maxSamples,
+        @DefaultValue("2s") Duration sampleTimeBudget,
+        @DefaultValue("1000") int cacheSize,
+        @DefaultValue("2") int jobThreads,
+        @DefaultValue("16") int jobQueueSize,
+        @DefaultValue("10m") Duration jobRetention,
+        @DefaultValue("0") int batchConcurrency
+) {}
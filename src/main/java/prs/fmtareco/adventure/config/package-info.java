@@ -0,0 +1,4 @@
+@NullMarked
+package prs.fmtareco.adventure.config;
+
+import org.jspecify.annotations.NullMarked;
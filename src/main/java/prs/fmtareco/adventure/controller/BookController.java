@@ -7,11 +7,16 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import prs.fmtareco.adventure.dtos.*;
+import prs.fmtareco.adventure.service.BookImportService;
 import prs.fmtareco.adventure.service.BookService;
+import prs.fmtareco.adventure.service.CatalogValidationService;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -21,9 +26,13 @@ import java.util.Optional;
 public class BookController {
 
     private final BookService bookService;
+    private final CatalogValidationService catalogValidationService;
+    private final BookImportService bookImportService;
 
-    public BookController(BookService svc) {
+    public BookController(BookService svc, CatalogValidationService catalogSvc, BookImportService importSvc) {
         this.bookService = svc;
+        this.catalogValidationService = catalogSvc;
+        this.bookImportService = importSvc;
     }
 
     /**
@@ -37,6 +46,24 @@ public class BookController {
         return new ResponseEntity<>(newBook, HttpStatus.CREATED);
     }
 
+    /**
+     * POST /api/books/bulk
+     * creates the books of the body (BookRequest lines, NDJSON, or a JSON array),
+     * parsing them one at a time and saving them in batches,
+     * streaming the result of each book as a json line (NDJSON)
+     * @param body - request body
+     * @return stream of BookLoadResult lines
+     */
+    @PostMapping(value = "/bulk",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> importBooks(InputStream body) {
+        StreamingResponseBody results = out -> bookImportService.importBooks(body, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results);
+    }
+
     /**
      * GET - /api/books/{id}
      * fetches a single book details
@@ -60,6 +87,20 @@ public class BookController {
         return ResponseEntity.ok(bookService.getSectionDetails(bookId, sectionId));
     }
 
+    /**
+     * GET /api/books/validate-all
+     * validates every book of the catalog, streaming each BookSimulation
+     * as a json line (NDJSON) as soon as it is done
+     * @return stream of BookSimulation lines
+     */
+    @GetMapping(value = "/validate-all", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> validateAllBooks() {
+        StreamingResponseBody body = catalogValidationService::validateAll;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     /**
      * GET /api/books/{bookId}/validate
      * executes a series of simulated games on the book, traversing all possible paths
@@ -72,6 +113,78 @@ public class BookController {
         return ResponseEntity.ok(bookService.simulateBookPaths(bookId));
     }
 
+    /**
+     * GET /api/books/{bookId}/analysis
+     * analyses the book sections graph, reporting the cycles, the unreachable sections,
+     * the dead ends and the sections from which no END can be reached
+     * @param bookId - id of the book
+     * @return BookAnalysis with the structural diagnostics
+     */
+    @GetMapping("/{bookId}/analysis")
+    public ResponseEntity<BookAnalysis> analyzeBook(@PathVariable Long bookId) {
+        return ResponseEntity.ok(bookService.analyzeBook(bookId));
+    }
+
+    /**
+     * GET /api/books/{bookId}/validate?mode=count
+     * counts all the possible paths of the book, condensing the loops,
+     * without simulating each path
+     * @param bookId - id of the book
+     * @return BookPathCount with the exact number of paths
+     */
+    @GetMapping(value = "/{bookId}/validate", params = "mode=count")
+    public ResponseEntity<BookPathCount> countBookPaths(@PathVariable Long bookId) {
+        return ResponseEntity.ok(bookService.countBookPaths(bookId));
+    }
+
+    /**
+     * GET /api/books/{bookId}/validate?mode=health
+     * explores all the (section, health) states of the book, applying the
+     * consequences, and counts the paths leading to each outcome
+     * @param bookId - id of the book
+     * @param healthCap - when present, overrides the configured maximum health
+     * @return BookPathCount with the exact number of paths
+     */
+    @GetMapping(value = "/{bookId}/validate", params = "mode=health")
+    public ResponseEntity<BookPathCount> exploreBookStates(
+            @PathVariable Long bookId,
+            @RequestParam(required = false) @Nullable Integer healthCap) {
+        return ResponseEntity.ok(bookService.exploreBookStates(bookId, healthCap));
+    }
+
+    /**
+     * GET /api/books/{bookId}/validate?mode=parallel&timeBudget=N
+     * enumerates every path of the book in parallel, applying the consequences,
+     * bounded by a number of paths and a time budget
+     * @param bookId - id of the book
+     * @param timeBudget - when present, maximum duration of the enumeration (milliseconds)
+     * @return BookPathCount with the number of paths
+     */
+    @GetMapping(value = "/{bookId}/validate", params = "mode=parallel")
+    public ResponseEntity<BookPathCount> simulateBookPathsInParallel(
+            @PathVariable Long bookId,
+            @RequestParam(required = false) @Nullable Long timeBudget) {
+        return ResponseEntity.ok(bookService.simulateBookPathsInParallel(bookId, timeBudget));
+    }
+
+    /**
+     * GET /api/books/{bookId}/validate?mode=sample&samples=N
+     * estimates the book outcomes by playing N random games
+     * @param bookId - id of the book
+     * @param samples - number of random games to play
+     * @param seed - when present, seeds the random choices (for repeatable results)
+     * @param timeBudget - when present, maximum duration of the sampling (milliseconds)
+     * @return BookSampling with the estimated rates and confidence intervals
+     */
+    @GetMapping(value = "/{bookId}/validate", params = "mode=sample")
+    public ResponseEntity<BookSampling> sampleBookPaths(
+            @PathVariable Long bookId,
+            @RequestParam(defaultValue = "10000") long samples,
+            @RequestParam(required = false) @Nullable Long seed,
+            @RequestParam(required = false) @Nullable Long timeBudget) {
+        return ResponseEntity.ok(bookService.sampleBookPaths(bookId, samples, seed, timeBudget));
+    }
+
     /**
      * POST /api/books/{id}/categories/{name} -
      * associates the book association w/ a new category
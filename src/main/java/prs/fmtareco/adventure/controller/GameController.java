@@ -5,10 +5,14 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import prs.fmtareco.adventure.dtos.GameDetails;
+import prs.fmtareco.adventure.dtos.GameMoves;
 import prs.fmtareco.adventure.dtos.GameSummary;
+import prs.fmtareco.adventure.dtos.MovesRequest;
 import prs.fmtareco.adventure.service.GameService;
 
 import java.util.ArrayList;
@@ -95,6 +99,34 @@ public class GameController {
         return ResponseEntity.ok(gd);
     }
 
+    /**
+     * POST /api/games/{game_id}/moves
+     * applies an ordered list of options to the game, in one request (and transaction)
+     * stopping once the game ends or at the first option that can't be applied
+     * @param game_id - identifies the game
+     * @param request - the option numbers, in order (0 means RESTART)
+     * @return GameMoves record with the game details after the last move and each step outcome
+     */
+    @PostMapping("/{game_id}/moves")
+    public ResponseEntity<GameMoves> takeOptions(@PathVariable Long game_id, @RequestBody MovesRequest request) {
+        return ResponseEntity.ok(gameService.takeOptions(game_id, request.options()));
+    }
+
+    /**
+     * GET /api/games/{game_id}/moves
+     * streams the history of the game, one move per json line (NDJSON), in order
+     * @param game_id - identifies the game
+     * @return stream of GameMoveDetails lines
+     */
+    @GetMapping(value = "/{game_id}/moves", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getGameMoves(@PathVariable Long game_id) {
+        gameService.requireGame(game_id);
+        StreamingResponseBody body = out -> gameService.writeGameMoves(game_id, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
 
 
 }
@@ -0,0 +1,50 @@
+package prs.fmtareco.adventure.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import prs.fmtareco.adventure.dtos.ValidationJobStatus;
+import prs.fmtareco.adventure.service.ValidationJobService;
+
+import java.net.URI;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api")
+public class ValidationController {
+
+    private final ValidationJobService validationService;
+
+    public ValidationController(ValidationJobService svc) {
+        this.validationService = svc;
+    }
+
+    /**
+     * POST /api/books/{bookId}/validations?mode=explore|parallel
+     * queues the validation (simulation of all paths) of the book, to run asynchronously
+     * answers 429 (Too Many Requests) when the validation queue is full
+     * @param bookId - id of the book
+     * @param mode - explore (pruned simulation, default) or parallel (enumeration of every path)
+     * @return ValidationJobStatus with the id of the job to poll
+     */
+    @PostMapping("/books/{bookId}/validations")
+    public ResponseEntity<ValidationJobStatus> submitValidation(
+            @PathVariable Long bookId,
+            @RequestParam(defaultValue = "explore") String mode) {
+        ValidationJobStatus job = validationService.submitValidation(bookId, mode);
+        return ResponseEntity
+                .accepted()
+                .location(URI.create("/api/validations/" + job.jobId()))
+                .body(job);
+    }
+
+    /**
+     * GET /api/validations/{jobId}
+     * polls a validation job: progress (sections explored) and, once completed, the result
+     * @param jobId - id of the job
+     * @return ValidationJobStatus with the state of the job
+     */
+    @GetMapping("/validations/{jobId}")
+    public ResponseEntity<ValidationJobStatus> getValidation(@PathVariable UUID jobId) {
+        return ResponseEntity.ok(validationService.getValidation(jobId));
+    }
+}
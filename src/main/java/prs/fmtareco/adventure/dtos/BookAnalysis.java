@@ -0,0 +1,24 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ *
+ * Structural diagnostics of the book sections graph, to be retrieved on book analysis
+ * (sections are identified by their numbers)
+ * DTO Pattern (Data Transfer Object)
+ */
+@Builder
+public record BookAnalysis(
+    Long id,
+    String title,
+    int numberOfSections,
+    int numberOfOptions,
+    List<List<Integer>> cycles,
+    List<Integer> unreachableSections,
+    List<Integer> deadEndSections,
+    List<Integer> sectionsWithoutEnd
+) implements Serializable {}
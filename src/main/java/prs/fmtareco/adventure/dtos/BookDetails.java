@@ -15,7 +15,9 @@ public record BookDetails(
     Long id,
     String title,
     String author,
+    Integer version,
     String condition,
+    List<ViolationSummary> violations,
     String difficulty,
     List<String> categories,
     List<SectionSummary> sections
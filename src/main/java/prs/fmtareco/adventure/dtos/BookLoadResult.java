@@ -0,0 +1,29 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+
+/**
+ *
+ * Result of the load of a book from a bulk ingestion
+ * (status LOADED | SKIPPED | REJECTED, condition and content hash of the book once mapped,
+ *  id and version are filled when known, error when the book was rejected)
+ * DTO Pattern (Data Transfer Object)
+ */
+@Builder
+public record BookLoadResult(
+        Long id,
+        String title,
+        String author,
+        Integer version,
+        String status,
+        String condition,
+        String contentHash,
+        String error
+) implements Serializable {
+
+    public static final String LOADED = "LOADED";
+    public static final String SKIPPED = "SKIPPED";
+    public static final String REJECTED = "REJECTED";
+}
@@ -0,0 +1,23 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+
+/**
+ *
+ * Book exact path counts, to be retrieved on book validation (count mode)
+ * (budgetExhausted when a bounded enumeration stopped before counting all the paths)
+ * DTO Pattern (Data Transfer Object)
+ */
+@Builder
+public record BookPathCount(
+    Long id,
+    String title,
+    BigInteger numberOfSuccessfulPaths,
+    BigInteger numberOfFailurePaths,
+    BigInteger numberOfLoopPaths,
+    boolean budgetExhausted
+) implements Serializable {}
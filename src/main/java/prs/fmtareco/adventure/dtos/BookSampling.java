@@ -0,0 +1,23 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+
+/**
+ *
+ * Book outcomes estimated from random games, to be retrieved on book validation (sample mode)
+ * DTO Pattern (Data Transfer Object)
+ */
+@Builder
+public record BookSampling(
+    Long id,
+    String title,
+    long seed,
+    long samples,
+    boolean budgetExhausted,
+    long elapsedMillis,
+    OutcomeRate success,
+    OutcomeRate failure,
+    OutcomeRate loop
+) implements Serializable {}
@@ -15,6 +15,7 @@ public record BookSummary(
     Long id,
     String title,
     String author,
+    Integer version,
     String condition,
     List<String> categories,
     String difficulty
@@ -0,0 +1,18 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+@Builder
+public record GameMoveDetails(
+        Integer move,
+        Integer option,
+        String description,
+        Integer previousSection,
+        Integer section,
+        Integer health,
+        String status,
+        Instant movedAt
+) implements Serializable {}
@@ -0,0 +1,18 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ *
+ * Result of a multi-move request: the game after the last applied move, and each step outcome
+ * DTO Pattern (Data Transfer Object)
+ */
+@Builder
+public record GameMoves(
+        GameDetails game,
+        Integer applied,
+        List<MoveOutcome> steps
+) implements Serializable {}
@@ -0,0 +1,21 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+
+/**
+ *
+ * Outcome of a step of a multi-move request
+ * (error is filled, and the game unchanged, when the option was not applied)
+ * DTO Pattern (Data Transfer Object)
+ */
+@Builder
+public record MoveOutcome(
+        Integer step,
+        Integer option,
+        Integer section,
+        Integer health,
+        String status,
+        String error
+) implements Serializable {}
@@ -0,0 +1,16 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ *
+ * Ordered option numbers to apply on a game, in one request
+ * DTO Pattern (Data Transfer Object)
+ */
+@Builder
+public record MovesRequest(
+        List<Integer> options
+) implements Serializable {}
@@ -0,0 +1,39 @@
+package prs.fmtareco.adventure.dtos;
+
+import java.io.Serializable;
+
+/**
+ *
+ * Estimated rate of an outcome, with the bounds of its 95% confidence interval
+ * DTO Pattern (Data Transfer Object)
+ */
+public record OutcomeRate(
+    long count,
+    double rate,
+    double lower,
+    double upper
+) implements Serializable {
+
+    private static final double Z_95 = 1.959963984540054;
+
+    /**
+     * estimates the rate of an outcome observed count times on a number of samples,
+     * using the Wilson score interval (well behaved for rates close to 0 or 1)
+     *
+     * @param count - number of samples w/ the outcome
+     * @param samples - total number of samples
+     * @return OutcomeRate instance
+     */
+    public static OutcomeRate of(long count, long samples) {
+        if (samples == 0)
+            return new OutcomeRate(0, 0, 0, 1);
+        double n = samples;
+        double p = count / n;
+        double z2 = Z_95 * Z_95;
+        double center = (p + z2 / (2 * n)) / (1 + z2 / n);
+        double margin = Z_95 * Math.sqrt(p * (1 - p) / n + z2 / (4 * n * n)) / (1 + z2 / n);
+        return new OutcomeRate(count, p,
+                Math.max(0, center - margin),
+                Math.min(1, center + margin));
+    }
+}
@@ -0,0 +1,27 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ *
+ * State of an asynchronous book validation, to be retrieved while polling the job
+ * (result, or pathCount for the parallel mode, is only filled when COMPLETED, error when FAILED)
+ * DTO Pattern (Data Transfer Object)
+ */
+@Builder
+public record ValidationJobStatus(
+    UUID jobId,
+    Long bookId,
+    String mode,
+    String status,
+    long nodesExplored,
+    Instant submittedAt,
+    long elapsedMillis,
+    BookSimulation result,
+    BookPathCount pathCount,
+    String error
+) implements Serializable {}
@@ -0,0 +1,19 @@
+package prs.fmtareco.adventure.dtos;
+
+import lombok.Builder;
+
+import java.io.Serializable;
+
+/**
+ *
+ * Violation of a book rule to be retrieved on Book Details
+ * (optionIndex is the position of the option on its section)
+ * DTO Pattern (Data Transfer Object)
+ */
+@Builder
+public record ViolationSummary(
+    String rule,
+    Integer sectionNumber,
+    Integer optionIndex,
+    String message
+) implements Serializable {}
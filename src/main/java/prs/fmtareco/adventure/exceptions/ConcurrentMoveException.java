@@ -0,0 +1,11 @@
+package prs.fmtareco.adventure.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class ConcurrentMoveException extends RuntimeException {
+    public ConcurrentMoveException(Long gameId, int moveNumber) {
+        super("Move " + moveNumber + " of game(" + gameId + ") already taken by a concurrent move, retry.");
+    }
+}
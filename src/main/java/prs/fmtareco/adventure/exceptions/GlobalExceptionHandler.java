@@ -2,6 +2,7 @@ package prs.fmtareco.adventure.exceptions;
 
 
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -21,6 +22,20 @@ public class GlobalExceptionHandler {
         return getErrorResponse(ex, request, HttpStatus.BAD_REQUEST, null);
     }
 
+    /**
+     * handles the invalid request parameters (out of range validation options)
+     *
+     * @param ex thrown exception
+     * @param request http request
+     * @return Response w/ ErrorInfo
+     */
+    @ExceptionHandler(InvalidParameterException.class)
+    public ResponseEntity<ErrorInfo> handleInvalidParameter(
+            InvalidParameterException ex,
+            HttpServletRequest request) {
+        return getErrorResponse(ex, request, HttpStatus.BAD_REQUEST, null);
+    }
+
     /**
      * handles all exceptions related with failed resource selection
      *
@@ -49,6 +64,39 @@ public class GlobalExceptionHandler {
         return getErrorResponse(ex, request, HttpStatus.NOT_ACCEPTABLE, null);
     }
 
+    /**
+     * handles the moves losing the race for their move number against a concurrent move
+     * of the same game
+     *
+     * @param ex thrown exception
+     * @param request http request
+     * @return Response w/ ErrorInfo
+     */
+    @ExceptionHandler(ConcurrentMoveException.class)
+    public ResponseEntity<ErrorInfo> handleConcurrentMove(
+            ConcurrentMoveException ex,
+            HttpServletRequest request) {
+        return getErrorResponse(ex, request, HttpStatus.CONFLICT, null);
+    }
+
+    /**
+     * handles the validation jobs rejected while the validation queue is full,
+     * asking the client to retry later
+     *
+     * @param ex thrown exception
+     * @param request http request
+     * @return Response w/ ErrorInfo
+     */
+    @ExceptionHandler(ValidationQueueFullException.class)
+    public ResponseEntity<ErrorInfo> handleValidationQueueFull(
+            ValidationQueueFullException ex,
+            HttpServletRequest request) {
+        HttpStatus status = HttpStatus.TOO_MANY_REQUESTS;
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(getErrorInfo(ex, request, status, null));
+    }
+
     /**
      * formats an error response
      * @param ex thrown exception
@@ -0,0 +1,11 @@
+package prs.fmtareco.adventure.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidParameterException extends RuntimeException {
+    public InvalidParameterException(String name, Object value, String expected) {
+        super("Invalid " + name + "(" + value + "), expected: " + expected + ".");
+    }
+}
@@ -0,0 +1,11 @@
+package prs.fmtareco.adventure.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.NOT_ACCEPTABLE)
+public class TooManyMovesException extends InvalidResourceException {
+    public TooManyMovesException(int numMoves, int maxMoves) {
+        super("Too many moves("+numMoves+"), maximum: " + maxMoves + ".");
+    }
+}
@@ -0,0 +1,13 @@
+package prs.fmtareco.adventure.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.UUID;
+
+@ResponseStatus(value = HttpStatus.NOT_FOUND)
+public class ValidationJobNotFoundException extends ResourceNotFoundException {
+    public ValidationJobNotFoundException(UUID id) {
+        super("Validation job("+id+") not found");
+    }
+}
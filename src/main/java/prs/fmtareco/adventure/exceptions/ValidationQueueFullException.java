@@ -0,0 +1,11 @@
+package prs.fmtareco.adventure.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.TOO_MANY_REQUESTS)
+public class ValidationQueueFullException extends RuntimeException {
+    public ValidationQueueFullException(Long bookId) {
+        super("Validation of book("+bookId+") rejected, too many validations pending.");
+    }
+}
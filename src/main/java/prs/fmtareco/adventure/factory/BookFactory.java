@@ -32,7 +32,8 @@ public class BookFactory {
                 book.addSection(section);
             });
         }
-        book.setBookCondition();
+        book.validate();
+        book.refreshContentHash();
         return book;
     }
 
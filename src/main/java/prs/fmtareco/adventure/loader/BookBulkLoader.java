@@ -0,0 +1,392 @@
+package prs.fmtareco.adventure.loader;
+
+import jakarta.transaction.Transactional;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import prs.fmtareco.adventure.annotations.TrackExecution;
+import prs.fmtareco.adventure.dtos.BookLoadResult;
+import prs.fmtareco.adventure.loader.json.BookJson;
+import prs.fmtareco.adventure.loader.mapper.BookMapper;
+import prs.fmtareco.adventure.model.*;
+import prs.fmtareco.adventure.repository.BookRepository;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/*
+    bulk ingestion of books, a batch per transaction
+    - a book already stored with the same content (title, author and content hash) is skipped,
+      a book stored with another content is stored as its next version
+    - save: the books are mapped to entities and saved together (JDBC batched inserts),
+      the stored versions of the whole batch are found with a single query
+    - load: with the PostgreSQL COPY, the books are validated and hashed in memory, then their rows are copied
+      to temporary stage tables (one COPY per table, for the whole batch)
+    - the books already loaded are dropped from the stage (or get their next version),
+      the ids are allocated set-wise from the sequences, in the same blocks Hibernate uses,
+      and the rows are moved to the tables with one INSERT ... SELECT per table
+    - the stage tables are dropped on commit
+ */
+@Component
+public class BookBulkLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(BookBulkLoader.class);
+
+    /**
+     * increment of the id sequences (allocation size of the entities)
+     */
+    static final int ID_BLOCK = 50;
+
+    static final String CREATE_STAGE = """
+            CREATE TEMP TABLE stage_books (
+                book_key INT NOT NULL, title TEXT, author TEXT, difficulty TEXT,
+                condition TEXT, content_hash TEXT, version INT NOT NULL DEFAULT 1, id BIGINT) ON COMMIT DROP;
+            CREATE TEMP TABLE stage_categories (
+                book_key INT NOT NULL, name TEXT) ON COMMIT DROP;
+            CREATE TEMP TABLE stage_sections (
+                section_key INT NOT NULL, book_key INT NOT NULL,
+                section_number INT, type TEXT, id BIGINT) ON COMMIT DROP;
+            CREATE TEMP TABLE stage_texts (
+                text_key INT NOT NULL, book_key INT NOT NULL, section_key INT NOT NULL,
+                codec TEXT, text_length INT, data BYTEA, id BIGINT) ON COMMIT DROP;
+            CREATE TEMP TABLE stage_options (
+                option_key INT NOT NULL, book_key INT NOT NULL, section_key INT NOT NULL,
+                description TEXT, goto_section_number INT, id BIGINT) ON COMMIT DROP;
+            CREATE TEMP TABLE stage_consequences (
+                consequence_key INT NOT NULL, book_key INT NOT NULL, option_key INT NOT NULL,
+                type TEXT, value INT, text TEXT, id BIGINT) ON COMMIT DROP""";
+
+    // books repeated in the batch (the first one is kept), or already stored with the same content;
+    // the books stored with a different content get the next version
+    private static final String DROP_DUPLICATES = """
+            DELETE FROM stage_books s USING stage_books d
+            WHERE lower(d.title) = lower(s.title) AND lower(d.author) = lower(s.author)
+              AND d.book_key < s.book_key;
+            DELETE FROM stage_books s USING books b
+            WHERE lower(b.title) = lower(s.title) AND lower(b.author) = lower(s.author)
+              AND b.content_hash = s.content_hash;
+            UPDATE stage_books s SET version = v.version + 1
+            FROM (SELECT lower(title) AS title, lower(author) AS author, MAX(version) AS version
+                  FROM books GROUP BY 1, 2) v
+            WHERE v.title = lower(s.title) AND v.author = lower(s.author);
+            DELETE FROM stage_categories WHERE book_key NOT IN (SELECT book_key FROM stage_books);
+            DELETE FROM stage_sections WHERE book_key NOT IN (SELECT book_key FROM stage_books);
+            DELETE FROM stage_texts WHERE book_key NOT IN (SELECT book_key FROM stage_books);
+            DELETE FROM stage_options WHERE book_key NOT IN (SELECT book_key FROM stage_books);
+            DELETE FROM stage_consequences WHERE book_key NOT IN (SELECT book_key FROM stage_books)""";
+
+    /*
+        gives ids to the rows of a stage table, from blocks of the sequence
+        - nextval returns the last id of a block of ID_BLOCK ids (pooled optimizer),
+          the first value of a new sequence (below ID_BLOCK) is not a full block
+        - %1$s stage table, %2$s key column, %3$s sequence, %4$d block size
+     */
+    private static final String ALLOCATE_IDS = """
+            UPDATE %1$s s SET id = a.id
+            FROM (
+                SELECT k.%2$s, b.hi - %4$d + 1 + k.rn %% %4$d AS id
+                FROM (SELECT %2$s, row_number() OVER (ORDER BY %2$s) - 1 AS rn FROM %1$s) k
+                JOIN (SELECT hi, row_number() OVER (ORDER BY hi) - 1 AS block
+                      FROM (SELECT nextval('%3$s') AS hi
+                            FROM generate_series(0, (SELECT count(*) FROM %1$s) / %4$d + 1)) v
+                      WHERE hi >= %4$d) b ON b.block = k.rn / %4$d
+            ) a
+            WHERE s.%2$s = a.%2$s""";
+
+    private static final String INSERT_ROWS = """
+            INSERT INTO books (id, title, author, difficulty, condition, content_hash, version)
+            SELECT id, title, author, difficulty, condition, content_hash, version FROM stage_books;
+            INSERT INTO categories (name)
+            SELECT DISTINCT ON (lower(c.name)) c.name FROM stage_categories c
+            WHERE NOT EXISTS (SELECT 1 FROM categories x WHERE lower(x.name) = lower(c.name))
+            ON CONFLICT (name) DO NOTHING;
+            INSERT INTO book_categories (book_id, category_id)
+            SELECT DISTINCT b.id, x.id
+            FROM stage_categories c
+            JOIN stage_books b ON b.book_key = c.book_key
+            JOIN categories x ON lower(x.name) = lower(c.name)
+            ON CONFLICT DO NOTHING;
+            INSERT INTO section_texts (id, codec, text_length, data)
+            SELECT id, codec, text_length, data FROM stage_texts;
+            INSERT INTO sections (id, book_id, section_number, type, text_id)
+            SELECT s.id, b.id, s.section_number, s.type, t.id
+            FROM stage_sections s
+            JOIN stage_books b ON b.book_key = s.book_key
+            LEFT JOIN stage_texts t ON t.section_key = s.section_key;
+            INSERT INTO options (id, section_id, description, goto_section_number)
+            SELECT o.id, s.id, o.description, o.goto_section_number
+            FROM stage_options o
+            JOIN stage_sections s ON s.section_key = o.section_key;
+            INSERT INTO consequences (id, option_id, type, value, text)
+            SELECT c.id, o.id, c.type, c.value, c.text
+            FROM stage_consequences c
+            JOIN stage_options o ON o.option_key = c.option_key""";
+
+    private final JdbcTemplate jdbc;
+    private final BookMapper bookMapper;
+    private final BookRepository bookRepo;
+
+    public BookBulkLoader(JdbcTemplate jdbc, BookMapper bookMapper, BookRepository bookRepo) {
+        this.jdbc = jdbc;
+        this.bookMapper = bookMapper;
+        this.bookRepo = bookRepo;
+    }
+
+    private record StagedBook(int key, Book book, List<String> categories) {}
+    private record StagedSection(int key, int bookKey, Section section) {}
+    private record StagedOption(int key, int bookKey, int sectionKey, Option option) {}
+    record LoadedBook(long id, int version) {}
+
+    /**
+     * saves a batch of books (JPA), in a single transaction
+     * - a book already stored with the same content (or repeated in the batch) is skipped,
+     *   a book stored with a different content is saved as a new version
+     * - the invalid books are saved with their condition,
+     *   the books that can't be stored (missing values, repeated sections or options) are rejected
+     *
+     * @param books - books read from JSON
+     * @return the result of each book, in the order of the batch
+     */
+    @Transactional
+    @TrackExecution
+    public List<BookLoadResult> save(List<BookJson> books) {
+        return saveEntries(books.stream().map(bookMapper::entry).toList());
+    }
+
+    /**
+     * saves a batch of books read from a books file (JPA), in a single transaction (same rules as save)
+     *
+     * @param books - books read from a JSON or bundle file
+     * @return the result of each book, in the order of the batch
+     */
+    @Transactional
+    @TrackExecution
+    public List<BookLoadResult> saveEntries(List<BookEntry> books) {
+        Map<String, Integer> latest = new HashMap<>();
+        Map<String, Long> stored = new HashMap<>();
+        for (BookRepository.StoredVersion v : bookRepo.findStoredVersions(books.stream().map(BookEntry::title).toList())) {
+            latest.merge(v.key(), v.version(), Math::max);
+            stored.put(v.key() + "\n" + v.contentHash(), v.id());
+        }
+        Set<String> seen = new HashSet<>();
+        List<BookLoadResult.BookLoadResultBuilder> results = new ArrayList<>(books.size());
+        Map<Book, BookLoadResult.BookLoadResultBuilder> created = new LinkedHashMap<>();
+        for (BookEntry entry : books) {
+            BookLoadResult.BookLoadResultBuilder result = result(entry);
+            results.add(result);
+            try {
+                if (entry.title() == null || entry.author() == null) {
+                    result.status(BookLoadResult.REJECTED).error("title or author missing");
+                    continue;
+                }
+                String key = BookRepository.titleAuthorKey(entry.title(), entry.author());
+                if (!seen.add(key)) {
+                    result.status(BookLoadResult.SKIPPED);
+                    continue;
+                }
+                Book book = entry.content().get();
+                result.contentHash(book.getContentHash());
+                Long storedId = stored.get(key + "\n" + book.getContentHash());
+                if (storedId != null) {
+                    result.status(BookLoadResult.SKIPPED).id(storedId);
+                    continue;
+                }
+                String error = BookValidator.storageError(book);
+                if (error != null) {
+                    result.status(BookLoadResult.REJECTED).error(error);
+                    continue;
+                }
+                book.setVersion(latest.getOrDefault(key, 0) + 1);
+                bookMapper.fromCategories(book, entry.categories());
+                BookValidator.Result validation = book.validate();
+                if (!validation.isValid()) {
+                    log.warn("Book {} by {} is {}, with {} violations",
+                            entry.title(), entry.author(), validation.condition(), validation.violations().size());
+                    validation.violations().forEach(v -> log.debug("  {}", v.message()));
+                }
+                result.status(BookLoadResult.LOADED)
+                        .version(book.getVersion())
+                        .condition(book.getCondition().name());
+                created.put(book, result);
+            } catch (Exception e) {
+                result.status(BookLoadResult.REJECTED).error(e.getMessage());
+            }
+        }
+        bookRepo.saveAll(created.keySet());
+        created.forEach((book, result) -> result.id(book.getId()));
+        return results.stream().map(BookLoadResult.BookLoadResultBuilder::build).toList();
+    }
+
+    /**
+     * loads a batch of books with the COPY, in a single transaction
+     * - a book already stored with the same content (or repeated in the batch) is skipped,
+     *   a book stored with a different content is loaded as a new version
+     * - the invalid books are loaded with their condition (as on the other loads),
+     *   the books that can't be stored (missing values, repeated sections or options) are rejected
+     *
+     * @param books - books read from JSON
+     * @return the result of each book, in the order of the batch
+     */
+    @Transactional
+    @TrackExecution
+    public List<BookLoadResult> load(List<BookJson> books) {
+        return loadEntries(books.stream().map(bookMapper::entry).toList());
+    }
+
+    /**
+     * loads a batch of books read from a books file with the COPY, in a single transaction (same rules as load)
+     *
+     * @param books - books read from a JSON or bundle file
+     * @return the result of each book, in the order of the batch
+     */
+    @Transactional
+    @TrackExecution
+    public List<BookLoadResult> loadEntries(List<BookEntry> books) {
+        BookLoadResult[] results = new BookLoadResult[books.size()];
+        List<StagedBook> staged = new ArrayList<>();
+        for (int i = 0; i < books.size(); i++) {
+            BookEntry entry = books.get(i);
+            try {
+                Book book = entry.content().get();
+                String error = BookValidator.storageError(book);
+                if (error != null) {
+                    results[i] = result(entry).status(BookLoadResult.REJECTED).error(error).build();
+                    continue;
+                }
+                book.validate();
+                staged.add(new StagedBook(i, book,
+                        entry.categories() == null ? List.of() : entry.categories()));
+            } catch (Exception e) {
+                results[i] = result(entry).status(BookLoadResult.REJECTED).error(e.getMessage()).build();
+            }
+        }
+        if (!staged.isEmpty()) {
+            Map<Integer, LoadedBook> loaded = jdbc.execute(
+                    (ConnectionCallback<Map<Integer, LoadedBook>>) con -> copy(con, staged));
+            for (StagedBook sb : staged) {
+                BookEntry entry = books.get(sb.key());
+                LoadedBook lb = loaded.get(sb.key());
+                BookLoadResult.BookLoadResultBuilder result = result(entry).contentHash(sb.book().getContentHash());
+                if (lb == null)
+                    result.status(BookLoadResult.SKIPPED);
+                else
+                    result.status(BookLoadResult.LOADED).id(lb.id()).version(lb.version())
+                            .condition(sb.book().getCondition().name());
+                results[sb.key()] = result.build();
+            }
+            log.info("Bulk loaded {} of {} books", loaded.size(), books.size());
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * copies the books to the stage tables and moves them to the catalog
+     *
+     * @return id and version of the books loaded, by key
+     */
+    private Map<Integer, LoadedBook> copy(Connection con, List<StagedBook> books) throws SQLException {
+        List<StagedSection> sections = new ArrayList<>();
+        List<StagedOption> options = new ArrayList<>();
+        for (StagedBook sb : books) {
+            for (Section section : sb.book().getSections()) {
+                StagedSection ss = new StagedSection(sections.size(), sb.key(), section);
+                sections.add(ss);
+                for (Option option : section.getOptions())
+                    options.add(new StagedOption(options.size(), sb.key(), ss.key(), option));
+            }
+        }
+
+        CopyManager copyApi = con.unwrap(PGConnection.class).getCopyAPI();
+        try (Statement st = con.createStatement()) {
+            st.execute(CREATE_STAGE);
+
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_books",
+                    "book_key, title, author, difficulty, condition, content_hash")) {
+                for (StagedBook sb : books) {
+                    Book book = sb.book();
+                    rows.add(sb.key(), book.getTitle(), book.getAuthor(), book.getDifficulty(),
+                            book.getCondition(), book.getContentHash());
+                }
+                rows.end();
+            }
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_categories", "book_key, name")) {
+                for (StagedBook sb : books)
+                    for (String name : sb.categories())
+                        rows.add(sb.key(), name);
+                rows.end();
+            }
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_sections",
+                    "section_key, book_key, section_number, type")) {
+                for (StagedSection ss : sections)
+                    rows.add(ss.key(), ss.bookKey(), ss.section().getSectionNumber(), ss.section().getType());
+                rows.end();
+            }
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_texts",
+                    "text_key, book_key, section_key, codec, text_length, data")) {
+                for (StagedSection ss : sections) {
+                    String text = ss.section().getText();
+                    if (text == null)
+                        continue;
+                    SectionText content = SectionText.of(text);
+                    rows.add(ss.key(), ss.bookKey(), ss.key(),
+                            content.getCodec(), content.getLength(), content.getData());
+                }
+                rows.end();
+            }
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_options",
+                    "option_key, book_key, section_key, description, goto_section_number")) {
+                for (StagedOption so : options)
+                    rows.add(so.key(), so.bookKey(), so.sectionKey(),
+                            so.option().getDescription(), so.option().getGotoSectionNumber());
+                rows.end();
+            }
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_consequences",
+                    "consequence_key, book_key, option_key, type, value, text")) {
+                for (StagedOption so : options) {
+                    Consequence csq = so.option().getConsequence();
+                    if (csq != null)
+                        rows.add(so.key(), so.bookKey(), so.key(), csq.getType(), csq.getValue(), csq.getText());
+                }
+                rows.end();
+            }
+
+            return moveStaged(st);
+        }
+    }
+
+    /**
+     * moves the staged books to the catalog: drops the ones already loaded,
+     * allocates the ids and inserts the rows
+     *
+     * @return id and version of the books loaded, by key
+     */
+    static Map<Integer, LoadedBook> moveStaged(Statement st) throws SQLException {
+        st.execute(DROP_DUPLICATES);
+        st.execute(ALLOCATE_IDS.formatted("stage_books", "book_key", "books_seq", ID_BLOCK));
+        st.execute(ALLOCATE_IDS.formatted("stage_sections", "section_key", "sections_seq", ID_BLOCK));
+        st.execute(ALLOCATE_IDS.formatted("stage_texts", "text_key", "section_texts_seq", ID_BLOCK));
+        st.execute(ALLOCATE_IDS.formatted("stage_options", "option_key", "options_seq", ID_BLOCK));
+        st.execute(ALLOCATE_IDS.formatted("stage_consequences", "consequence_key", "consequences_seq", ID_BLOCK));
+        st.execute(INSERT_ROWS);
+
+        Map<Integer, LoadedBook> loaded = new HashMap<>();
+        try (ResultSet rs = st.executeQuery("SELECT book_key, id, version FROM stage_books")) {
+            while (rs.next())
+                loaded.put(rs.getInt(1), new LoadedBook(rs.getLong(2), rs.getInt(3)));
+        }
+        return loaded;
+    }
+
+    private static BookLoadResult.BookLoadResultBuilder result(BookEntry entry) {
+        return BookLoadResult.builder()
+                .title(entry.title())
+                .author(entry.author());
+    }
+}
@@ -0,0 +1,21 @@
+package prs.fmtareco.adventure.loader;
+
+import prs.fmtareco.adventure.model.Book;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * book read from a books file (JSON or bundle), mapped to its entity when loaded
+ *
+ * @param title - book title
+ * @param author - book author
+ * @param categories - names of the categories of the book (null when none)
+ * @param content - maps the book and its sections, without the categories (no database access)
+ */
+public record BookEntry(
+        String title,
+        String author,
+        List<String> categories,
+        Supplier<Book> content
+) {}
@@ -0,0 +1,34 @@
+package prs.fmtareco.adventure.loader;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/*
+    actuator endpoint of the watched books files (/actuator/bookfiles)
+    - the status of each file of the watched directory, and of its last load
+    - /actuator/bookfiles/{name} for a single file (404 when unknown)
+ */
+@Component
+@Endpoint(id = "bookfiles")
+public class BookFilesEndpoint {
+
+    private final BooksDirectoryWatcher watcher;
+
+    public BookFilesEndpoint(BooksDirectoryWatcher watcher) {
+        this.watcher = watcher;
+    }
+
+    @ReadOperation
+    public Map<String, BooksDirectoryWatcher.FileStatus> files() {
+        return watcher.statuses();
+    }
+
+    @ReadOperation
+    public BooksDirectoryWatcher.FileStatus file(@Selector String name) {
+        return watcher.status(name);
+    }
+}
@@ -0,0 +1,90 @@
+package prs.fmtareco.adventure.loader;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/*
+    manifest of the books files loaded (book_sources table)
+    - a file is identified by its path under the resources (books/...) and its SHA-256,
+      so a file unchanged since its last load is skipped without being parsed
+    - the books of a changed file are compared with the catalog on their content hash
+      (books.content_hash, BookBulkLoader), not on the manifest
+ */
+@Component
+public class BookSourceManifest {
+
+    private static final String UPSERT_SOURCE = """
+            INSERT INTO book_sources (source, file_hash, loaded_at) VALUES (?, ?, ?)
+            ON CONFLICT (source) DO UPDATE SET file_hash = EXCLUDED.file_hash, loaded_at = EXCLUDED.loaded_at""";
+
+    private final JdbcTemplate jdbc;
+
+    public BookSourceManifest(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * hashes of the files recorded
+     *
+     * @return file hash by source
+     */
+    public Map<String, String> fileHashes() {
+        Map<String, String> hashes = new HashMap<>();
+        jdbc.query("SELECT source, file_hash FROM book_sources",
+                rs -> { hashes.put(rs.getString(1), rs.getString(2)); });
+        return hashes;
+    }
+
+    /**
+     * hash of a file recorded
+     *
+     * @param source - path of the file
+     * @return file hash, null when the file was never loaded
+     */
+    public String fileHash(String source) {
+        List<String> hashes = jdbc.queryForList(
+                "SELECT file_hash FROM book_sources WHERE source = ?", String.class, source);
+        return hashes.isEmpty() ? null : hashes.getFirst();
+    }
+
+    /**
+     * records a file once loaded
+     *
+     * @param source - path of the file
+     * @param fileHash - SHA-256 of the file
+     */
+    public void record(String source, String fileHash) {
+        jdbc.update(UPSERT_SOURCE, source, fileHash, Timestamp.from(Instant.now()));
+    }
+
+    /**
+     * SHA-256 of a file, read as a stream
+     *
+     * @param in - content of the file
+     * @return hex hash
+     */
+    public static String hash(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            digest.update(buffer, 0, n);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,193 @@
+package prs.fmtareco.adventure.loader;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import prs.fmtareco.adventure.config.LoaderProperties;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/*
+    loads the books files (*.json) added to, or changed on, the watched directory (adventure.loader.watch-directory)
+    - the files already there are loaded at start, the unchanged ones are skipped (BookSourceManifest)
+    - a file is loaded once it's unchanged for `watch-debounce`, so a file being copied is loaded once, complete
+    - the files are loaded one at a time on the watcher thread, after the startup load (even a failed one),
+      so the books are written by a single loader at a time
+    - the status of each file is kept for the bookfiles actuator endpoint
+ */
+@Component
+public class BooksDirectoryWatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(BooksDirectoryWatcher.class);
+
+    public enum FileState { PENDING, LOADING, LOADED, UNCHANGED, FAILED }
+
+    /**
+     * status of a watched file
+     *
+     * @param state - PENDING | LOADING | LOADED | UNCHANGED | FAILED
+     * @param updatedAt - time of the last change of the state
+     * @param load - outcome of the last load of the file
+     */
+    public record FileStatus(FileState state, Instant updatedAt, BooksLoader.FileLoad load) {}
+
+    private final BooksLoader booksLoader;
+    private final LoaderProperties loaderProps;
+
+    private final Map<String, FileStatus> statuses = new ConcurrentHashMap<>();
+    // files waiting for their debounce time (nanoTime), used by the watcher thread only
+    private final Map<Path, Long> pending = new HashMap<>();
+    private volatile WatchService watchService;
+
+    public BooksDirectoryWatcher(BooksLoader booksLoader, LoaderProperties loaderProps) {
+        this.booksLoader = booksLoader;
+        this.loaderProps = loaderProps;
+    }
+
+    /**
+     * starts watching the directory, once the application is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() throws IOException {
+        Path directory = loaderProps.watchDirectory();
+        if (directory == null)
+            return;
+        Files.createDirectories(directory);
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        Thread.ofVirtual().name("books-watcher").start(() -> watch(directory));
+        log.info("Watching the books files of {}", directory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null)
+            watchService.close();
+    }
+
+    /**
+     * statuses of the files seen on the directory
+     *
+     * @return status by file name
+     */
+    public Map<String, FileStatus> statuses() {
+        return new TreeMap<>(statuses);
+    }
+
+    public FileStatus status(String fileName) {
+        return statuses.get(fileName);
+    }
+
+    private void watch(Path directory) {
+        scan(directory);
+        long debounce = loaderProps.watchDebounce().toNanos();
+        try {
+            while (true) {
+                WatchKey key = pending.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(Math.max(1, debounce / 4), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW)
+                            scan(directory);
+                        else
+                            queue(directory.resolve((Path) event.context()));
+                    }
+                    if (!key.reset()) {
+                        log.error("The books directory {} is no longer accessible", directory);
+                        return;
+                    }
+                }
+                loadDue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * queues all the books files of the directory (at start, or when events were lost)
+     */
+    private void scan(Path directory) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.json")) {
+            files.forEach(this::queue);
+        } catch (IOException e) {
+            log.error("Failed to scan the books directory {}", directory, e);
+        }
+    }
+
+    private void queue(Path file) {
+        if (!file.getFileName().toString().endsWith(".json"))
+            return;
+        pending.put(file, System.nanoTime() + loaderProps.watchDebounce().toNanos());
+        FileStatus previous = statuses.get(name(file));
+        statuses.put(name(file), new FileStatus(FileState.PENDING, Instant.now(),
+                previous == null ? null : previous.load()));
+    }
+
+    /**
+     * loads the files unchanged for the debounce time, once the startup load is over
+     * (done or failed, a failed startup load doesn't stop the watched files)
+     */
+    private void loadDue() {
+        BooksLoader.State state = booksLoader.progress().state();
+        if (state == BooksLoader.State.PENDING || state == BooksLoader.State.LOADING)
+            return;
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> entry = it.next();
+            if (entry.getValue() - now > 0)
+                continue;
+            it.remove();
+            load(entry.getKey());
+        }
+    }
+
+    private void load(Path file) {
+        String name = name(file);
+        if (!Files.isRegularFile(file)) {
+            statuses.remove(name);
+            return;
+        }
+        statuses.put(name, new FileStatus(FileState.LOADING, Instant.now(), null));
+        BooksLoader.FileLoad load;
+        try {
+            load = booksLoader.loadFile(file);
+        } catch (RuntimeException e) {
+            log.error("Failed to load books from {}", file, e);
+            load = new BooksLoader.FileLoad(file.toAbsolutePath().toString(), null, false, 0, 0, 0, e.getMessage());
+        }
+        FileState state = load.unchanged() ? FileState.UNCHANGED
+                : load.error() != null ? FileState.FAILED
+                : FileState.LOADED;
+        statuses.put(name, new FileStatus(state, Instant.now(), load));
+    }
+
+    private static String name(Path file) {
+        return file.getFileName().toString();
+    }
+}
@@ -1,112 +1,371 @@
 package prs.fmtareco.adventure.loader;
 
-import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.stereotype.Component;
 import prs.fmtareco.adventure.annotations.TrackExecution;
+import prs.fmtareco.adventure.config.LoaderProperties;
+import prs.fmtareco.adventure.dtos.BookLoadResult;
+import prs.fmtareco.adventure.loader.bundle.BookBundle;
 import prs.fmtareco.adventure.loader.json.BookJson;
 import prs.fmtareco.adventure.loader.mapper.BookMapper;
-import prs.fmtareco.adventure.model.Book;
-import prs.fmtareco.adventure.repository.BookRepository;
-import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.MappingIterator;
 import tools.jackson.databind.ObjectMapper;
 
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/*
+    loads the books files of the resources (books/lists/*.json, then books/*.json)
+    - runs once the application is ready (in the background, by default), so the application
+      is live at once, and ready (BooksLoaderHealthIndicator) once the books are loaded
+    - the files are parsed in parallel (virtual threads), at most `parallelism` files ahead
+      of the one being saved, and saved in their order (the ids don't depend on the parsing times)
+    - the books of a file are saved in batches, a transaction each
+    - a file whose SHA-256 matches the one recorded at its last load (BookSourceManifest) is not parsed,
+      a changed book of a changed file is loaded as a new version of the book
+    - a file above `stream-threshold` is not bound whole, but read as a stream (StreamingBookLoader)
+    - otherwise, a JSON file with a bundle written from it (x.bundle, BookBundleTool) is loaded
+      from the bundle, without parsing the JSON
+ */
 @Component
 public class BooksLoader {
 
     private static final Logger log = LoggerFactory.getLogger(BooksLoader.class);
 
-    private final BookRepository bookRepo;
+    public enum State { PENDING, LOADING, LOADED, FAILED }
+
+    /**
+     * progress of the load
+     *
+     * @param state - PENDING | LOADING | LOADED | FAILED (the load aborted before going through all the files)
+     * @param files - number of files found
+     * @param filesDone - number of files processed (loaded or failed)
+     * @param filesFailed - number of files that could not be read
+     * @param filesUnchanged - number of files skipped, unchanged since their last load
+     * @param loaded - number of books loaded
+     * @param skipped - number of books already in the catalog
+     * @param rejected - number of books that could not be loaded
+     */
+    public record Progress(
+            State state, int files, int filesDone, int filesFailed, int filesUnchanged,
+            int loaded, int skipped, int rejected
+    ) {}
+
+    /**
+     * outcome of the load of a books file
+     *
+     * @param source - path of the file (books/... for the resources)
+     * @param fileHash - SHA-256 of the file (null when it could not be read)
+     * @param unchanged - the file was skipped, unchanged since its last load
+     * @param loaded - number of books loaded
+     * @param skipped - number of books already in the catalog
+     * @param rejected - number of books that could not be loaded
+     * @param error - why the file, or some of its books, could not be loaded
+     */
+    public record FileLoad(
+            String source, String fileHash, boolean unchanged,
+            int loaded, int skipped, int rejected, String error
+    ) {}
+
+    private record ParsedFile(
+            Resource resource, String source, String fileHash, boolean unchanged, boolean streamed,
+            List<BookEntry> books, Exception error
+    ) {}
+
     private final ObjectMapper objectMapper;
+    private final BookBulkLoader bulkLoader;
+    private final LoaderProperties loaderProps;
+    private final BookSourceManifest manifest;
+    private final StreamingBookLoader streamingLoader;
     private final BookMapper bookMapper;
 
+    private volatile State state = State.PENDING;
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicInteger filesUnchanged = new AtomicInteger();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+
     public BooksLoader(
-            BookRepository bookRepository,
-            BookMapper bookMapper,
-            ObjectMapper objectMapper
+            ObjectMapper objectMapper,
+            BookBulkLoader bulkLoader,
+            LoaderProperties loaderProps,
+            BookSourceManifest manifest,
+            StreamingBookLoader streamingLoader,
+            BookMapper bookMapper
     ) {
-        this.bookRepo = bookRepository;
         this.objectMapper = objectMapper;
+        this.bulkLoader = bulkLoader;
+        this.loaderProps = loaderProps;
+        this.manifest = manifest;
+        this.streamingLoader = streamingLoader;
         this.bookMapper = bookMapper;
     }
 
+    /**
+     * starts loading the books, once the application is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (loaderProps.background())
+            Thread.ofVirtual().name("books-loader").start(this::loadAllBooks);
+        else
+            loadAllBooks();
+    }
+
+    public Progress progress() {
+        return new Progress(state, files.get(), filesDone.get(), filesFailed.get(),
+                filesUnchanged.get(), loaded.get(), skipped.get(), rejected.get());
+    }
+
+    /**
+     * loads the books files of the resources
+     * A file that can't be read is counted as failed, an error aborting the whole load
+     * (scan, manifest, interruption) ends it as FAILED
+     */
     @TrackExecution
-    @PostConstruct
     public void loadAllBooks() {
+        state = State.LOADING;
+        State outcome = State.FAILED;
         try {
-            Resource[] jsonFiles = new PathMatchingResourcePatternResolver()
-                    .getResources("classpath:books/lists/*.json");
-            for (Resource jsonFile : jsonFiles) {
-                loadMultipleBooksResource(jsonFile);
-                log.info("loaded : " + jsonFile);
+            List<Resource> resources = new ArrayList<>();
+            resources.addAll(findResources("classpath:books/lists/*.json"));
+            resources.addAll(findResources("classpath:books/*.json"));
+            files.set(resources.size());
+            Map<String, String> fileHashes = manifest.fileHashes();
+
+            int parallelism = loaderProps.parallelism() > 0
+                    ? loaderProps.parallelism()
+                    : Runtime.getRuntime().availableProcessors();
+            try (ExecutorService parsers = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<ParsedFile>> parsed = new ArrayList<>(resources.size());
+                for (int i = 0; i < resources.size(); i++) {
+                    while (parsed.size() < resources.size() && parsed.size() <= i + parallelism) {
+                        Resource resource = resources.get(parsed.size());
+                        String source = source(resource);
+                        parsed.add(parsers.submit(() -> parse(resource, source, fileHashes.get(source))));
+                    }
+                    ParsedFile file = parsed.get(i).get();
+                    parsed.set(i, null);
+                    add(saveFile(file));
+                    filesDone.incrementAndGet();
+                }
             }
+            outcome = State.LOADED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Books load interrupted");
         } catch (Exception e) {
-            log.error("Failed to scan multiple books JSON files", e);
+            log.error("Failed to load the books files", e);
+        } finally {
+            state = outcome;
+            Progress p = progress();
+            log.info("Books load {}: {} files ({} failed, {} unchanged), {} books loaded, {} skipped, {} rejected",
+                    outcome == State.LOADED ? "done" : "failed",
+                    p.files(), p.filesFailed(), p.filesUnchanged(), p.loaded(), p.skipped(), p.rejected());
         }
+    }
+
+    private List<Resource> findResources(String pattern) {
         try {
-            Resource[] jsonFiles = new PathMatchingResourcePatternResolver()
-                    .getResources("classpath:books/*.json");
-            for (Resource jsonFile : jsonFiles) {
-                loadSingleBookResource(jsonFile);
-                log.info("loaded : " + jsonFile);
-            }
+            return List.of(new PathMatchingResourcePatternResolver().getResources(pattern));
         } catch (Exception e) {
-            log.error("Failed to scan single book JSON files", e);
+            log.error("Failed to scan the books JSON files {}", pattern, e);
+            return List.of();
         }
     }
 
+    /**
+     * loads a single books file, outside the startup load (BooksDirectoryWatcher)
+     * - the file is identified by its absolute path, skipped when unchanged since its last load
+     *
+     * @param path - books file (a list of books, or a single book)
+     * @return the outcome of the load of the file
+     */
+    public FileLoad loadFile(Path path) {
+        String source = path.toAbsolutePath().normalize().toString();
+        return saveFile(parse(new FileSystemResource(path), source, manifest.fileHash(source)));
+    }
 
-    private void loadMultipleBooksResource(Resource jsonFile)  {
-        try (InputStream is = jsonFile.getInputStream()) {
-            if (is.available() == 0) {
-                log.error("Empty resource file : {}", jsonFile.getFilename());
-                return;
+    /**
+     * reads the books of a file (a JSON array of books, or a single book),
+     * unless the file is unchanged since its last load
+     */
+    private ParsedFile parse(Resource jsonFile, String source, String knownHash) {
+        String fileHash = null;
+        try {
+            try (InputStream is = jsonFile.getInputStream()) {
+                fileHash = BookSourceManifest.hash(is);
             }
-            List<BookJson> booksList =
-                    objectMapper.readValue(is, new TypeReference<List<BookJson>>() {});
-            for(BookJson bj : booksList) {
-                loadBook(bj);
+            if (fileHash.equals(knownHash))
+                return new ParsedFile(jsonFile, source, fileHash, true, false, List.of(), null);
+            if (jsonFile.isFile() && jsonFile.contentLength() > loaderProps.streamThreshold().toBytes())
+                return new ParsedFile(jsonFile, source, fileHash, false, true, List.of(), null);
+            BookBundle bundle = bundle(jsonFile, fileHash);
+            if (bundle != null)
+                return new ParsedFile(jsonFile, source, fileHash, false, false, bundle.entries(), null);
+            try (InputStream is = jsonFile.getInputStream()) {
+                if (is.available() == 0)
+                    throw new IllegalStateException("empty resource file");
+                try (MappingIterator<BookJson> it = objectMapper.readerFor(BookJson.class).readValues(is)) {
+                    List<BookEntry> books = it.readAll().stream().map(bookMapper::entry).toList();
+                    return new ParsedFile(jsonFile, source, fileHash, false, false, books, null);
+                }
             }
         } catch (Exception e) {
-            log.error("Failed to load books from {}", jsonFile.getFilename(), e);
+            return new ParsedFile(jsonFile, source, fileHash, false, false, List.of(), e);
         }
     }
-    private void loadSingleBookResource(Resource jsonFile)  {
-        try (InputStream is = jsonFile.getInputStream()) {
-            if (is.available() == 0) {
-                log.error("Empty resource file : {}", jsonFile.getFilename());
-                return;
+
+    /**
+     * the bundle of a JSON books file (x.json -> x.bundle), when there's one written from this JSON
+     *
+     * @return the bundle, null when there's none (or it's not a bundle of the JSON, which is then read)
+     */
+    private static BookBundle bundle(Resource jsonFile, String fileHash) throws IOException {
+        String name = jsonFile.getFilename();
+        if (name == null || !name.endsWith(".json"))
+            return null;
+        Resource file = jsonFile.createRelative(
+                name.substring(0, name.length() - ".json".length()) + BookBundle.EXTENSION);
+        if (!file.exists())
+            return null;
+        ByteBuffer content;
+        if (file.isFile()) {
+            try (FileChannel channel = FileChannel.open(file.getFile().toPath(), StandardOpenOption.READ)) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
             }
-            BookJson bookJson = objectMapper.readValue(is, BookJson.class);
-            loadBook(bookJson);
-        } catch (Exception e) {
-            log.error("Failed to load book from {}", jsonFile.getFilename(), e);
+        } else {
+            try (InputStream is = file.getInputStream()) {
+                content = ByteBuffer.wrap(is.readAllBytes());
+            }
+        }
+        BookBundle bundle;
+        try {
+            bundle = BookBundle.read(content);
+        } catch (IllegalArgumentException e) {
+            log.warn("{} : {}, reading the JSON", file.getFilename(), e.getMessage());
+            return null;
+        }
+        if (!fileHash.equals(bundle.sourceHash())) {
+            log.warn("{} is not the bundle of the current {}, reading the JSON", file.getFilename(), name);
+            return null;
         }
+        return bundle;
     }
-    private void loadBook(BookJson bookJson)  {
-        String title = bookJson.title();
-        String author = bookJson.author();
+
+    /**
+     * path of the file from the books folder (books/..., books/lists/...), whatever the classpath root
+     */
+    private static String source(Resource resource) {
         try {
-            if (bookRepo.existsByTitleIgnoreCaseAndAuthorIgnoreCase(title, author)) {
-                log.info("Skipped book: {} by {}", title, author);
-                return;
+            String uri = resource.getURI().toString();
+            int books = uri.lastIndexOf("/books/");
+            return books < 0 ? resource.getFilename() : uri.substring(books + 1);
+        } catch (IOException e) {
+            return resource.getFilename();
+        }
+    }
+
+    /**
+     * saves the books of a file, in batches
+     */
+    private FileLoad saveFile(ParsedFile file) {
+        if (file.error() != null) {
+            log.error("Failed to load books from {}", file.source(), file.error());
+            return new FileLoad(file.source(), file.fileHash(), false, 0, 0, 0, file.error().getMessage());
+        }
+        if (file.unchanged()) {
+            log.info("unchanged : {}", file.source());
+            return new FileLoad(file.source(), file.fileHash(), true, 0, 0, 0, null);
+        }
+        List<BookEntry> books = file.books();
+        List<BookLoadResult> fileResults = new ArrayList<>(books.size());
+        int failed = 0;
+        String error = null;
+        if (file.streamed()) {
+            try {
+                fileResults.addAll(streamingLoader.load(file.resource().getFile().toPath()));
+                fileResults.forEach(BooksLoader::log);
+            } catch (Exception e) {
+                error = e.getMessage();
+                log.error("Failed to stream the books of {}", file.source(), e);
             }
-            Book book = bookMapper.fromJson(bookJson);
+        }
+        int batchSize = Math.max(1, loaderProps.batchSize());
+        for (int from = 0; from < books.size(); from += batchSize) {
+            List<BookEntry> batch = books.subList(from, Math.min(books.size(), from + batchSize));
             try {
-                bookRepo.save(book);
+                List<BookLoadResult> results = loaderProps.bulkCopy()
+                        ? bulkLoader.loadEntries(batch)
+                        : bulkLoader.saveEntries(batch);
+                results.forEach(BooksLoader::log);
+                fileResults.addAll(results);
             } catch (Exception e) {
-                log.error("Failed to save book: {} by {}", title, author, e);
+                failed += batch.size();
+                error = e.getMessage();
+                log.error("Failed to save {} books from {}", batch.size(), file.source(), e);
             }
-            log.info("Loaded book: {} by {}", title, author);
-        } catch (Exception e) {
-            log.error("Failed to load book {} by {}", title, author, e);
+        }
+        // a file with a failed batch is not recorded, so it's read again on the next load
+        if (error == null) {
+            try {
+                manifest.record(file.source(), file.fileHash());
+            } catch (Exception e) {
+                log.error("Failed to record the load of {}", file.source(), e);
+            }
+        }
+        log.info("loaded : {}", file.source());
+        return new FileLoad(file.source(), file.fileHash(), false,
+                count(fileResults, BookLoadResult.LOADED),
+                count(fileResults, BookLoadResult.SKIPPED),
+                count(fileResults, BookLoadResult.REJECTED) + failed,
+                error);
+    }
+
+    private static int count(List<BookLoadResult> results, String status) {
+        return (int) results.stream().filter(r -> status.equals(r.status())).count();
+    }
+
+    /**
+     * adds the outcome of a file to the progress of the startup load
+     */
+    private void add(FileLoad file) {
+        if (file.unchanged())
+            filesUnchanged.incrementAndGet();
+        else if (file.error() != null && file.loaded() + file.skipped() + file.rejected() == 0)
+            // not read at all (a failed batch counts its books as rejected)
+            filesFailed.incrementAndGet();
+        loaded.addAndGet(file.loaded());
+        skipped.addAndGet(file.skipped());
+        rejected.addAndGet(file.rejected());
+    }
+
+    private static void log(BookLoadResult result) {
+        switch (result.status()) {
+            case BookLoadResult.LOADED -> log.info("Loaded book: {} by {}", result.title(), result.author());
+            case BookLoadResult.SKIPPED -> log.info("Skipped book: {} by {}", result.title(), result.author());
+            default -> log.error("Failed to load book {} by {} : {}", result.title(), result.author(), result.error());
         }
     }
 }
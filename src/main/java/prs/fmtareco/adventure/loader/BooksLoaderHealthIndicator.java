@@ -0,0 +1,42 @@
+package prs.fmtareco.adventure.loader;
+
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/*
+    health of the books load (booksLoader), part of the readiness group
+    - OUT_OF_SERVICE until the books files are loaded, so the instance gets no traffic
+      before the catalog is there, while its liveness is UP from the start
+    - DOWN when the load aborted (FAILED), the catalog being partial
+    - the details show the progress of the load
+ */
+@Component
+public class BooksLoaderHealthIndicator implements HealthIndicator {
+
+    private final BooksLoader booksLoader;
+
+    public BooksLoaderHealthIndicator(BooksLoader booksLoader) {
+        this.booksLoader = booksLoader;
+    }
+
+    @Override
+    public Health health() {
+        BooksLoader.Progress progress = booksLoader.progress();
+        Health.Builder health = switch (progress.state()) {
+            case LOADED -> Health.up();
+            case FAILED -> Health.down();
+            case PENDING, LOADING -> Health.outOfService();
+        };
+        return health
+                .withDetail("state", progress.state())
+                .withDetail("files", progress.files())
+                .withDetail("filesDone", progress.filesDone())
+                .withDetail("filesFailed", progress.filesFailed())
+                .withDetail("filesUnchanged", progress.filesUnchanged())
+                .withDetail("loaded", progress.loaded())
+                .withDetail("skipped", progress.skipped())
+                .withDetail("rejected", progress.rejected())
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+package prs.fmtareco.adventure.loader;
+
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HexFormat;
+
+/*
+    rows streamed to a table by a COPY ... FROM STDIN (PostgreSQL text format)
+    - fields are tab separated, rows end with a newline, null is \N
+    - rows are encoded to a fixed size buffer, sent to the server each time it fills up,
+      so a COPY of any size takes the same memory
+ */
+final class CopyRows implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final CopyIn copy;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder row = new StringBuilder(256);
+    private boolean ended;
+
+    private CopyRows(CopyIn copy) {
+        this.copy = copy;
+    }
+
+    /**
+     * starts the COPY of rows to a table
+     *
+     * @param copyApi - copy API of the connection
+     * @param table - table name
+     * @param columns - comma separated columns, in the order of the fields of the rows
+     * @return CopyRows of the table
+     */
+    static CopyRows into(CopyManager copyApi, String table, String columns) throws SQLException {
+        return new CopyRows(copyApi.copyIn("COPY " + table + " (" + columns + ") FROM STDIN"));
+    }
+
+    /**
+     * adds a row to the COPY
+     * - strings are escaped, enums sent by name, byte arrays as hex (bytea), other values as their toString()
+     *
+     * @param fields - values of the row (null allowed)
+     */
+    void add(Object... fields) throws SQLException {
+        row.setLength(0);
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0)
+                row.append('\t');
+            Object field = fields[i];
+            if (field == null) {
+                row.append("\\N");
+            } else if (field instanceof Enum<?> value) {
+                escape(value.name());
+            } else if (field instanceof byte[] bytes) {
+                row.append("\\\\x").append(HEX.formatHex(bytes));
+            } else {
+                escape(field.toString());
+            }
+        }
+        row.append('\n');
+        write(CharBuffer.wrap(row));
+    }
+
+    /**
+     * ends the COPY, sending the remaining rows
+     *
+     * @return number of rows copied
+     */
+    long end() throws SQLException {
+        flush();
+        ended = true;
+        return copy.endCopy();
+    }
+
+    /**
+     * cancels the COPY when it didn't end (failure)
+     */
+    @Override
+    public void close() throws SQLException {
+        if (!ended && copy.isActive())
+            copy.cancelCopy();
+    }
+
+    private void escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> row.append("\\\\");
+                case '\t' -> row.append("\\t");
+                case '\n' -> row.append("\\n");
+                case '\r' -> row.append("\\r");
+                default -> row.append(c);
+            }
+        }
+    }
+
+    private void write(CharBuffer chars) throws SQLException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                flush();
+            } else if (result.isError()) {
+                throw new SQLException("invalid text in COPY row: " + result);
+            } else {
+                encoder.reset();
+                return;
+            }
+        }
+    }
+
+    private void flush() throws SQLException {
+        if (buffer.position() > 0) {
+            copy.writeToCopy(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
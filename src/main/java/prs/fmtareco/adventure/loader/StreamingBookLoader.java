@@ -0,0 +1,392 @@
+package prs.fmtareco.adventure.loader;
+
+import jakarta.transaction.Transactional;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import prs.fmtareco.adventure.annotations.TrackExecution;
+import prs.fmtareco.adventure.config.LoaderProperties;
+import prs.fmtareco.adventure.dtos.BookLoadResult;
+import prs.fmtareco.adventure.loader.json.SectionJson;
+import prs.fmtareco.adventure.loader.mapper.SectionMapper;
+import prs.fmtareco.adventure.model.*;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+    loads the books files too large to be bound whole (above adventure.loader.stream-threshold)
+    - the file is memory mapped and read token by token (JsonParser), a single book or a JSON array of books
+    - the sections are bound one at a time, and copied to the stage tables of the bulk loads
+      every `stream-chunk-size` sections, so the memory taken depends on the chunk size, not on the book size
+    - what needs the whole book is computed on the stage: the repeated sections, the condition
+      (the rules of BookValidator) and the content hash (sections read back by number, through a cursor)
+    - the book then moves to the catalog as on the bulk loads (BookBulkLoader.moveStaged)
+    - the books of a file are loaded in a single transaction
+ */
+@Component
+public class StreamingBookLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingBookLoader.class);
+
+    private static final TypeReference<List<String>> CATEGORIES = new TypeReference<>() {};
+
+    private static final String CLEAR_STAGE = """
+            TRUNCATE stage_books, stage_categories, stage_sections, stage_texts, stage_options, stage_consequences""";
+
+    private static final String REPEATED_SECTION = """
+            SELECT section_number FROM stage_sections
+            GROUP BY section_number HAVING count(*) > 1 LIMIT 1""";
+
+    // first rule violated, in the order of BookValidator
+    private static final String CONDITION = """
+            SELECT CASE
+                WHEN (SELECT count(*) FROM stage_sections WHERE type = 'BEGIN') <> 1 THEN 'INVALID_BEGIN'
+                WHEN NOT EXISTS (SELECT 1 FROM stage_sections WHERE type = 'END') THEN 'NO_END'
+                WHEN EXISTS (SELECT 1 FROM stage_options o
+                             WHERE NOT EXISTS (SELECT 1 FROM stage_sections s
+                                               WHERE s.section_number = o.goto_section_number)) THEN 'INVALID_GOTO'
+                WHEN EXISTS (SELECT 1 FROM stage_sections s
+                             WHERE s.type <> 'END'
+                               AND NOT EXISTS (SELECT 1 FROM stage_options o
+                                               WHERE o.section_key = s.section_key)) THEN 'NO_OPTIONS'
+                ELSE 'OK' END""";
+
+    // sections with their texts, options and consequences, in the order of BookDigest
+    private static final String CONTENT = """
+            SELECT s.section_number, s.type, t.codec, t.text_length, t.data,
+                   count(o.option_key) OVER (PARTITION BY s.section_key),
+                   o.option_key, o.description, o.goto_section_number, c.type, c.value, c.text
+            FROM stage_sections s
+            LEFT JOIN stage_texts t ON t.section_key = s.section_key
+            LEFT JOIN stage_options o ON o.section_key = s.section_key
+            LEFT JOIN stage_consequences c ON c.option_key = o.option_key
+            ORDER BY s.section_number, o.option_key""";
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final SectionMapper sectionMapper;
+    private final LoaderProperties loaderProps;
+
+    public StreamingBookLoader(
+            JdbcTemplate jdbc,
+            ObjectMapper objectMapper,
+            SectionMapper sectionMapper,
+            LoaderProperties loaderProps
+    ) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.sectionMapper = sectionMapper;
+        this.loaderProps = loaderProps;
+    }
+
+    /**
+     * loads the books of a file, read as a stream
+     * - a book already stored with the same content is skipped,
+     *   a book stored with a different content is loaded as a new version
+     * - the books that can't be stored (missing values, repeated sections or options) are rejected
+     *
+     * @param file - books file (a single book, or a JSON array of books)
+     * @return the result of each book, in the order of the file
+     */
+    @Transactional
+    @TrackExecution
+    public List<BookLoadResult> load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             InputStream in = open(channel);
+             JsonParser parser = objectMapper.createParser(in)) {
+            return jdbc.execute((ConnectionCallback<List<BookLoadResult>>) con -> load(con, parser));
+        }
+    }
+
+    private List<BookLoadResult> load(Connection con, JsonParser parser) throws SQLException {
+        List<BookLoadResult> results = new ArrayList<>();
+        try (Statement st = con.createStatement()) {
+            st.execute(BookBulkLoader.CREATE_STAGE);
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    results.add(loadBook(con, parser));
+                    st.execute(CLEAR_STAGE);
+                }
+            } else {
+                results.add(loadBook(con, parser));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * reads a book, copying its sections to the stage as they are read, and moves it to the catalog
+     */
+    private BookLoadResult loadBook(Connection con, JsonParser parser) throws SQLException {
+        if (parser.currentToken() != JsonToken.START_OBJECT)
+            throw new IllegalStateException("book expected, found " + parser.currentToken());
+        CopyManager copyApi = con.unwrap(PGConnection.class).getCopyAPI();
+        String title = null;
+        String author = null;
+        Book.Difficulty difficulty = null;
+        List<String> categories = null;
+        SectionRows sections = new SectionRows(copyApi, Math.max(1, loaderProps.streamChunkSize()));
+        while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "title" -> title = parser.getValueAsString();
+                case "author" -> author = parser.getValueAsString();
+                case "difficulty" -> difficulty = objectMapper.readValue(parser, Book.Difficulty.class);
+                case "categories" -> categories = objectMapper.readValue(parser, CATEGORIES);
+                case "sections" -> readSections(parser, sections);
+                default -> parser.skipChildren();
+            }
+        }
+        sections.flush();
+
+        BookLoadResult.BookLoadResultBuilder result = BookLoadResult.builder().title(title).author(author);
+        String error = title == null ? "title missing"
+                : author == null ? "author missing"
+                : difficulty == null ? "difficulty missing"
+                : sections.error;
+        if (error == null)
+            error = repeatedSection(con);
+        if (error != null)
+            return result.status(BookLoadResult.REJECTED).error(error).build();
+
+        Book.Condition condition = condition(con);
+        String contentHash = contentHash(con);
+        result.contentHash(contentHash);
+        try (CopyRows rows = CopyRows.into(copyApi, "stage_books",
+                "book_key, title, author, difficulty, condition, content_hash")) {
+            rows.add(0, title, author, difficulty, condition, contentHash);
+            rows.end();
+        }
+        try (CopyRows rows = CopyRows.into(copyApi, "stage_categories", "book_key, name")) {
+            if (categories != null)
+                for (String name : categories)
+                    rows.add(0, name);
+            rows.end();
+        }
+        Map<Integer, BookBulkLoader.LoadedBook> loaded;
+        try (Statement st = con.createStatement()) {
+            loaded = BookBulkLoader.moveStaged(st);
+        }
+        BookBulkLoader.LoadedBook book = loaded.get(0);
+        if (book == null)
+            return result.status(BookLoadResult.SKIPPED).build();
+        log.info("Streamed book {} by {}: {} sections", title, author, sections.sectionKey);
+        return result.status(BookLoadResult.LOADED).id(book.id()).version(book.version())
+                .condition(condition.name())
+                .build();
+    }
+
+    /**
+     * binds the sections one at a time (the sections of a rejected book are skipped)
+     */
+    private void readSections(JsonParser parser, SectionRows sections) throws SQLException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (sections.error != null) {
+                parser.skipChildren();
+                continue;
+            }
+            SectionJson json = objectMapper.readValue(parser, SectionJson.class);
+            Section section;
+            try {
+                section = sectionMapper.fromJson(json);
+            } catch (Exception e) {
+                log.error(e.getMessage());
+                continue;
+            }
+            sections.add(section);
+        }
+    }
+
+    private String repeatedSection(Connection con) throws SQLException {
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery(REPEATED_SECTION)) {
+            return rs.next() ? "section " + rs.getInt(1) + " repeated" : null;
+        }
+    }
+
+    private Book.Condition condition(Connection con) throws SQLException {
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery(CONDITION)) {
+            rs.next();
+            return Book.Condition.valueOf(rs.getString(1));
+        }
+    }
+
+    /**
+     * content hash of the staged book, the rows read through a cursor (fetch size)
+     */
+    private String contentHash(Connection con) throws SQLException {
+        BookDigest digest = BookDigest.start();
+        try (Statement st = con.createStatement()) {
+            st.setFetchSize(Math.max(1, loaderProps.streamChunkSize()));
+            try (ResultSet rs = st.executeQuery(CONTENT)) {
+                Integer section = null;
+                while (rs.next()) {
+                    int number = rs.getInt(1);
+                    if (section == null || section != number) {
+                        section = number;
+                        String codec = rs.getString(3);
+                        String text = codec == null ? null
+                                : SectionText.text(SectionText.Codec.valueOf(codec), rs.getInt(4), rs.getBytes(5));
+                        digest.section(number, Section.Type.valueOf(rs.getString(2)), text, rs.getInt(6));
+                    }
+                    if (rs.getObject(7) == null)
+                        continue;
+                    String csqType = rs.getString(10);
+                    Consequence csq = csqType == null ? null
+                            : Consequence.create(Consequence.Type.valueOf(csqType), rs.getInt(11), rs.getString(12));
+                    digest.option(rs.getString(8), rs.getInt(9), csq);
+                }
+            }
+        }
+        return digest.hex();
+    }
+
+    private static InputStream open(FileChannel channel) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE)
+            return Channels.newInputStream(channel);
+        return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+
+    /**
+     * sections of the book being read, copied to the stage a chunk at a time
+     */
+    private static final class SectionRows {
+        private final CopyManager copyApi;
+        private final int chunkSize;
+        private final List<Section> chunk;
+        private int sectionKey;
+        private int optionKey;
+        private String error;
+
+        SectionRows(CopyManager copyApi, int chunkSize) {
+            this.copyApi = copyApi;
+            this.chunkSize = chunkSize;
+            this.chunk = new ArrayList<>(chunkSize);
+        }
+
+        void add(Section section) throws SQLException {
+            error = BookValidator.storageError(section);
+            if (error != null) {
+                chunk.clear();
+                return;
+            }
+            chunk.add(section);
+            if (chunk.size() == chunkSize)
+                flush();
+        }
+
+        void flush() throws SQLException {
+            if (chunk.isEmpty() || error != null)
+                return;
+            int firstSection = sectionKey;
+            int firstOption = optionKey;
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_sections",
+                    "section_key, book_key, section_number, type")) {
+                int key = firstSection;
+                for (Section section : chunk)
+                    rows.add(key++, 0, section.getSectionNumber(), section.getType());
+                rows.end();
+            }
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_texts",
+                    "text_key, book_key, section_key, codec, text_length, data")) {
+                int key = firstSection;
+                for (Section section : chunk) {
+                    String text = section.getText();
+                    if (text != null) {
+                        SectionText content = SectionText.of(text);
+                        rows.add(key, 0, key, content.getCodec(), content.getLength(), content.getData());
+                    }
+                    key++;
+                }
+                rows.end();
+            }
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_options",
+                    "option_key, book_key, section_key, description, goto_section_number")) {
+                int key = firstSection;
+                int option = firstOption;
+                for (Section section : chunk) {
+                    for (Option o : section.getOptions())
+                        rows.add(option++, 0, key, o.getDescription(), o.getGotoSectionNumber());
+                    key++;
+                }
+                rows.end();
+            }
+            try (CopyRows rows = CopyRows.into(copyApi, "stage_consequences",
+                    "consequence_key, book_key, option_key, type, value, text")) {
+                int option = firstOption;
+                for (Section section : chunk) {
+                    for (Option o : section.getOptions()) {
+                        Consequence csq = o.getConsequence();
+                        if (csq != null)
+                            rows.add(option, 0, option, csq.getType(), csq.getValue(), csq.getText());
+                        option++;
+                    }
+                }
+                rows.end();
+            }
+            sectionKey += chunk.size();
+            optionKey += chunk.stream().mapToInt(s -> s.getOptions().size()).sum();
+            chunk.clear();
+        }
+    }
+
+    /**
+     * reads a memory mapped file, its pages are read as the parser goes (and can be dropped once read)
+     */
+    private static final class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
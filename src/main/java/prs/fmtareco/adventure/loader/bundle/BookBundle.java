@@ -0,0 +1,198 @@
+package prs.fmtareco.adventure.loader.bundle;
+
+import prs.fmtareco.adventure.loader.BookEntry;
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Consequence;
+import prs.fmtareco.adventure.model.Option;
+import prs.fmtareco.adventure.model.Section;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/*
+    precompiled books file (.bundle), read in place: the books are mapped straight from the buffer
+    (a memory mapped file), without JSON parsing nor intermediate records
+    - layout, all the values are big endian ints:
+        header      : magic, version, books, categories, sections, options, strings, pool bytes,
+                      and the SHA-256 (32 bytes) of the JSON file the bundle was written from
+        books       : title, author, difficulty, first category, categories, first section, sections
+        categories  : name
+        sections    : number, type, text, first option, options
+        options     : description, goto section, consequence (0 none, 1 present), type, value, text
+        strings     : offset of each string on the pool, and the pool end
+        pool        : UTF-8 bytes of the strings (each string once)
+    - strings (and enum names) are indexes on the string table, NONE for null,
+      numbers are NULL_INT for null
+    - the books are mapped as BookMapper maps the JSON, so they have the same content hash
+    - written by BookBundleWriter (BookBundleTool, from the JSON books files), the loader
+      uses a bundle only while it's the one of the JSON file (same SHA-256)
+ */
+public final class BookBundle {
+
+    public static final String EXTENSION = ".bundle";
+    public static final int MAGIC = 0x41424E44; // "ABND"
+    public static final int VERSION = 1;
+
+    static final int HEADER_INTS = 8;
+    static final int SOURCE_HASH_BYTES = 32;
+    static final int HEADER_BYTES = HEADER_INTS * Integer.BYTES + SOURCE_HASH_BYTES;
+    static final int BOOK_INTS = 7;
+    static final int SECTION_INTS = 5;
+    static final int OPTION_INTS = 6;
+    static final int NONE = -1;
+    static final int NULL_INT = Integer.MIN_VALUE;
+
+    private final ByteBuffer buffer;
+    private final int books;
+    private final int booksAt;
+    private final int categoriesAt;
+    private final int sectionsAt;
+    private final int optionsAt;
+    private final int stringsAt;
+    private final int poolAt;
+
+    private BookBundle(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("not a book bundle");
+        int version = buffer.getInt(4);
+        if (version != VERSION)
+            throw new IllegalArgumentException("unsupported book bundle version " + version);
+        books = buffer.getInt(8);
+        int categories = buffer.getInt(12);
+        int sections = buffer.getInt(16);
+        int options = buffer.getInt(20);
+        int strings = buffer.getInt(24);
+        int poolBytes = buffer.getInt(28);
+        booksAt = HEADER_BYTES;
+        categoriesAt = booksAt + books * BOOK_INTS * Integer.BYTES;
+        sectionsAt = categoriesAt + categories * Integer.BYTES;
+        optionsAt = sectionsAt + sections * SECTION_INTS * Integer.BYTES;
+        stringsAt = optionsAt + options * OPTION_INTS * Integer.BYTES;
+        poolAt = stringsAt + (strings + 1) * Integer.BYTES;
+        if (buffer.limit() < poolAt + poolBytes)
+            throw new IllegalArgumentException("truncated book bundle");
+    }
+
+    /**
+     * reads a bundle (the buffer is read in place, not copied)
+     *
+     * @param buffer - content of the bundle file
+     * @return BookBundle of the content
+     */
+    public static BookBundle read(ByteBuffer buffer) {
+        return new BookBundle(buffer.slice());
+    }
+
+    public int size() {
+        return books;
+    }
+
+    /**
+     * @return hex SHA-256 of the JSON file the bundle was written from
+     */
+    public String sourceHash() {
+        byte[] hash = new byte[SOURCE_HASH_BYTES];
+        buffer.get(HEADER_INTS * Integer.BYTES, hash);
+        return HexFormat.of().formatHex(hash);
+    }
+
+    /**
+     * @return the books of the bundle, mapped when loaded
+     */
+    public List<BookEntry> entries() {
+        List<BookEntry> entries = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            int book = i;
+            entries.add(new BookEntry(
+                    string(bookInt(book, 0)), string(bookInt(book, 1)), categories(book), () -> content(book)));
+        }
+        return entries;
+    }
+
+    /**
+     * maps a book and its sections, without the categories
+     *
+     * @param book - position of the book on the bundle
+     * @return Book (not persisted) with its content hash
+     */
+    public Book content(int book) {
+        String difficulty = string(bookInt(book, 2));
+        Book result = Book.create(string(bookInt(book, 0)), string(bookInt(book, 1)),
+                difficulty == null ? null : Book.Difficulty.valueOf(difficulty));
+        int first = bookInt(book, 5);
+        int count = bookInt(book, 6);
+        for (int s = first; s < first + count; s++)
+            result.addSection(section(s));
+        result.refreshContentHash();
+        return result;
+    }
+
+    private List<String> categories(int book) {
+        int first = bookInt(book, 3);
+        int count = bookInt(book, 4);
+        List<String> names = new ArrayList<>(count);
+        for (int c = first; c < first + count; c++)
+            names.add(string(buffer.getInt(categoriesAt + c * Integer.BYTES)));
+        return names;
+    }
+
+    private Section section(int s) {
+        int at = sectionsAt + s * SECTION_INTS * Integer.BYTES;
+        Section section = new Section();
+        section.setSectionNumber(integer(buffer.getInt(at)));
+        String type = string(buffer.getInt(at + 4));
+        section.setType(type == null ? null : Section.Type.valueOf(type));
+        section.setText(string(buffer.getInt(at + 8)));
+        int first = buffer.getInt(at + 12);
+        int count = buffer.getInt(at + 16);
+        for (int o = first; o < first + count; o++)
+            section.addOption(option(o));
+        return section;
+    }
+
+    private Option option(int o) {
+        int at = optionsAt + o * OPTION_INTS * Integer.BYTES;
+        Option option = new Option();
+        option.setDescription(string(buffer.getInt(at)));
+        option.setGotoSectionNumber(integer(buffer.getInt(at + 4)));
+        if (buffer.getInt(at + 8) != 0) {
+            Consequence consequence = new Consequence();
+            String type = string(buffer.getInt(at + 12));
+            consequence.setType(type == null ? null : Consequence.Type.valueOf(type));
+            consequence.setValue(integer(buffer.getInt(at + 16)));
+            consequence.setText(string(buffer.getInt(at + 20)));
+            consequence.setOption(option);
+            option.setConsequence(consequence);
+        }
+        return option;
+    }
+
+    private int bookInt(int book, int field) {
+        return buffer.getInt(booksAt + (book * BOOK_INTS + field) * Integer.BYTES);
+    }
+
+    private static Integer integer(int value) {
+        return value == NULL_INT ? null : value;
+    }
+
+    /**
+     * decodes a string of the pool (from the backing array, when the buffer has one)
+     */
+    private String string(int index) {
+        if (index == NONE)
+            return null;
+        int start = buffer.getInt(stringsAt + index * Integer.BYTES);
+        int end = buffer.getInt(stringsAt + (index + 1) * Integer.BYTES);
+        if (buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + poolAt + start, end - start,
+                    StandardCharsets.UTF_8);
+        byte[] bytes = new byte[end - start];
+        buffer.get(poolAt + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,91 @@
+package prs.fmtareco.adventure.loader.bundle;
+
+import prs.fmtareco.adventure.loader.BookSourceManifest;
+import prs.fmtareco.adventure.loader.json.BookJson;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+    command line tool writing the bundle of each JSON books file (x.json -> x.bundle, on the same folder)
+    - arguments: JSON files, or folders (their JSON files, sub folders included)
+    - run from the application jar:
+        java -cp adventure.jar -Dloader.main=prs.fmtareco.adventure.loader.bundle.BookBundleTool \
+             org.springframework.boot.loader.launch.PropertiesLauncher src/main/resources/books
+ */
+public final class BookBundleTool {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private BookBundleTool() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: BookBundleTool <JSON books file or folder>...");
+            System.exit(2);
+        }
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            try (Stream<Path> paths = Files.walk(Path.of(arg))) {
+                paths.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".json"))
+                        .sorted()
+                        .forEach(files::add);
+            }
+        }
+        int failed = 0;
+        for (Path file : files) {
+            try {
+                Path bundle = bundle(file);
+                List<BookJson> books = read(file);
+                String sourceHash;
+                try (InputStream in = Files.newInputStream(file)) {
+                    sourceHash = BookSourceManifest.hash(in);
+                }
+                byte[] content = BookBundleWriter.write(books, sourceHash);
+                Files.write(bundle, content);
+                System.out.printf("%s -> %s : %d books, %d bytes (JSON %d bytes)%n",
+                        file, bundle.getFileName(), books.size(), content.length, Files.size(file));
+            } catch (Exception e) {
+                failed++;
+                System.err.printf("%s : %s%n", file, e.getMessage());
+            }
+        }
+        if (failed > 0)
+            System.exit(1);
+    }
+
+    /**
+     * reads the books of a JSON file (a JSON array of books, or a single book)
+     *
+     * @param file - JSON books file
+     * @return the books of the file
+     */
+    public static List<BookJson> read(Path file) throws IOException {
+        if (Files.size(file) == 0)
+            throw new IllegalStateException("empty books file");
+        try (InputStream in = Files.newInputStream(file);
+             MappingIterator<BookJson> it = MAPPER.readerFor(BookJson.class).readValues(in)) {
+            return it.readAll();
+        }
+    }
+
+    /**
+     * @param json - JSON books file
+     * @return path of its bundle
+     */
+    public static Path bundle(Path json) {
+        String name = json.getFileName().toString();
+        return json.resolveSibling(name.substring(0, name.length() - ".json".length()) + BookBundle.EXTENSION);
+    }
+}
@@ -0,0 +1,130 @@
+package prs.fmtareco.adventure.loader.bundle;
+
+import prs.fmtareco.adventure.loader.json.BookJson;
+import prs.fmtareco.adventure.loader.json.ConsequenceJson;
+import prs.fmtareco.adventure.loader.json.OptionJson;
+import prs.fmtareco.adventure.loader.json.SectionJson;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/*
+    writes the books read from JSON as a bundle (layout on BookBundle)
+    - the tables are filled in a first pass, with the strings added to the pool once each,
+      then written to a buffer of the exact size
+ */
+public final class BookBundleWriter {
+
+    private final List<int[]> books = new ArrayList<>();
+    private final List<Integer> categories = new ArrayList<>();
+    private final List<int[]> sections = new ArrayList<>();
+    private final List<int[]> options = new ArrayList<>();
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<Integer> offsets = new ArrayList<>();
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    private BookBundleWriter() {}
+
+    /**
+     * writes the books as a bundle
+     *
+     * @param books - books read from a JSON file
+     * @param sourceHash - hex SHA-256 of the JSON file
+     * @return content of the bundle file
+     */
+    public static byte[] write(List<BookJson> books, String sourceHash) {
+        BookBundleWriter writer = new BookBundleWriter();
+        books.forEach(writer::add);
+        return writer.toBytes(HexFormat.of().parseHex(sourceHash));
+    }
+
+    private void add(BookJson book) {
+        int firstCategory = categories.size();
+        if (book.categories() != null)
+            for (String name : book.categories())
+                categories.add(string(name));
+        int firstSection = sections.size();
+        if (book.sections() != null)
+            book.sections().forEach(this::add);
+        books.add(new int[] {
+                string(book.title()), string(book.author()), string(name(book.difficulty())),
+                firstCategory, categories.size() - firstCategory,
+                firstSection, sections.size() - firstSection });
+    }
+
+    private void add(SectionJson section) {
+        int firstOption = options.size();
+        if (section.options() != null)
+            section.options().forEach(this::add);
+        sections.add(new int[] {
+                integer(section.id()), string(name(section.type())), string(section.text()),
+                firstOption, options.size() - firstOption });
+    }
+
+    private void add(OptionJson option) {
+        ConsequenceJson csq = option.consequence();
+        options.add(new int[] {
+                string(option.description()), integer(option.gotoId()),
+                csq == null ? 0 : 1,
+                csq == null ? BookBundle.NONE : string(name(csq.type())),
+                csq == null ? BookBundle.NULL_INT : integer(csq.value()),
+                csq == null ? BookBundle.NONE : string(csq.text()) });
+    }
+
+    private byte[] toBytes(byte[] sourceHash) {
+        if (sourceHash.length != BookBundle.SOURCE_HASH_BYTES)
+            throw new IllegalArgumentException("SHA-256 expected");
+        int ints = books.size() * BookBundle.BOOK_INTS
+                + categories.size()
+                + sections.size() * BookBundle.SECTION_INTS
+                + options.size() * BookBundle.OPTION_INTS
+                + offsets.size() + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(BookBundle.HEADER_BYTES + ints * Integer.BYTES + pool.size());
+        buffer.putInt(BookBundle.MAGIC)
+                .putInt(BookBundle.VERSION)
+                .putInt(books.size())
+                .putInt(categories.size())
+                .putInt(sections.size())
+                .putInt(options.size())
+                .putInt(offsets.size())
+                .putInt(pool.size())
+                .put(sourceHash);
+        books.forEach(row -> putInts(buffer, row));
+        categories.forEach(buffer::putInt);
+        sections.forEach(row -> putInts(buffer, row));
+        options.forEach(row -> putInts(buffer, row));
+        offsets.forEach(buffer::putInt);
+        buffer.putInt(pool.size());
+        buffer.put(pool.toByteArray());
+        return buffer.array();
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] row) {
+        for (int value : row)
+            buffer.putInt(value);
+    }
+
+    private int string(String value) {
+        if (value == null)
+            return BookBundle.NONE;
+        return strings.computeIfAbsent(value, s -> {
+            offsets.add(pool.size());
+            pool.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+            return offsets.size() - 1;
+        });
+    }
+
+    private static int integer(Integer value) {
+        return value == null ? BookBundle.NULL_INT : value;
+    }
+
+    private static String name(Enum<?> value) {
+        return value == null ? null : value.name();
+    }
+}
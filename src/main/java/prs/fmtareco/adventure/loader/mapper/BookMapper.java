@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import prs.fmtareco.adventure.factory.BookFactory;
+import prs.fmtareco.adventure.loader.BookEntry;
 import prs.fmtareco.adventure.loader.BooksLoader;
 import prs.fmtareco.adventure.loader.json.BookJson;
 import prs.fmtareco.adventure.loader.json.SectionJson;
@@ -13,6 +14,7 @@ import prs.fmtareco.adventure.model.Book;
 import prs.fmtareco.adventure.model.Section;
 import prs.fmtareco.adventure.service.BookService;
 
+import java.util.List;
 
 @Component
 @RequiredArgsConstructor
@@ -25,17 +27,54 @@ public class BookMapper {
 
 
     public Book fromJson(BookJson json) {
+        Book book = contentFromJson(json);
+        fromJsonCategories(book, json);
+        return book;
+    }
+
+    /**
+     * maps the book and its sections, without the categories (no database access)
+     *
+     * @param json - book read from JSON
+     * @return Book (not persisted) with its content hash
+     */
+    public Book contentFromJson(BookJson json) {
         Book book = Book.create(json.title(), json.author(),json.difficulty());
         fromJsonSections(book, json);
-        fromJsonCategories(book, json);
-        book.setBookCondition();
+        book.refreshContentHash();
         return book;
     }
 
-    private void fromJsonCategories(Book book, BookJson json) {
-        if (json.categories() == null)
+    /**
+     * book of a JSON file, mapped when loaded
+     *
+     * @param json - book read from JSON
+     * @return BookEntry of the book
+     */
+    public BookEntry entry(BookJson json) {
+        return new BookEntry(json.title(), json.author(), json.categories(), () -> contentFromJson(json));
+    }
+
+    /**
+     * associates the categories of the JSON to the book (creating the missing ones)
+     *
+     * @param book - book mapped from the JSON
+     * @param json - book read from JSON
+     */
+    public void fromJsonCategories(Book book, BookJson json) {
+        fromCategories(book, json.categories());
+    }
+
+    /**
+     * associates the categories to the book (creating the missing ones)
+     *
+     * @param book - book mapped from a books file
+     * @param categories - names of the categories (null when none)
+     */
+    public void fromCategories(Book book, List<String> categories) {
+        if (categories == null)
             return;
-        for (String categoryName: json.categories()) {
+        for (String categoryName: categories) {
             try {
                 bookFactory.addCategoryToBook(book, categoryName);
             } catch (Exception e) {
@@ -21,7 +21,8 @@ public class Book {
      * book numeric key
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "books_seq")
+    @SequenceGenerator(name = "books_seq", sequenceName = "books_seq", allocationSize = 50)
     private Long id;
 
     /**
@@ -57,6 +58,35 @@ public class Book {
     public void addSection(Section section) {
         getSections().add(section);
         section.setBook(this);
+        sectionIndex = null;
+    }
+
+    /**
+     * replaces the book sections (dropping the sections index)
+     * @param sections : the new sections
+     */
+    public void setSections(List<Section> sections) {
+        this.sections = sections;
+        sectionIndex = null;
+    }
+
+    /**
+     * sections index :
+     *      section by number and the initial section, built on the first lookup
+     *      and dropped whenever the sections are added or replaced (not persisted)
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private SectionIndex sectionIndex;
+
+    private SectionIndex sectionIndex() {
+        SectionIndex index = sectionIndex;
+        if (index == null) {
+            index = SectionIndex.of(getSections());
+            sectionIndex = index;
+        }
+        return index;
     }
 
     /**
@@ -64,15 +94,11 @@ public class Book {
      * @return begin section (optional)
      */
     public Optional<Section> getInitialSection() {
-        return getSections().stream()
-                .filter(s -> s.getType() == Section.Type.BEGIN)
-                .findFirst();
+        return Optional.ofNullable(sectionIndex().initialSection());
     }
 
     public Optional<Section> getSectionNumber(int sectionNumber) {
-        return getSections().stream()
-                .filter(s -> s.getSectionNumber() == sectionNumber)
-                .findFirst();
+        return Optional.ofNullable(sectionIndex().get(sectionNumber));
     }
 
     /**
@@ -177,6 +203,30 @@ public class Book {
 
     }
 
+    /**
+     * book content hash :
+     *      identifies the version of the book sections, options and consequences
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * book version :
+     *      a book file loaded again with a changed content is stored as a new version
+     *      (same title and author), the games of the previous versions go on
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer version = 1;
+
+    /**
+     * updates the book content hash, based on the current sections
+     */
+    public String refreshContentHash() {
+        contentHash = BookDigest.of(this);
+        return contentHash;
+    }
+
     public boolean isValid() {
         Condition cond = setBookCondition();
         return cond ==  Condition.OK;
@@ -188,62 +238,32 @@ public class Book {
      * @return Condition
      */
     public Condition checkCondition() {
-        if (!hasOneOnlyBeginSection())
-            return Condition.INVALID_BEGIN;
-        if (!hasAtLeastOneEndSection())
-            return  Condition.NO_END;
-        if (hasInvalidGoToSection())
-            return Condition.INVALID_GOTO;
-        if (hasNonFinalSectionWithoutOptions())
-            return Condition.NO_OPTIONS;
-        return Condition.OK;
+        return BookValidator.validate(this).condition();
     }
 
     /**
      * updates the book condition, based on condition evaluation
      */
     public Condition setBookCondition() {
-        condition = checkCondition();
-        return condition;
-    }
-
-
-    /**
-     * checks if Book has none, or more than one beginning
-     * @return true, if it is OK
-     */
-    public boolean hasOneOnlyBeginSection() {
-         return getSections().stream()
-                 .filter(s -> s.getType() == Section.Type.BEGIN).count() ==1;
-    }
-
-    /**
-     * checks if Book has no ending (but can have multiple)
-     * @return true, if it is OK
-     */
-    public boolean hasAtLeastOneEndSection() {
-        return getSections().stream()
-                .anyMatch(s -> s.getType() == Section.Type.END);
+        return validate().condition();
     }
 
     /**
-     * checks if Book has invalid next section id
-     * @return true, if it is NOT OK
+     * violations found on the last validation of the book (not persisted)
+     *      null, until the book is validated
      */
-    public boolean hasInvalidGoToSection() {
-        return getSections().stream()
-            .flatMap(s -> s.getOptions().stream())
-            .anyMatch(o -> getSections().stream().noneMatch(sec -> sec.getSectionNumber().equals(o.getGotoSectionNumber())));
-    }
+    @Transient
+    private List<BookValidator.Violation> violations;
 
     /**
-     * checks if Book has a non-ending section with no options
-     * @return true, if it is NOT OK
+     * validates the book, updating its condition and violations
+     * @return validation Result w/ the condition and all the violations found
      */
-    public boolean hasNonFinalSectionWithoutOptions() {
-        return getSections().stream()
-                .filter(s -> s.getType() != Section.Type.END)
-                .anyMatch(s -> s.getOptions().isEmpty());
+    public BookValidator.Result validate() {
+        BookValidator.Result result = BookValidator.validate(this);
+        condition = result.condition();
+        violations = result.violations();
+        return result;
     }
 
     public static Book create(String title, String author, Difficulty difficulty) {
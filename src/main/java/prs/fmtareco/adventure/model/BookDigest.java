@@ -0,0 +1,98 @@
+package prs.fmtareco.adventure.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+
+/*
+    computes the content hash (SHA-256) of a book sections, options and consequences
+    - sections are digested by section number, so the hash doesn't depend on the load order
+    - the book title, author, difficulty and categories are not part of the content
+ */
+public final class BookDigest {
+
+    private final MessageDigest digest;
+
+    private BookDigest() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param book - book to digest
+     * @return hex encoded SHA-256 of the book content
+     */
+    public static String of(Book book) {
+        BookDigest bd = new BookDigest();
+        book.getSections().stream()
+                .sorted(Comparator.comparing(Section::getSectionNumber))
+                .forEach(bd::update);
+        return bd.hex();
+    }
+
+    /**
+     * digest fed section by section (streamed loads), the sections must be given by section number
+     *
+     * @return empty BookDigest
+     */
+    public static BookDigest start() {
+        return new BookDigest();
+    }
+
+    /**
+     * adds a section, to be followed by its options
+     *
+     * @param number - section number
+     * @param type - section type
+     * @param text - section text
+     * @param options - number of options of the section
+     */
+    public void section(Integer number, Section.Type type, String text, int options) {
+        update(number);
+        update(type);
+        update(text);
+        update(options);
+    }
+
+    /**
+     * adds an option of the last section added
+     *
+     * @param description - option description
+     * @param gotoSectionNumber - target section
+     * @param csq - consequence of the option (null when none)
+     */
+    public void option(String description, Integer gotoSectionNumber, Consequence csq) {
+        update(description);
+        update(gotoSectionNumber);
+        if (csq == null) {
+            update(0);
+            return;
+        }
+        update(csq.getType());
+        update(csq.getValue());
+        update(csq.getText());
+    }
+
+    /**
+     * @return hex encoded SHA-256 of the content added
+     */
+    public String hex() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void update(Section section) {
+        section(section.getSectionNumber(), section.getType(), section.getText(), section.getOptions().size());
+        for (Option option : section.getOptions())
+            option(option.getDescription(), option.getGotoSectionNumber(), option.getConsequence());
+    }
+
+    private void update(Object value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,150 @@
+package prs.fmtareco.adventure.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+    validates the structure of a book, reporting every violation found
+    - the section numbers are indexed once (hash set), so each goto target is checked in O(1)
+    - a single pass over the sections checks the begin count, the end presence,
+      the goto targets and the options presence
+    - the book condition is the first violated rule, in the order of Book.Condition
+ */
+public final class BookValidator {
+
+    /**
+     * violation of a book rule, referencing the section (and option) where it was found
+     *
+     * @param rule - violated rule
+     * @param sectionNumber - number of the offending section (null when it is about the whole book)
+     * @param optionIndex - position of the offending option on its section (null when not about an option)
+     * @param message - description of the violation
+     */
+    public record Violation(
+            Book.Condition rule,
+            Integer sectionNumber,
+            Integer optionIndex,
+            String message
+    ) {}
+
+    /**
+     * outcome of a book validation
+     *
+     * @param condition - summary of the validation (first violated rule, or OK)
+     * @param violations - all the violations found, by rule
+     */
+    public record Result(
+            Book.Condition condition,
+            List<Violation> violations
+    ) {
+        public boolean isValid() {
+            return condition == Book.Condition.OK;
+        }
+    }
+
+    private BookValidator() {}
+
+    /**
+     * validates the book sections and options
+     *
+     * @param book - book to validate
+     * @return Result w/ the condition and the violations
+     */
+    public static Result validate(Book book) {
+        List<Section> sections = book.getSections();
+        Set<Integer> sectionNumbers = HashSet.newHashSet(sections.size());
+        for (Section section : sections)
+            sectionNumbers.add(section.getSectionNumber());
+
+        List<Violation> begins = new ArrayList<>(1);
+        List<Violation> gotos = new ArrayList<>();
+        List<Violation> noOptions = new ArrayList<>();
+        boolean hasEnd = false;
+        for (Section section : sections) {
+            Integer number = section.getSectionNumber();
+            if (section.getType() == Section.Type.BEGIN)
+                begins.add(new Violation(Book.Condition.INVALID_BEGIN, number, null,
+                        "Section " + number + " is a BEGIN section"));
+            if (section.getType() == Section.Type.END)
+                hasEnd = true;
+            else if (section.getOptions().isEmpty())
+                noOptions.add(new Violation(Book.Condition.NO_OPTIONS, number, null,
+                        "Section " + number + " is not an END section and has no options"));
+            List<Option> options = section.getOptions();
+            for (int i = 0; i < options.size(); i++) {
+                Integer target = options.get(i).getGotoSectionNumber();
+                if (!sectionNumbers.contains(target))
+                    gotos.add(new Violation(Book.Condition.INVALID_GOTO, number, i,
+                            "Section " + number + " option " + i + " leads to unknown section " + target));
+            }
+        }
+
+        List<Violation> violations = new ArrayList<>();
+        if (begins.isEmpty())
+            violations.add(new Violation(Book.Condition.INVALID_BEGIN, null, null, "Book has no BEGIN section"));
+        else if (begins.size() > 1)
+            violations.addAll(begins);
+        if (!hasEnd)
+            violations.add(new Violation(Book.Condition.NO_END, null, null, "Book has no END section"));
+        violations.addAll(gotos);
+        violations.addAll(noOptions);
+        Book.Condition condition = violations.isEmpty()
+                ? Book.Condition.OK
+                : violations.getFirst().rule();
+        return new Result(condition, Collections.unmodifiableList(violations));
+    }
+
+    /**
+     * checks the values the tables require (a book missing them, or repeating
+     * a section or an option, can't be stored, whatever its condition)
+     *
+     * @param book - book mapped from JSON
+     * @return the first problem found, null when the book can be stored
+     */
+    public static String storageError(Book book) {
+        if (book.getTitle() == null)
+            return "title missing";
+        if (book.getAuthor() == null)
+            return "author missing";
+        if (book.getDifficulty() == null)
+            return "difficulty missing";
+        Set<Integer> numbers = new HashSet<>();
+        for (Section section : book.getSections()) {
+            String error = storageError(section);
+            if (error != null)
+                return error;
+            if (!numbers.add(section.getSectionNumber()))
+                return "section " + section.getSectionNumber() + " repeated";
+        }
+        return null;
+    }
+
+    /**
+     * checks the values the tables require on a single section
+     * (the repeated section numbers are left to the caller)
+     *
+     * @param section - section mapped from JSON
+     * @return the first problem found, null when the section can be stored
+     */
+    public static String storageError(Section section) {
+        Integer number = section.getSectionNumber();
+        if (number == null)
+            return "section id missing";
+        if (section.getType() == null)
+            return "section " + number + " type missing";
+        Set<String> descriptions = new HashSet<>();
+        for (Option option : section.getOptions()) {
+            if (option.getDescription() == null || option.getGotoSectionNumber() == null)
+                return "section " + number + " option incomplete";
+            if (!descriptions.add(option.getDescription()))
+                return "section " + number + " option '" + option.getDescription() + "' repeated";
+            Consequence csq = option.getConsequence();
+            if (csq != null && (csq.getType() == null || csq.getValue() == null))
+                return "section " + number + " consequence incomplete";
+        }
+        return null;
+    }
+}
@@ -18,7 +18,8 @@ import java.util.stream.Collectors;
 public class Consequence {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "consequences_seq")
+    @SequenceGenerator(name = "consequences_seq", sequenceName = "consequences_seq", allocationSize = 50)
     private Long id;
 
     @OneToOne(optional = false)
@@ -20,22 +20,23 @@ public class Game {
     public static final int INITIAL_HEALTH = 10;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "games_seq")
+    @SequenceGenerator(name = "games_seq", sequenceName = "games_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "book_id")
     private Book book;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "section_id")
     private Section section;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "previous_section_id")
     private Section previousSection;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "option_id")
     private Option chosenOption;
 
@@ -47,6 +48,13 @@ public class Game {
     @Column(nullable = false)
     private Status status;
 
+    /**
+     * number of moves taken (the game_moves of the game are numbered 1..moves)
+     */
+    @Builder.Default
+    @Column(nullable = false)
+    private Integer moves = 0;
+
     public enum Status implements Serializable {
         STARTED,
         RESTARTED,
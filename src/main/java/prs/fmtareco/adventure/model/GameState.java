@@ -0,0 +1,50 @@
+package prs.fmtareco.adventure.model;
+
+/**
+ * state of a game by ids, detached from the entities (as kept by the active games store)
+ *
+ * @param id - id of the game
+ * @param bookId - id of the book
+ * @param sectionId - id of the current section
+ * @param previousSectionId - id of the previous section (optional)
+ * @param optionId - id of the last chosen option (optional)
+ * @param health - game health
+ * @param status - game status
+ * @param moves - number of moves taken
+ */
+public record GameState(
+        Long id,
+        Long bookId,
+        Integer sectionId,
+        Integer previousSectionId,
+        Long optionId,
+        int health,
+        Game.Status status,
+        int moves
+) {
+
+    /**
+     * reads the state of a game entity (the associations are not loaded)
+     *
+     * @param game - game entity
+     * @return GameState instance
+     */
+    public static GameState of(Game game) {
+        return new GameState(
+                game.getId(),
+                game.getBook().getId(),
+                game.getSection().getId(),
+                game.getPreviousSection() == null ? null : game.getPreviousSection().getId(),
+                game.getChosenOption() == null ? null : game.getChosenOption().getId(),
+                game.getHealth(),
+                game.getStatus(),
+                game.getMoves());
+    }
+
+    /**
+     * @return true when the game ended (SUCCEEDED or FAILED)
+     */
+    public boolean isFinished() {
+        return status == Game.Status.SUCCEEDED || status == Game.Status.FAILED;
+    }
+}
@@ -25,7 +25,8 @@ import java.util.stream.Collectors;
 public class Section {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sections_seq")
+    @SequenceGenerator(name = "sections_seq", sequenceName = "sections_seq", allocationSize = 50)
     private Integer id;
 
     @Column(name = "section_number", nullable = false)
@@ -35,9 +36,14 @@ public class Section {
     @JoinColumn(name = "book_id")
     private Book book;
 
-    @Column(columnDefinition = "TEXT", nullable = false)
-    @Basic(fetch = FetchType.LAZY)
-    private String text;
+    /**
+     * the text is kept (compressed) on its own table, loaded only when read
+     */
+    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "text_id")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private SectionText content;
 
     @Builder.Default
     @OneToMany(mappedBy = "section", cascade = CascadeType.ALL, orphanRemoval = true)
@@ -63,16 +69,25 @@ public class Section {
         }
     }
 
+    public String getText() {
+        return content == null ? null : content.getText();
+    }
+
+    public void setText(String text) {
+        content = text == null ? null : SectionText.of(text);
+    }
+
     public void addOption(Option option) {
         options.add(option);
         option.setSection(this);
     }
 
     public static Section create(int sectioNo, String text, Type type) {
-        return Section.builder()
+        Section section = Section.builder()
                 .sectionNumber(sectioNo)
-                .text(text)
                 .type(type)
                 .build();
+        section.setText(text);
+        return section;
     }
 }
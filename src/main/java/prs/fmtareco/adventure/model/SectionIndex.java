@@ -0,0 +1,107 @@
+package prs.fmtareco.adventure.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    index of the book sections by section number, plus the initial section
+    - a dense array (offset by the lowest number) when the section numbers are compact
+    - otherwise an open addressing (linear probing) map of primitive int keys
+    - duplicated numbers (or BEGIN sections) keep the first one, as the sections list order
+ */
+final class SectionIndex {
+
+    /**
+     * the dense array is used while it has at most this many slots per section
+     */
+    private static final int MAX_SLOTS_PER_SECTION = 4;
+
+    private final Section initialSection;
+    private final int minNumber;
+    private final Section[] dense;
+    private final int[] keys;
+    private final Section[] values;
+    private final int mask;
+
+    private SectionIndex(Section initialSection, int minNumber, Section[] dense,
+                         int[] keys, Section[] values) {
+        this.initialSection = initialSection;
+        this.minNumber = minNumber;
+        this.dense = dense;
+        this.keys = keys;
+        this.values = values;
+        this.mask = values == null ? 0 : values.length - 1;
+    }
+
+    static SectionIndex of(List<Section> sections) {
+        Section initial = null;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (Section section : sections) {
+            if (initial == null && section.getType() == Section.Type.BEGIN)
+                initial = section;
+            Integer number = section.getSectionNumber();
+            if (number == null)
+                continue;
+            min = Math.min(min, number);
+            max = Math.max(max, number);
+        }
+        if (min > max)
+            return new SectionIndex(initial, 0, new Section[0], null, null);
+
+        long span = (long) max - min + 1;
+        if (span <= (long) sections.size() * MAX_SLOTS_PER_SECTION) {
+            Section[] dense = new Section[(int) span];
+            for (Section section : sections) {
+                Integer number = section.getSectionNumber();
+                if (number != null && dense[number - min] == null)
+                    dense[number - min] = section;
+            }
+            return new SectionIndex(initial, min, dense, null, null);
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(4, sections.size()) * 2 - 1) << 1;
+        int[] keys = new int[capacity];
+        Section[] values = new Section[capacity];
+        int mask = capacity - 1;
+        for (Section section : sections) {
+            Integer number = section.getSectionNumber();
+            if (number == null)
+                continue;
+            int s = slot(number, mask);
+            while (values[s] != null && keys[s] != number)
+                s = (s + 1) & mask;
+            if (values[s] == null) {
+                keys[s] = number;
+                values[s] = section;
+            }
+        }
+        return new SectionIndex(initial, 0, null, keys, values);
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    Section initialSection() {
+        return initialSection;
+    }
+
+    /**
+     * @return the section with the argument number, or null
+     */
+    Section get(int sectionNumber) {
+        if (dense != null) {
+            long i = (long) sectionNumber - minNumber;
+            return i >= 0 && i < dense.length ? dense[(int) i] : null;
+        }
+        int s = slot(sectionNumber, mask);
+        while (values[s] != null) {
+            if (keys[s] == sectionNumber)
+                return values[s];
+            s = (s + 1) & mask;
+        }
+        return null;
+    }
+}
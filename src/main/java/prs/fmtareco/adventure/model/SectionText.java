@@ -0,0 +1,139 @@
+package prs.fmtareco.adventure.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.BatchSize;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+    text of a section, stored apart from the section (section_texts table) and compressed
+    - sections are loaded without their texts (validation, simulation and analysis only
+      need the graph), the text is loaded and inflated when first read
+    - short texts, or texts that don't get smaller, are kept as plain UTF-8
+    - the lazy texts of the sections being read are loaded in batches
+ */
+@Entity
+@Table(name = "section_texts")
+@BatchSize(size = 100)
+@Getter
+@NoArgsConstructor(access = AccessLevel.PUBLIC)
+public class SectionText {
+
+    /**
+     * texts shorter than this (UTF-8 bytes) are not worth compressing
+     */
+    static final int MIN_COMPRESSED_LENGTH = 128;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "section_texts_seq")
+    @SequenceGenerator(name = "section_texts_seq", sequenceName = "section_texts_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Codec codec;
+
+    /**
+     * length of the UTF-8 text, before compression
+     */
+    @Column(name = "text_length", nullable = false)
+    private Integer length;
+
+    @Column(nullable = false)
+    private byte[] data;
+
+    @Transient
+    @Getter(AccessLevel.NONE)
+    private String text;
+
+    public enum Codec {
+        PLAIN,
+        DEFLATE
+    }
+
+    /**
+     * creates the stored form of a text, compressing it when worthwhile
+     *
+     * @param text - section text
+     * @return SectionText instance
+     */
+    public static SectionText of(String text) {
+        SectionText sectionText = new SectionText();
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = utf8.length < MIN_COMPRESSED_LENGTH ? null : deflate(utf8);
+        if (compressed != null && compressed.length < utf8.length) {
+            sectionText.codec = Codec.DEFLATE;
+            sectionText.data = compressed;
+        } else {
+            sectionText.codec = Codec.PLAIN;
+            sectionText.data = utf8;
+        }
+        sectionText.length = utf8.length;
+        sectionText.text = text;
+        return sectionText;
+    }
+
+    /**
+     * @return the text, inflated on the first call
+     */
+    public String getText() {
+        if (text == null)
+            text = text(codec, length, data);
+        return text;
+    }
+
+    /**
+     * reads a text from its stored form
+     *
+     * @param codec - codec of the data
+     * @param length - length of the UTF-8 text
+     * @param data - stored data
+     * @return the text
+     */
+    public static String text(Codec codec, int length, byte[] data) {
+        return new String(codec == Codec.DEFLATE ? inflate(data, length) : data, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deflate(byte[] utf8) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(utf8);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(utf8.length / 2);
+            byte[] buffer = new byte[Math.min(utf8.length, 8192)];
+            while (!deflater.finished())
+                out.write(buffer, 0, deflater.deflate(buffer));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] utf8 = new byte[length];
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int inflated = inflater.inflate(utf8, n, length - n);
+                // truncated data: no more input to inflate from
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                n += inflated;
+            }
+            if (n != length)
+                throw new IllegalStateException("corrupted section text, inflated " + n + " of " + length + " bytes");
+            return utf8;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupted section text", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -4,15 +4,20 @@ import jakarta.annotation.Nullable;
 import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import prs.fmtareco.adventure.model.Book;
 import prs.fmtareco.adventure.model.Category;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificationExecutor<Book> {
 
@@ -65,4 +70,86 @@ public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificat
     }
 
     boolean existsByTitleIgnoreCaseAndAuthorIgnoreCase(String title, String author);
+
+    /**
+     * a stored version of a book
+     *
+     * @param key - titleAuthorKey of the book
+     * @param id - id of the book (version)
+     * @param contentHash - content hash of the version
+     * @param version - version number
+     */
+    record StoredVersion(String key, Long id, String contentHash, int version) {}
+
+    /**
+     * title and author (lower case), id, content hash and version of the books with one of the titles
+     * (checks a whole batch of books in one query)
+     *
+     * @param titles - lower case titles
+     * @return rows of lower case title, lower case author, id, content hash and version
+     */
+    @Query("""
+            select lower(b.title), lower(b.author), b.id, b.contentHash, b.version
+            from Book b where lower(b.title) in :titles""")
+    List<Object[]> findVersionsByLowerTitleIn(Collection<String> titles);
+
+    /**
+     * versions already stored of the books of a batch
+     *
+     * @param titles - titles of the books of the batch (nulls ignored)
+     * @return the stored versions of the books with the same titles
+     */
+    default List<StoredVersion> findStoredVersions(Collection<String> titles) {
+        Set<String> lowerTitles = new HashSet<>();
+        for (String title : titles)
+            if (title != null)
+                lowerTitles.add(title.toLowerCase());
+        if (lowerTitles.isEmpty())
+            return List.of();
+        List<StoredVersion> versions = new ArrayList<>();
+        for (Object[] row : findVersionsByLowerTitleIn(lowerTitles))
+            versions.add(new StoredVersion(row[0] + "\n" + row[1],
+                    (Long) row[2], (String) row[3], (Integer) row[4]));
+        return versions;
+    }
+
+    /**
+     * keys (titleAuthorKey) of the books already in the catalog, among the books of a batch
+     *
+     * @param titles - titles of the books of the batch (nulls ignored)
+     * @return keys of the existing books
+     */
+    default Set<String> findTitleAuthorKeys(Collection<String> titles) {
+        Set<String> keys = new HashSet<>();
+        for (StoredVersion version : findStoredVersions(titles))
+            keys.add(version.key());
+        return keys;
+    }
+
+    /**
+     * identifies a book by its title and author, ignoring the case
+     */
+    static String titleAuthorKey(String title, String author) {
+        return title.toLowerCase() + "\n" + author.toLowerCase();
+    }
+
+    /**
+     * content hash of a book (checks a stored compiled book without loading the book)
+     *
+     * @param id - id of the book
+     * @return the content hash, empty when the book doesn't exist (or has none yet)
+     */
+    @Query("select b.contentHash from Book b where b.id = :id")
+    Optional<String> findContentHashById(Long id);
+
+    /**
+     * a page of the ids of the books, in order, following the argument id
+     * (keyset paging: each page is a short query of its own, no transaction held between pages)
+     *
+     * @param after - last id of the previous page (0 for the first page)
+     * @param limit - maximum number of ids of the page
+     * @return ids greater than after, in order
+     */
+    @Query("select b.id from Book b where b.id > :after order by b.id")
+    List<Long> findIdsAfter(Long after, Limit limit);
 }
@@ -8,7 +8,7 @@ import prs.fmtareco.adventure.model.Section;
 import java.util.Optional;
 import java.util.List;
 
-public interface SectionRepository extends JpaRepository<Section, Long> {
+public interface SectionRepository extends JpaRepository<Section, Integer> {
 
     List<Section> findByBookId(Long bookId);
 
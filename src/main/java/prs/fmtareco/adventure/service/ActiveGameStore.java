@@ -0,0 +1,274 @@
+package prs.fmtareco.adventure.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import prs.fmtareco.adventure.config.GameplayProperties;
+import prs.fmtareco.adventure.model.GameMove;
+import prs.fmtareco.adventure.model.GameState;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/*
+    write-behind store of the active games (adventure.gameplay.write-behind)
+    - moves are applied to the in memory state of the game (atomically per game, on a
+      concurrent map) and appended to a local journal within the same per game compute,
+      so the journal holds the moves of a game in their order
+    - periodically, the moves since the last flush are inserted into game_moves and the
+      changed games are written (snapshots) to the games table, in JDBC batches
+    - a finished game triggers a flush right away, and leaves the store
+    - on startup, the journal left by a previous run is replayed to the database (the newest
+      state of each game, by its moves count, is the one written)
+    - moves hold the read lock, so a flush (write lock) takes a consistent snapshot of
+      the changed games and seals the journal file holding their moves
+ */
+@Component
+public class ActiveGameStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ActiveGameStore.class);
+
+    private static final String UPDATE_GAME = """
+            UPDATE games
+            SET section_id = ?, previous_section_id = ?, option_id = ?, health = ?, status = ?, moves = ?
+            WHERE id = ? AND moves <= ?""";
+
+    private final boolean enabled;
+    private final JdbcTemplate jdbc;
+    private final GameMoveLog moveLog;
+    private final GameplayProperties props;
+    private final Map<Long, GameState> games = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final Queue<GameMove> pendingMoves = new ConcurrentLinkedQueue<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Counter writtenCounter;
+    private GameJournal journal;
+    private ScheduledExecutorService flusher;
+
+    public ActiveGameStore(JdbcTemplate jdbc, GameMoveLog moveLog, GameplayProperties props, MeterRegistry registry) {
+        this.enabled = props.writeBehind();
+        this.jdbc = jdbc;
+        this.moveLog = moveLog;
+        this.props = props;
+        Gauge.builder("adventure.games.active", games, Map::size)
+                .description("games kept on the write-behind store")
+                .register(registry);
+        Gauge.builder("adventure.games.dirty", dirty, Set::size)
+                .description("games changed since the last flush")
+                .register(registry);
+        this.writtenCounter = Counter.builder("adventure.games.written")
+                .description("game rows written by the write-behind store")
+                .register(registry);
+    }
+
+    /**
+     * replays the journal left by the previous run, and starts the periodic flushes
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled)
+            return;
+        journal = new GameJournal(props.journalDirectory());
+        List<Path> previous = journal.sealedFiles();
+        List<GameMove> moves = GameJournal.read(previous);
+        if (!moves.isEmpty()) {
+            Map<Long, GameState> states = new LinkedHashMap<>();
+            moves.forEach(move -> states.merge(move.state().id(), move.state(),
+                    (a, b) -> a.moves() >= b.moves() ? a : b));
+            write(moves, states.values());
+            log.info("Replayed {} moves of {} games from the journal", moves.size(), states.size());
+        }
+        GameJournal.delete(previous);
+        long interval = props.flushInterval().toMillis();
+        flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("game-flush").factory());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the in memory state of the game, if it is on the store
+     */
+    public Optional<GameState> find(Long gameId) {
+        return Optional.ofNullable(games.get(gameId));
+    }
+
+    /**
+     * @return the in memory state of the game, read from the database (and kept on the
+     * store) when missing
+     * The loader runs outside of the store locks (a concurrent load of the game keeps the
+     * first state put on the store)
+     *
+     * @param gameId - id of the game
+     * @param loader - reads the game state from the database
+     */
+    public GameState get(Long gameId, Supplier<GameState> loader) {
+        GameState state = games.get(gameId);
+        if (state != null)
+            return state;
+        GameState loaded = loader.get();
+        GameState raced = games.putIfAbsent(gameId, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    /**
+     * applies a move to a game (atomically, concurrent moves on a game are serialized)
+     * An exception thrown by the move leaves the game unchanged
+     * A game evicted between its load and the move is read again
+     *
+     * @param gameId - id of the game
+     * @param optionNo - the selected option (0 means RESTART)
+     * @param loader - reads the game state from the database, when missing
+     * @param move - returns the game state following the move
+     * @return the game state after the move
+     */
+    public GameState update(Long gameId, int optionNo, Supplier<GameState> loader, UnaryOperator<GameState> move) {
+        GameState state = null;
+        while (state == null) {
+            get(gameId, loader);
+            lock.readLock().lock();
+            try {
+                state = games.computeIfPresent(gameId, (id, current) -> {
+                    GameState next = move.apply(current);
+                    GameMove logged = new GameMove(next, optionNo, Instant.now());
+                    journal.append(logged);
+                    pendingMoves.add(logged);
+                    return next;
+                });
+                if (state != null)
+                    dirty.add(gameId);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        if (state.isFinished() && !flusher.isShutdown())
+            flusher.execute(this::flushQuietly);
+        return state;
+    }
+
+    /**
+     * writes the moves and the games changed since the last flush, in batches, and forgets
+     * the finished games
+     * When the write fails the moves and games remain to be flushed (and the journal is kept)
+     */
+    public synchronized void flush() {
+        List<GameMove> moves = new ArrayList<>();
+        List<GameState> states = new ArrayList<>();
+        List<Path> sealed;
+        lock.writeLock().lock();
+        try {
+            evictCleanGames();
+            journal.seal();
+            sealed = journal.sealedFiles();
+            for (Long gameId : dirty) {
+                GameState state = games.get(gameId);
+                if (state != null)
+                    states.add(state);
+            }
+            dirty.clear();
+            GameMove move;
+            while ((move = pendingMoves.poll()) != null)
+                moves.add(move);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            write(moves, states);
+        } catch (RuntimeException e) {
+            pendingMoves.addAll(moves);
+            states.forEach(state -> dirty.add(state.id()));
+            throw e;
+        }
+        GameJournal.delete(sealed);
+        for (GameState state : states) {
+            if (state.isFinished())
+                games.remove(state.id(), state);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush the active games, retrying on the next flush", e);
+        }
+    }
+
+    /**
+     * forgets the games written by the previous flushes (not changed since), once over
+     * the maximum number of active games (called holding the write lock)
+     */
+    private void evictCleanGames() {
+        if (games.size() > props.maxActiveGames())
+            games.keySet().removeIf(gameId -> !dirty.contains(gameId));
+    }
+
+    /**
+     * inserts the moves and writes the snapshots of their games
+     * (a snapshot older than the game row is ignored)
+     */
+    private void write(Collection<GameMove> moves, Collection<GameState> states) {
+        moveLog.insert(moves, props.flushBatchSize());
+        if (states.isEmpty())
+            return;
+        jdbc.batchUpdate(UPDATE_GAME, states, props.flushBatchSize(), ActiveGameStore::setParameters);
+        writtenCounter.increment(states.size());
+    }
+
+    private static void setParameters(PreparedStatement ps, GameState state) throws SQLException {
+        ps.setLong(1, state.sectionId());
+        ps.setObject(2, state.previousSectionId(), Types.BIGINT);
+        ps.setObject(3, state.optionId(), Types.BIGINT);
+        ps.setInt(4, state.health());
+        ps.setString(5, state.status().name());
+        ps.setInt(6, state.moves());
+        ps.setLong(7, state.id());
+        ps.setInt(8, state.moves());
+    }
+
+    /**
+     * flushes the pending games on shutdown
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        if (!enabled)
+            return;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        journal.close();
+    }
+}
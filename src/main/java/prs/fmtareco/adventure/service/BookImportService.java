@@ -0,0 +1,115 @@
+package prs.fmtareco.adventure.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import prs.fmtareco.adventure.annotations.TrackExecution;
+import prs.fmtareco.adventure.config.LoaderProperties;
+import prs.fmtareco.adventure.dtos.BookLoadResult;
+import prs.fmtareco.adventure.dtos.BookRequest;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.DatabindException;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    bulk import of books from a stream of BookRequest (NDJSON, or a JSON array)
+    - the books are parsed one at a time (MappingIterator) and created in batches,
+      one transaction per batch, so only a batch of books is in memory, whatever the upload size
+    - the result of each book is written as a json line once its batch is done
+    - a book that can't be bound is rejected, the import goes on with the next one;
+      malformed JSON ends the import (the batches already written stay)
+ */
+@Service
+public class BookImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(BookImportService.class);
+
+    private final BookService bookService;
+    private final ObjectMapper objectMapper;
+    private final LoaderProperties loaderProps;
+
+    public BookImportService(BookService bookService, ObjectMapper objectMapper, LoaderProperties loaderProps) {
+        this.bookService = bookService;
+        this.objectMapper = objectMapper;
+        this.loaderProps = loaderProps;
+    }
+
+    /**
+     * imports the books read from the input, writing the result of each one as a json line
+     *
+     * @param in - NDJSON or JSON array of BookRequest
+     * @param out - output stream of the response
+     */
+    @TrackExecution
+    public void importBooks(InputStream in, OutputStream out) throws IOException {
+        int batchSize = Math.max(1, loaderProps.batchSize());
+        List<BookRequest> batch = new ArrayList<>(batchSize);
+        int imported = 0;
+        try (MappingIterator<BookRequest> it = objectMapper.readerFor(BookRequest.class).readValues(in)) {
+            while (it.hasNextValue()) {
+                try {
+                    batch.add(it.nextValue());
+                } catch (DatabindException e) {
+                    imported += createBatch(batch, out);
+                    writeLine(out, rejected(e));
+                    continue;
+                }
+                if (batch.size() == batchSize)
+                    imported += createBatch(batch, out);
+            }
+            imported += createBatch(batch, out);
+        } catch (JacksonException e) {
+            imported += createBatch(batch, out);
+            writeLine(out, rejected(e));
+        }
+        log.info("Imported {} books", imported);
+    }
+
+    /**
+     * creates the books of the batch (emptying it) and writes their results
+     *
+     * @return number of books created
+     */
+    private int createBatch(List<BookRequest> batch, OutputStream out) throws IOException {
+        if (batch.isEmpty())
+            return 0;
+        List<BookLoadResult> results;
+        try {
+            results = bookService.createBooks(batch);
+        } catch (RuntimeException e) {
+            log.error("Failed to import a batch of {} books", batch.size(), e);
+            results = batch.stream()
+                    .map(request -> BookLoadResult.builder()
+                            .title(request.title())
+                            .author(request.author())
+                            .status(BookLoadResult.REJECTED)
+                            .error(e.getMessage())
+                            .build())
+                    .toList();
+        }
+        batch.clear();
+        for (BookLoadResult result : results)
+            writeLine(out, result);
+        out.flush();
+        return (int) results.stream().filter(r -> BookLoadResult.LOADED.equals(r.status())).count();
+    }
+
+    private static BookLoadResult rejected(JacksonException e) {
+        return BookLoadResult.builder()
+                .status(BookLoadResult.REJECTED)
+                .error(e.getOriginalMessage())
+                .build();
+    }
+
+    private void writeLine(OutputStream out, BookLoadResult result) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(result));
+        out.write('\n');
+    }
+}
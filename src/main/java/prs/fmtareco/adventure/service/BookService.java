@@ -5,18 +5,33 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import prs.fmtareco.adventure.annotations.TrackExecution;
+import prs.fmtareco.adventure.config.SimulationProperties;
 import prs.fmtareco.adventure.dtos.*;
 import prs.fmtareco.adventure.exceptions.BookNotFoundException;
 import prs.fmtareco.adventure.exceptions.DuplicateBookException;
+import prs.fmtareco.adventure.exceptions.InvalidParameterException;
 import prs.fmtareco.adventure.exceptions.MissingValueException;
 import prs.fmtareco.adventure.exceptions.SectionNotFoundException;
 import prs.fmtareco.adventure.factory.BookFactory;
 import prs.fmtareco.adventure.model.*;
 import prs.fmtareco.adventure.repository.BookRepository;
 import prs.fmtareco.adventure.repository.SectionRepository;
+import prs.fmtareco.adventure.simulation.GraphAnalysis;
+import prs.fmtareco.adventure.simulation.HealthExplorer;
+import prs.fmtareco.adventure.simulation.ParallelPathSimulation;
+import prs.fmtareco.adventure.simulation.PathCounter;
+import prs.fmtareco.adventure.simulation.PathSampler;
+import prs.fmtareco.adventure.simulation.PathSimulation;
 
-import java.util.List;
-import java.util.Optional;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import static prs.fmtareco.adventure.repository.BookRepository.byFilters;
 
@@ -27,14 +42,23 @@ public class BookService {
     private final BookRepository bookRepo;
     private final SectionRepository sectionRepo;
     private final BookFactory factory;
+    private final SimulationProperties simulationProps;
+    private final ForkJoinPool simulationPool;
+    private final SimulationCache simulationCache;
 
     public BookService(
             BookRepository bookRepo,
             SectionRepository sectionRepo,
-            BookFactory factory) {
+            BookFactory factory,
+            SimulationProperties simulationProps,
+            ForkJoinPool simulationPool,
+            SimulationCache simulationCache) {
         this.bookRepo = bookRepo;
         this.factory = factory;
         this.sectionRepo =  sectionRepo;
+        this.simulationProps = simulationProps;
+        this.simulationPool = simulationPool;
+        this.simulationCache = simulationCache;
     }
 
 
@@ -58,6 +82,55 @@ public class BookService {
         return toBookDetails(book);
     }
 
+    /**
+     * creates a batch of books, in a single transaction (JDBC batched inserts)
+     * - the duplicates (already in the catalog, or repeated in the batch) are found
+     *   with a single query for the whole batch, and skipped
+     * - a book missing values, or that can't be stored, is rejected without failing the batch
+     *
+     * @param requests - books to create
+     * @return the result of each book, in the order of the batch
+     */
+    @Transactional
+    @TrackExecution
+    public List<BookLoadResult> createBooks(List<BookRequest> requests) {
+        Set<String> existing = bookRepo.findTitleAuthorKeys(
+                requests.stream().map(BookRequest::title).toList());
+
+        List<BookLoadResult.BookLoadResultBuilder> results = new ArrayList<>(requests.size());
+        Map<Book, BookLoadResult.BookLoadResultBuilder> created = new LinkedHashMap<>();
+        for (BookRequest request : requests) {
+            BookLoadResult.BookLoadResultBuilder result = BookLoadResult.builder()
+                    .title(request.title())
+                    .author(request.author());
+            results.add(result);
+            try {
+                if (request.title() == null)
+                    throw new MissingValueException("title missing");
+                if (request.author() == null)
+                    throw new MissingValueException("author missing");
+                if (!existing.add(BookRepository.titleAuthorKey(request.title(), request.author()))) {
+                    result.status(BookLoadResult.SKIPPED);
+                    continue;
+                }
+                Book book = factory.createBook(request);
+                String error = BookValidator.storageError(book);
+                if (error != null)
+                    throw new MissingValueException(error);
+                result.status(BookLoadResult.LOADED)
+                        .version(book.getVersion())
+                        .condition(book.getCondition().name())
+                        .contentHash(book.getContentHash());
+                created.put(book, result);
+            } catch (RuntimeException e) {
+                result.status(BookLoadResult.REJECTED).error(e.getMessage());
+            }
+        }
+        bookRepo.saveAll(created.keySet());
+        created.forEach((book, result) -> result.id(book.getId()));
+        return results.stream().map(BookLoadResult.BookLoadResultBuilder::build).toList();
+    }
+
     /**
      * returns a list of BookSummary with the books matching the conditions
      * determined by the arguments.
@@ -163,18 +236,204 @@ public class BookService {
      * @return BookSimulation with the summary of the simulations
      */
     public BookSimulation simulateBookPaths(Long id) {
+        return simulateBookPaths(id, explored -> {});
+    }
+
+    /**
+     * executes a series of simulated games on the book, reporting the progress
+     * Transactional, as it also runs out of the requests (validation jobs)
+     * @param id - id of the books
+     * @param progress - receives the number of sections explored so far
+     * @return BookSimulation with the summary of the simulations
+     */
+    @Transactional
+    public BookSimulation simulateBookPaths(Long id, LongConsumer progress) {
+        Book book = bookRepo.findById(id).orElseThrow(() -> new BookNotFoundException(id));
+        return cachedSimulation(book, "explore", () -> {
+            PathSimulation simulation = PathSimulation.from(book).run(progress);
+            return BookSimulation.builder()
+                    .id(book.getId())
+                    .title(book.getTitle())
+                    .numberOfSuccessfulPaths(simulation.numberOfSuccessfulPaths())
+                    .numberOfLoopPaths(simulation.numberOfLoopPaths())
+                    .numberOfFailurePaths(simulation.numberOfFailedPaths())
+                    .build();
+        });
+    }
+
+    /**
+     * counts all the paths of the book, without walking them, condensing the
+     * sections cycles and memoizing the counts per section
+     * @param id - id of the books
+     * @return BookPathCount with the exact (arbitrary precision) number of paths
+     */
+    @TrackExecution
+    public BookPathCount countBookPaths(Long id) {
+        Book book = bookRepo.findById(id).orElseThrow(() -> new BookNotFoundException(id));
+        return cachedSimulation(book, "count", () -> {
+            PathCounter counter = PathCounter.from(book).run();
+            return BookPathCount.builder()
+                    .id(book.getId())
+                    .title(book.getTitle())
+                    .numberOfSuccessfulPaths(counter.numberOfSuccessfulPaths())
+                    .numberOfLoopPaths(counter.numberOfLoopPaths())
+                    .numberOfFailurePaths(counter.numberOfFailedPaths())
+                    .build();
+        });
+    }
+
+    /**
+     * explores all the (section, health) states reachable on the book, applying the
+     * consequences as on a real game, and counts the paths leading to each outcome
+     * @param id - id of the books
+     * @param healthCap - when present, overrides the configured maximum health
+     * @return BookPathCount with the exact (arbitrary precision) number of paths
+     */
+    @TrackExecution
+    public BookPathCount exploreBookStates(Long id, Integer healthCap) {
+        int cap = Optional.ofNullable(healthCap).orElse(simulationProps.healthCap());
+        if (cap < 1)
+            throw new InvalidParameterException("healthCap", cap, "a positive number");
+        Book book = bookRepo.findById(id).orElseThrow(() -> new BookNotFoundException(id));
+        return cachedSimulation(book, "health:" + cap, () -> {
+            HealthExplorer explorer = HealthExplorer.from(book, cap).run();
+            return BookPathCount.builder()
+                    .id(book.getId())
+                    .title(book.getTitle())
+                    .numberOfSuccessfulPaths(explorer.numberOfSuccessfulPaths())
+                    .numberOfLoopPaths(explorer.numberOfLoopPaths())
+                    .numberOfFailurePaths(explorer.numberOfFailedPaths())
+                    .build();
+        });
+    }
+
+    /**
+     * enumerates every path of the book (never repeating a section), splitting the
+     * branches over the simulation pool, applying the consequences as on a real game
+     * @param id - id of the books
+     * @param timeBudget - when present, maximum duration in milliseconds (bounded by the configured one)
+     * @return BookPathCount with the number of paths (so far, when the budget is exhausted)
+     */
+    @TrackExecution
+    public BookPathCount simulateBookPathsInParallel(Long id, Long timeBudget) {
+        long budget = simulationProps.parallelTimeBudget().toMillis();
+        if (timeBudget != null)
+            budget = Math.min(Math.max(timeBudget, 1), budget);
+        return simulateBookPathsInParallel(id, Duration.ofMillis(budget));
+    }
+
+    /**
+     * enumerates every path of the book in parallel, up to the configured number of paths
+     * and the argument duration (only the complete counts are cached)
+     * Transactional, as it also runs out of the requests (validation jobs)
+     * @param id - id of the books
+     * @param budget - maximum duration of the enumeration
+     * @return BookPathCount with the number of paths (so far, when the budget is exhausted)
+     */
+    @Transactional
+    @TrackExecution
+    public BookPathCount simulateBookPathsInParallel(Long id, Duration budget) {
         Book book = bookRepo.findById(id).orElseThrow(() -> new BookNotFoundException(id));
-        GameSimulation simulation = new GameSimulation(book);
-        simulation.applyMoves();
-        return BookSimulation.builder()
+        return cachedSimulation(book, "parallel", () -> {
+            ParallelPathSimulation simulation = ParallelPathSimulation
+                    .from(book, simulationProps.splitDepth())
+                    .run(simulationPool, simulationProps.maxPaths(), budget.toNanos());
+            return BookPathCount.builder()
+                    .id(book.getId())
+                    .title(book.getTitle())
+                    .numberOfSuccessfulPaths(BigInteger.valueOf(simulation.numberOfSuccessfulPaths()))
+                    .numberOfLoopPaths(BigInteger.valueOf(simulation.numberOfLoopPaths()))
+                    .numberOfFailurePaths(BigInteger.valueOf(simulation.numberOfFailedPaths()))
+                    .budgetExhausted(simulation.isBudgetExhausted())
+                    .build();
+        }, result -> !result.budgetExhausted());
+    }
+
+    /**
+     * analyses the structure of the book sections graph: cycles, unreachable sections,
+     * dead ends and sections from which no END can be reached (linear time)
+     * @param id - id of the books
+     * @return BookAnalysis with the structural diagnostics
+     */
+    @TrackExecution
+    public BookAnalysis analyzeBook(Long id) {
+        Book book = bookRepo.findById(id).orElseThrow(() -> new BookNotFoundException(id));
+        return cachedSimulation(book, "analysis", () -> {
+            GraphAnalysis analysis = GraphAnalysis.from(book).run();
+            return BookAnalysis.builder()
+                    .id(book.getId())
+                    .title(book.getTitle())
+                    .numberOfSections(analysis.sectionCount())
+                    .numberOfOptions(analysis.optionCount())
+                    .cycles(analysis.cycles())
+                    .unreachableSections(analysis.unreachableSections())
+                    .deadEndSections(analysis.deadEndSections())
+                    .sectionsWithoutEnd(analysis.sectionsWithoutEnd())
+                    .build();
+        });
+    }
+
+    /**
+     * estimates the book outcomes by playing random games, choosing the options
+     * at random and applying the consequences as on a real game
+     * @param id - id of the books
+     * @param samples - number of random games to play
+     * @param seed - when present, seeds the random choices (for repeatable results)
+     * @param timeBudget - when present, maximum duration in milliseconds (bounded by the configured one)
+     * @return BookSampling with the estimated rates of each outcome
+     */
+    @TrackExecution
+    public BookSampling sampleBookPaths(Long id, long samples, Long seed, Long timeBudget) {
+        if (samples < 1 || samples > simulationProps.maxSamples())
+            throw new InvalidParameterException("samples", samples, "1.." + simulationProps.maxSamples());
+        Book book = bookRepo.findById(id).orElseThrow(() -> new BookNotFoundException(id));
+        long budget = simulationProps.sampleTimeBudget().toMillis();
+        if (timeBudget != null)
+            budget = Math.min(Math.max(timeBudget, 1), budget);
+        long start = System.nanoTime();
+        PathSampler sampler = PathSampler
+                .from(book, Optional.ofNullable(seed).orElseGet(() -> ThreadLocalRandom.current().nextLong()))
+                .run(samples, TimeUnit.MILLISECONDS.toNanos(budget));
+        long played = sampler.numberOfSamples();
+        return BookSampling.builder()
                 .id(book.getId())
                 .title(book.getTitle())
-                .numberOfSuccessfulPaths(simulation.numberOfSuccessfulPaths())
-                .numberOfLoopPaths(simulation.numberOfLoopPaths())
-                .numberOfFailurePaths(simulation.numberOfFailedPaths())
+                .seed(sampler.seed())
+                .samples(played)
+                .budgetExhausted(sampler.isBudgetExhausted())
+                .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .success(OutcomeRate.of(sampler.numberOfSuccessfulPaths(), played))
+                .failure(OutcomeRate.of(sampler.numberOfFailedPaths(), played))
+                .loop(OutcomeRate.of(sampler.numberOfLoopPaths(), played))
                 .build();
     }
 
+    /**
+     * returns the cached result of a book simulation, for the current book content,
+     * running the simulation only when it is not cached
+     * Books created before the content hash existed get it computed (and stored) once
+     *
+     * @param book - simulated book
+     * @param mode - identifies the simulation mode (and its settings)
+     * @param simulation - runs the simulation
+     * @return simulation result
+     */
+    private <T> T cachedSimulation(Book book, String mode, Supplier<T> simulation) {
+        return cachedSimulation(book, mode, simulation, result -> true);
+    }
+
+    /**
+     * as cachedSimulation, caching only the complete results
+     *
+     * @param complete - tells if a result can be cached
+     */
+    private <T> T cachedSimulation(Book book, String mode, Supplier<T> simulation, Predicate<? super T> complete) {
+        if (book.getContentHash() == null) {
+            book.refreshContentHash();
+            bookRepo.save(book);
+        }
+        return simulationCache.get(book.getId(), book.getContentHash(), mode, simulation, complete);
+    }
 
 
     /**
@@ -188,6 +447,7 @@ public class BookService {
                 .id(book.getId())
                 .author(book.getAuthor())
                 .title(book.getTitle())
+                .version(book.getVersion())
                 .condition(book.getCondition().toString())
                 .categories(
                         book.getCategories().stream()
@@ -208,7 +468,14 @@ public class BookService {
                 .id(book.getId())
                 .author(book.getAuthor())
                 .title(book.getTitle())
+                .version(book.getVersion())
                 .condition(book.getCondition().toString())
+                .violations(
+                        Optional.ofNullable(book.getViolations())
+                                .orElseGet(() -> BookValidator.validate(book).violations())
+                                .stream()
+                                .map(this::toViolationSummary)
+                                .toList())
                 .categories(
                         book.getCategories().stream()
                                 .map(Category::getName)
@@ -221,6 +488,20 @@ public class BookService {
                 .build();
     }
 
+    /**
+     * to convert a book violation to a summary to display on the book details
+     * @param violation - violation found on the book validation
+     * @return - instance of ViolationSummary
+     */
+    private ViolationSummary toViolationSummary(BookValidator.Violation violation) {
+        return ViolationSummary.builder()
+                .rule(violation.rule().toString())
+                .sectionNumber(violation.sectionNumber())
+                .optionIndex(violation.optionIndex())
+                .message(violation.message())
+                .build();
+    }
+
     /**
      * to convert the arg section to a summary to display on the book details
      * @param section - argument section
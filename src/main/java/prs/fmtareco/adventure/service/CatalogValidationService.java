@@ -0,0 +1,122 @@
+package prs.fmtareco.adventure.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import prs.fmtareco.adventure.annotations.TrackExecution;
+import prs.fmtareco.adventure.config.SimulationProperties;
+import prs.fmtareco.adventure.repository.BookRepository;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class CatalogValidationService {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogValidationService.class);
+
+    /**
+     * number of book ids read per query
+     */
+    private static final int ID_PAGE_SIZE = 500;
+
+    private final BookService bookService;
+    private final BookRepository bookRepo;
+    private final ObjectMapper objectMapper;
+    private final int concurrency;
+
+    public CatalogValidationService(
+            BookService bookService,
+            BookRepository bookRepo,
+            ObjectMapper objectMapper,
+            SimulationProperties simulationProps,
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        this.bookService = bookService;
+        this.bookRepo = bookRepo;
+        this.objectMapper = objectMapper;
+        int requested = simulationProps.batchConcurrency() > 0
+                ? simulationProps.batchConcurrency()
+                : Runtime.getRuntime().availableProcessors();
+        // each book simulation holds a connection, half of the pool is left to the other requests
+        int maxConcurrency = Math.max(1, poolSize / 2);
+        if (requested > maxConcurrency)
+            log.info("Catalog validation concurrency {} capped to {} (connection pool of {})",
+                    requested, maxConcurrency, poolSize);
+        this.concurrency = Math.min(requested, maxConcurrency);
+    }
+
+    /**
+     * validates (simulates) every book of the catalog, writing each BookSimulation as
+     * a json line as soon as it is done (so the lines follow the completion order)
+     * - the book ids are read from the database a page at a time (no transaction held for the
+     *   whole run), and at most `concurrency` books are being simulated (or waiting to be written)
+     *   at once, keeping the memory flat and leaving connections of the pool to the other requests
+     * - a book whose simulation fails gets a line with its id and the error
+     * - stops submitting books once the client goes away
+     *
+     * @param out - output stream of the response
+     */
+    @TrackExecution
+    public void validateAll(OutputStream out) {
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicBoolean disconnected = new AtomicBoolean();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long after = 0;
+            List<Long> ids;
+            do {
+                ids = bookRepo.findIdsAfter(after, Limit.of(ID_PAGE_SIZE));
+                for (Long id : ids) {
+                    if (disconnected.get())
+                        return;
+                    permits.acquireUninterruptibly();
+                    executor.execute(() -> {
+                        try {
+                            if (!disconnected.get() && !writeLine(out, validate(id)))
+                                disconnected.set(true);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                    after = id;
+                }
+            } while (ids.size() == ID_PAGE_SIZE && !disconnected.get());
+        }
+    }
+
+    private Object validate(Long id) {
+        try {
+            return bookService.simulateBookPaths(id, explored -> {});
+        } catch (RuntimeException e) {
+            log.warn("Validation of book {} failed", id, e);
+            return Map.of("id", id, "error", String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * writes a json line, flushing it to the client
+     * @return false if the line could not be written (client went away)
+     */
+    private boolean writeLine(OutputStream out, Object value) {
+        byte[] line = objectMapper.writeValueAsBytes(value);
+        synchronized (out) {
+            try {
+                out.write(line);
+                out.write('\n');
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                log.debug("Catalog validation line not delivered", e);
+                return false;
+            }
+        }
+    }
+}
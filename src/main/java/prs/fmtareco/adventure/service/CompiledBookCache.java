@@ -0,0 +1,106 @@
+package prs.fmtareco.adventure.service;
+
+import org.springframework.stereotype.Component;
+import prs.fmtareco.adventure.config.GameplayProperties;
+import prs.fmtareco.adventure.simulation.CompiledBook;
+import prs.fmtareco.adventure.simulation.CompiledBookStore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*
+    keeps the compiled books played recently, by book id
+    - bounded by the total weight (approximate heap size) of the compiled books,
+      evicting the least recently used
+    - a book compiled while another thread compiles it is kept once (the last one)
+    - with the store enabled, the books are kept on memory mapped files: a miss maps the
+      stored book, or compiles and stores it (the cached views weigh next to nothing)
+    - a stored book is only mapped while its content hash is the one of the book on the
+      database, otherwise it's compiled (and stored) again
+ */
+@Component
+public class CompiledBookCache {
+
+    private final long maxWeight;
+    private final CompiledBookStore store;
+    private final LinkedHashMap<Long, CompiledBook> books = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    public CompiledBookCache(GameplayProperties props) {
+        this.maxWeight = props.cacheWeight().toBytes();
+        this.store = props.storeEnabled() ? new CompiledBookStore(props.storeDirectory()) : null;
+    }
+
+    /**
+     * returns the compiled book, compiling it when missing (from memory and from the store)
+     *
+     * @param bookId - id of the book
+     * @param contentHash - reads the content hash of the book on the database (only on a miss, with the store)
+     * @param compiler - loads and compiles the book
+     * @return CompiledBook instance
+     */
+    public CompiledBook get(Long bookId, Supplier<String> contentHash, Supplier<CompiledBook> compiler) {
+        synchronized (books) {
+            CompiledBook book = books.get(bookId);
+            if (book != null)
+                return book;
+        }
+        CompiledBook book = load(bookId, contentHash, compiler);
+        synchronized (books) {
+            CompiledBook previous = books.put(bookId, book);
+            if (previous != null)
+                weight -= previous.weight();
+            weight += book.weight();
+            evictEldest();
+        }
+        return book;
+    }
+
+    private CompiledBook load(Long bookId, Supplier<String> contentHash, Supplier<CompiledBook> compiler) {
+        if (store == null)
+            return compiler.get();
+        return store.open(bookId, contentHash.get())
+                .orElseGet(() -> store.write(compiler.get()));
+    }
+
+    /**
+     * drops the compiled book, also from the store (to be called when the book content changes)
+     *
+     * @param bookId - id of the book
+     */
+    public void evict(Long bookId) {
+        synchronized (books) {
+            CompiledBook book = books.remove(bookId);
+            if (book != null)
+                weight -= book.weight();
+        }
+        if (store != null)
+            store.delete(bookId);
+    }
+
+    /**
+     * evicts the least recently used books, while over the maximum weight
+     * (always keeping the most recent one)
+     */
+    private void evictEldest() {
+        Iterator<CompiledBook> it = books.values().iterator();
+        while (weight > maxWeight && books.size() > 1) {
+            weight -= it.next().weight();
+            it.remove();
+        }
+    }
+
+    public long weight() {
+        synchronized (books) {
+            return weight;
+        }
+    }
+
+    public int size() {
+        synchronized (books) {
+            return books.size();
+        }
+    }
+}
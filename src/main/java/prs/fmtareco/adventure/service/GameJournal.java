@@ -0,0 +1,195 @@
+package prs.fmtareco.adventure.service;
+
+import prs.fmtareco.adventure.model.Game;
+import prs.fmtareco.adventure.model.GameMove;
+import prs.fmtareco.adventure.model.GameState;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+    append-only journal of the game moves not yet written to the database
+    - one line per move, holding the whole game state after the move, so replaying is
+      idempotent (moves are numbered per game, and the last move of a game wins)
+    - lines are handed to the OS on each append (surviving a process crash), the file
+      is synced when sealed
+    - the journal is split in numbered files (journal-<n>.log): a flush seals the current
+      file, which is removed once its states are on the database
+ */
+final class GameJournal implements Closeable {
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private long sequence;
+    private FileChannel channel;
+    private BufferedWriter writer;
+
+    GameJournal(Path directory) {
+        try {
+            this.directory = Files.createDirectories(directory);
+            this.sequence = files().stream().mapToLong(GameJournal::sequenceOf).max().orElse(0);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void open() throws IOException {
+        sequence++;
+        channel = FileChannel.open(directory.resolve(PREFIX + sequence + SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the journal files, oldest first (including the open one)
+     */
+    List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> sequenceOf(file) > 0)
+                    .sorted(Comparator.comparingLong(GameJournal::sequenceOf))
+                    .toList();
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+            return 0;
+        try {
+            return Long.parseLong(name, PREFIX.length(), name.length() - SUFFIX.length(), 10);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the journal files sealed before the open one, oldest first
+     */
+    List<Path> sealedFiles() {
+        try {
+            return files().stream().filter(file -> sequenceOf(file) < sequence).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void append(GameMove move) {
+        try {
+            writer.write(toLine(move));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * syncs and closes the open file, and opens the next one
+     */
+    synchronized void seal() {
+        try {
+            closeFile();
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeFile() throws IOException {
+        writer.flush();
+        channel.force(false);
+        writer.close();
+    }
+
+    /**
+     * reads the game moves of the journal files
+     * A truncated or malformed line (crash while writing) is skipped
+     *
+     * @param files - journal files, oldest first
+     * @return game moves, in the journal order
+     */
+    static List<GameMove> read(List<Path> files) {
+        List<GameMove> moves = new ArrayList<>();
+        for (Path file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    GameMove move = fromLine(line);
+                    if (move != null)
+                        moves.add(move);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return moves;
+    }
+
+    static void delete(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    static String toLine(GameMove move) {
+        GameState state = move.state();
+        return String.join(",",
+                state.id().toString(),
+                state.bookId().toString(),
+                state.sectionId().toString(),
+                state.previousSectionId() == null ? "" : state.previousSectionId().toString(),
+                state.optionId() == null ? "" : state.optionId().toString(),
+                Integer.toString(state.health()),
+                state.status().name(),
+                Integer.toString(state.moves()),
+                Integer.toString(move.optionNo()),
+                Long.toString(move.movedAt().toEpochMilli()));
+    }
+
+    static GameMove fromLine(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 10)
+            return null;
+        try {
+            GameState state = new GameState(
+                    Long.valueOf(fields[0]),
+                    Long.valueOf(fields[1]),
+                    Integer.valueOf(fields[2]),
+                    fields[3].isEmpty() ? null : Integer.valueOf(fields[3]),
+                    fields[4].isEmpty() ? null : Long.valueOf(fields[4]),
+                    Integer.parseInt(fields[5]),
+                    Game.Status.valueOf(fields[6]),
+                    Integer.parseInt(fields[7]));
+            return new GameMove(state, Integer.parseInt(fields[8]), Instant.ofEpochMilli(Long.parseLong(fields[9])));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeFile();
+    }
+}
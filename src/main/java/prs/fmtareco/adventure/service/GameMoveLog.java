@@ -0,0 +1,152 @@
+package prs.fmtareco.adventure.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import prs.fmtareco.adventure.dtos.GameMoveDetails;
+import prs.fmtareco.adventure.model.Game;
+import prs.fmtareco.adventure.model.GameMove;
+import prs.fmtareco.adventure.model.GameState;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.List;
+
+/*
+    insert-only log of the game moves (game_moves table)
+    - a move is never updated: moves are numbered per game, and a move already
+      logged (journal replayed twice) is ignored
+    - the games row holds a snapshot of the game, the moves logged after it are the
+      newest state of the game (the snapshot is written every few moves, or by the flushes
+      of the write-behind store)
+ */
+@Component
+public class GameMoveLog {
+
+    private static final String INSERT_MOVE = """
+            INSERT INTO game_moves
+                (game_id, move_number, option_no, section_id, previous_section_id, option_id, health, status, moved_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (game_id, move_number) DO NOTHING""";
+
+    private static final String SELECT_LAST_MOVE = """
+            SELECT move_number, section_id, previous_section_id, option_id, health, status
+            FROM game_moves
+            WHERE game_id = ? AND move_number > ?
+            ORDER BY move_number DESC
+            LIMIT 1""";
+
+    private static final String SELECT_MOVES = """
+            SELECT m.move_number, m.option_no, o.description, p.section_number AS previous_section,
+                   s.section_number AS section, m.health, m.status, m.moved_at
+            FROM game_moves m
+            JOIN sections s ON s.id = m.section_id
+            LEFT JOIN sections p ON p.id = m.previous_section_id
+            LEFT JOIN options o ON o.id = m.option_id
+            WHERE m.game_id = ?
+            ORDER BY m.move_number""";
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+
+    public GameMoveLog(JdbcTemplate jdbc, ObjectMapper objectMapper) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * logs a move (on the transaction of the caller, if any)
+     *
+     * @param move - game move
+     * @return false when the move number was already logged (a concurrent move of the game)
+     */
+    public boolean append(GameMove move) {
+        return jdbc.update(INSERT_MOVE, ps -> setParameters(ps, move)) > 0;
+    }
+
+    /**
+     * logs moves in JDBC batches (a move number already logged is ignored)
+     *
+     * @param moves - game moves
+     * @param batchSize - maximum number of moves per batch
+     */
+    public void insert(Collection<GameMove> moves, int batchSize) {
+        if (!moves.isEmpty())
+            jdbc.batchUpdate(INSERT_MOVE, moves, batchSize, GameMoveLog::setParameters);
+    }
+
+    /**
+     * the current state of a game: the state after its last logged move, when newer than
+     * the snapshot of the games row (read backwards on the primary key)
+     *
+     * @param snapshot - state of the games row
+     * @return GameState of the last move, or the snapshot
+     */
+    public GameState current(GameState snapshot) {
+        List<GameState> last = jdbc.query(SELECT_LAST_MOVE, (rs, row) -> {
+            int previous = rs.getInt("previous_section_id");
+            Integer previousSectionId = rs.wasNull() ? null : previous;
+            return new GameState(
+                    snapshot.id(),
+                    snapshot.bookId(),
+                    rs.getInt("section_id"),
+                    previousSectionId,
+                    rs.getObject("option_id", Long.class),
+                    rs.getInt("health"),
+                    Game.Status.valueOf(rs.getString("status")),
+                    rs.getInt("move_number"));
+        }, snapshot.id(), snapshot.moves());
+        return last.isEmpty() ? snapshot : last.getFirst();
+    }
+
+    private static void setParameters(PreparedStatement ps, GameMove move) throws SQLException {
+        GameState state = move.state();
+        ps.setLong(1, state.id());
+        ps.setInt(2, state.moves());
+        ps.setInt(3, move.optionNo());
+        ps.setLong(4, state.sectionId());
+        ps.setObject(5, state.previousSectionId(), Types.BIGINT);
+        ps.setObject(6, state.optionId(), Types.BIGINT);
+        ps.setInt(7, state.health());
+        ps.setString(8, state.status().name());
+        ps.setTimestamp(9, Timestamp.from(move.movedAt()));
+    }
+
+    /**
+     * writes the moves of a game, in order, as json lines (NDJSON)
+     *
+     * @param gameId - id of the game
+     * @param out - output stream of the response
+     */
+    public void writeMoves(Long gameId, OutputStream out) {
+        jdbc.query(SELECT_MOVES, rs -> {
+            GameMoveDetails move = GameMoveDetails.builder()
+                    .move(rs.getInt("move_number"))
+                    .option(rs.getInt("option_no"))
+                    .description(rs.getString("description"))
+                    .previousSection(rs.getObject("previous_section", Integer.class))
+                    .section(rs.getInt("section"))
+                    .health(rs.getInt("health"))
+                    .status(rs.getString("status"))
+                    .movedAt(rs.getTimestamp("moved_at").toInstant())
+                    .build();
+            try {
+                out.write(objectMapper.writeValueAsBytes(move));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, gameId);
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
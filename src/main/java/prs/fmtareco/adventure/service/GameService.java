@@ -5,17 +5,27 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import prs.fmtareco.adventure.annotations.TrackExecution;
+import prs.fmtareco.adventure.config.GameplayProperties;
 import prs.fmtareco.adventure.dtos.GameDetails;
+import prs.fmtareco.adventure.dtos.GameMoves;
 import prs.fmtareco.adventure.dtos.GameOption;
 import prs.fmtareco.adventure.dtos.GameSummary;
+import prs.fmtareco.adventure.dtos.MoveOutcome;
 import prs.fmtareco.adventure.exceptions.*;
 import prs.fmtareco.adventure.model.*;
 import prs.fmtareco.adventure.repository.BookRepository;
 import prs.fmtareco.adventure.repository.GameRepository;
+import prs.fmtareco.adventure.repository.OptionRepository;
+import prs.fmtareco.adventure.repository.SectionRepository;
+import prs.fmtareco.adventure.simulation.BookGraph;
+import prs.fmtareco.adventure.simulation.CompiledBook;
 
+import java.io.OutputStream;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiFunction;
 
 @Service
 public class GameService {
@@ -27,10 +37,62 @@ public class GameService {
 
     private final BookRepository bookRepo;
     private final GameRepository gameRepo;
+    private final SectionRepository sectionRepo;
+    private final OptionRepository optionRepo;
+    private final CompiledBookCache compiledBooks;
+    private final ActiveGameStore activeGames;
+    private final GameMoveLog moveLog;
+    private final GameplayProperties gameplayProps;
 
-    public GameService(BookRepository bookRepo, GameRepository gameRepo) {
+    public GameService(
+            BookRepository bookRepo,
+            GameRepository gameRepo,
+            SectionRepository sectionRepo,
+            OptionRepository optionRepo,
+            CompiledBookCache compiledBooks,
+            ActiveGameStore activeGames,
+            GameMoveLog moveLog,
+            GameplayProperties gameplayProps) {
         this.bookRepo = bookRepo;
         this.gameRepo = gameRepo;
+        this.sectionRepo = sectionRepo;
+        this.optionRepo = optionRepo;
+        this.compiledBooks = compiledBooks;
+        this.activeGames = activeGames;
+        this.moveLog = moveLog;
+        this.gameplayProps = gameplayProps;
+    }
+
+    /**
+     * returns the compiled (read model) of a book, compiling it on the first use
+     *
+     * @param bookId - id of the book
+     * @return CompiledBook instance
+     */
+    private CompiledBook compiledBook(Long bookId) {
+        return compiledBooks.get(bookId,
+                () -> bookRepo.findContentHashById(bookId).orElse(null),
+                () -> bookRepo.findById(bookId)
+                        .map(CompiledBook::from)
+                        .orElseThrow(() -> new BookNotFoundException(bookId)));
+    }
+
+    /**
+     * returns the compiled book of a game
+     * When the game section is not on the compiled book, the book content changed
+     * since it was compiled (sections are replaced), so the book is compiled again
+     *
+     * @param game - context game state
+     * @return CompiledBook instance
+     */
+    private CompiledBook compiledBook(GameState game) {
+        Long bookId = game.bookId();
+        CompiledBook book = compiledBook(bookId);
+        if (book.sectionIndex(game.sectionId()) == BookGraph.NO_SECTION) {
+            compiledBooks.evict(bookId);
+            book = compiledBook(bookId);
+        }
+        return book;
     }
 
     /**
@@ -47,18 +109,67 @@ public class GameService {
     @TrackExecution
     @Transactional
     public GameDetails startGame(Long bookId) {
-        Book book = bookRepo.findById(bookId)
-                .orElseThrow(()
-                    -> new BookNotFoundException(bookId));
-        Book.Condition condition = book.getCondition();
+        CompiledBook book = compiledBook(bookId);
+        Book.Condition condition = book.condition();
         if (condition != Book.Condition.OK)
             throw new InvalidBookException(bookId, condition.toString());
-        Section section = book.getInitialSection()
-                .orElseThrow(()
-                    -> new InvalidBookException(bookId, condition.toString()));
-        Game game = Game.create(book, section);
+        int begin = book.beginIndex();
+        if (begin == BookGraph.NO_SECTION)
+            throw new InvalidBookException(bookId, condition.toString());
+        Game game = Game.create(
+                bookRepo.getReferenceById(bookId),
+                sectionRepo.getReferenceById(book.sectionId(begin)));
         gameRepo.save(game);
-        return toGameDetails(game);
+        return toGameDetails(GameState.of(game), book);
+    }
+
+    /**
+     * reads the state of a game from the database
+     * (the games row, or the last move logged after its snapshot)
+     *
+     * @param gameId - id of the game
+     * @return GameState instance
+     */
+    private GameState loadState(Long gameId) {
+        return loadGame(gameId).state();
+    }
+
+    /**
+     * the game row and the current state of the game
+     *
+     * @param game - game entity, holding the last snapshot
+     * @param state - current state of the game
+     */
+    private record LoadedGame(Game game, GameState state) {}
+
+    private LoadedGame loadGame(Long gameId) {
+        Game game = gameRepo.findById(gameId)
+                .orElseThrow(() -> new GameNotFoundException(gameId));
+        return new LoadedGame(game, moveLog.current(GameState.of(game)));
+    }
+
+    /**
+     * logs the moves of a game and, every `snapshot-moves` moves or when the game ends,
+     * writes its games row (without the write-behind store)
+     * A first move number already logged (a concurrent move of the game, the move numbers
+     * being contiguous) rolls back the request
+     *
+     * @param loaded - game row and state before the moves
+     * @param moves - the moves taken, in order
+     */
+    private void saveMoves(LoadedGame loaded, List<GameMove> moves) {
+        if (moves.isEmpty())
+            return;
+        GameMove first = moves.getFirst();
+        if (!moveLog.append(first))
+            throw new ConcurrentMoveException(first.state().id(), first.state().moves());
+        moveLog.insert(moves.subList(1, moves.size()), moves.size());
+        GameState state = moves.getLast().state();
+        Game game = loaded.game();
+        if (state.isFinished() || state.moves() - game.getMoves() >= gameplayProps.snapshotMoves()) {
+            setState(game, state);
+            gameRepo.save(game);
+        }
     }
 
     /**
@@ -71,16 +182,108 @@ public class GameService {
      *
      * @param gameId - the id of the game being operated
      * @param optionNo - the selected option (0 means RESTART)
+     * With the write-behind store enabled, the move is applied to the in memory game
+     * (the database is updated by the store flushes). Otherwise the move is logged and the
+     * game row written every `snapshot-moves` moves (or when the game ends)
+     *
      * @return GameDetails record with the game details & status after
      */
     @Transactional
     public GameDetails takeOption(Long gameId, int optionNo) {
-        Game game = gameRepo.findById(gameId)
-                .orElseThrow(()
-                        -> new GameNotFoundException(gameId));
-        applyOption(game, optionNo);
-        gameRepo.save(game);
-        return toGameDetails(game);
+        if (activeGames.isEnabled()) {
+            CompiledBook book = compiledBook(activeGames.get(gameId, () -> loadState(gameId)));
+            GameState game = activeGames.update(gameId, optionNo,
+                    () -> loadState(gameId),
+                    current -> move(current, book, optionNo));
+            return toGameDetails(game, book);
+        }
+        LoadedGame loaded = loadGame(gameId);
+        CompiledBook book = compiledBook(loaded.state());
+        GameState state = move(loaded.state(), book, optionNo);
+        saveMoves(loaded, List.of(new GameMove(state, optionNo, Instant.now())));
+        return toGameDetails(state, book);
+    }
+
+    /**
+     * applies an ordered list of options to a game, in one transaction
+     * - each option follows the takeOption rules
+     * - stops after the first move ending the game (SUCCEEDED or FAILED), or at the first
+     *   option that can't be applied (that step gets the error, the game is left as before it)
+     * - the moves are logged in a batch, and the game row written (once) as on takeOption
+     *
+     * @param gameId - the id of the game being operated
+     * @param optionNos - the options to apply, in order (0 means RESTART)
+     * @return GameMoves record with the game details after the last move, and each step outcome
+     */
+    @TrackExecution
+    @Transactional
+    public GameMoves takeOptions(Long gameId, List<Integer> optionNos) {
+        if (optionNos == null || optionNos.contains(null))
+            throw new MissingValueException("options missing");
+        if (optionNos.size() > gameplayProps.maxBatchMoves())
+            throw new TooManyMovesException(optionNos.size(), gameplayProps.maxBatchMoves());
+        List<MoveOutcome> steps = new ArrayList<>();
+        if (activeGames.isEnabled()) {
+            GameState state = activeGames.get(gameId, () -> loadState(gameId));
+            CompiledBook book = compiledBook(state);
+            state = playOptions(book, optionNos, state, steps, (current, optionNo) ->
+                    activeGames.update(gameId, optionNo,
+                            () -> loadState(gameId),
+                            game -> move(game, book, optionNo)));
+            return toGameMoves(state, book, steps);
+        }
+        LoadedGame loaded = loadGame(gameId);
+        CompiledBook book = compiledBook(loaded.state());
+        List<GameMove> moves = new ArrayList<>();
+        GameState state = playOptions(book, optionNos, loaded.state(), steps, (current, optionNo) -> {
+            GameState next = move(current, book, optionNo);
+            moves.add(new GameMove(next, optionNo, Instant.now()));
+            return next;
+        });
+        saveMoves(loaded, moves);
+        return toGameMoves(state, book, steps);
+    }
+
+    /**
+     * applies the options in order, adding the outcome of each step
+     *
+     * @param book - compiled book of the game
+     * @param optionNos - the options to apply, in order
+     * @param state - game state before the first option
+     * @param steps - receives the outcomes of the applied steps (and of the failed one, if any)
+     * @param step - applies an option to a game state, returning the game state after it
+     * @return the game state after the last applied option
+     */
+    private GameState playOptions(CompiledBook book, List<Integer> optionNos, GameState state,
+                                  List<MoveOutcome> steps, BiFunction<GameState, Integer, GameState> step) {
+        for (int optionNo : optionNos) {
+            MoveOutcome.MoveOutcomeBuilder outcome = MoveOutcome.builder()
+                    .step(steps.size() + 1)
+                    .option(optionNo);
+            try {
+                state = step.apply(state, optionNo);
+            } catch (InvalidResourceException e) {
+                steps.add(outcome.error(e.getMessage()).build());
+                break;
+            }
+            steps.add(outcome
+                    .section(book.sectionNumber(book.sectionIndex(state.sectionId())))
+                    .health(state.health())
+                    .status(state.status().toString())
+                    .build());
+            if (state.isFinished())
+                break;
+        }
+        return state;
+    }
+
+    private GameMoves toGameMoves(GameState game, CompiledBook book, List<MoveOutcome> steps) {
+        int applied = (int) steps.stream().filter(step -> step.error() == null).count();
+        return GameMoves.builder()
+                .game(toGameDetails(game, book))
+                .applied(applied)
+                .steps(steps)
+                .build();
     }
 
     /**
@@ -90,10 +293,30 @@ public class GameService {
      * @return GameDetails record with the game details & status
      */
     public  GameDetails getGameDetails(Long gameId) {
-        Game game = gameRepo.findById(gameId)
-                .orElseThrow(()
-                        -> new GameNotFoundException(gameId));
-        return toGameDetails(game);
+        GameState game = activeGames.find(gameId)
+                .orElseGet(() -> loadState(gameId));
+        return toGameDetails(game, compiledBook(game));
+    }
+
+    /**
+     * writes the moves of a game, in order, as json lines
+     * (with the write-behind store enabled, the moves since the last flush are not included)
+     *
+     * @param gameId - id of the game
+     * @param out - output stream of the response
+     */
+    public void writeGameMoves(Long gameId, OutputStream out) {
+        moveLog.writeMoves(gameId, out);
+    }
+
+    /**
+     * checks that a game exists
+     *
+     * @param gameId - id of the game
+     */
+    public void requireGame(Long gameId) {
+        if (!gameRepo.existsById(gameId))
+            throw new GameNotFoundException(gameId);
     }
 
     /**
@@ -114,104 +337,64 @@ public class GameService {
 
 
     /**
-     * restarts a game by refiling the health and moving to the book initial section
-     * Also updates the game status to RESTARTED
-     *
-     * @param game - context game
-     */
-    @Transactional
-    public void restartGame(Game game) {
-        game.setPreviousSection(game.getSection());
-        game.setChosenOption(null);
-        Optional<Section> section = game.getBook().getInitialSection();
-        game.setSection(section.orElse(null));
-        game.setHealth(Game.INITIAL_HEALTH);
-        game.setStatus(Game.Status.RESTARTED);
-    }
-
-
-    public void applyOption(Game game,  int optionNo) {
-        if (optionNo==0) {
-            restartGame(game);
-            return;
-        }
-        Option option = chosenOption(game, optionNo);
-        applyOption(game, option);
-    }
-
-
-    /**
-     * returns the option in position from the game current section
-     *
-     * @param game - context game
-     * @param optionNo - non-zero position of the option on the current section options array
-     * @return - Option instance correspondent to the input position
-     */
-    private Option chosenOption(Game game, int optionNo) {
-        List<Option> currentOptions = game.getSection().getOptions();
-        if (optionNo>currentOptions.size())
-            throw new InvalidOptionException(optionNo, currentOptions.size());
-        return currentOptions.get(optionNo-1);
-    }
-
-    /**
-     * applies the option section transition and eventual consequence on the game
-     * - sets as new current section the one determined by the option go to ID
-     * - applies the option consequence (if present) on the game health
+     * copies a game state into the game entity (sections and options are set as references)
      *
      * @param game - context game
-     * @param opt - Option instance applied to the game
+     * @param state - game state to copy
      */
-    @TrackExecution
-    public void applyOption(Game game, Option opt) {
-        game.setPreviousSection(game.getSection());
-        game.setChosenOption(opt);
-        int sectionNumber = opt.getGotoSectionNumber();
-        Optional<Section> section = game.getBook().getSectionNumber(sectionNumber);
-        if (section.isEmpty())
-            throw new InvalidSectionException(sectionNumber);
-        game.setSection(section.orElse(null));
-        applyConsequence(game, opt.getConsequence());
+    private void setState(Game game, GameState state) {
+        game.setPreviousSection(state.previousSectionId() == null
+                ? null
+                : sectionRepo.getReferenceById(state.previousSectionId()));
+        game.setChosenOption(state.optionId() == null ? null : optionRepo.getReferenceById(state.optionId()));
+        game.setSection(sectionRepo.getReferenceById(state.sectionId()));
+        game.setHealth(state.health());
+        game.setStatus(state.status());
+        game.setMoves(state.moves());
     }
 
     /**
-     * applies an option Consequence effect to the game
-     * - increments or decrements the game health
+     * returns the state of a game following an option selection, based on the compiled book
+     * - 0 - restarts the games, restoring health and moving to the initial section
+     * - non-zero value, moves to the section determined by the option and applies the
+     *   eventual consequence (loses aor adds health)
      *
-     * @param game - context game
-     * @param _csq - Consequence instance applied to the game
+     * @param game - context game state
+     * @param book - compiled book of the game
+     * @param optionNo - the selected option (0 means RESTART)
+     * @return the game state after the move
      */
-    public void applyConsequence(Game game, Consequence _csq) {
-        Optional<Consequence> csq = Optional.ofNullable(_csq);
-        int csqValue = csq.map(Consequence::getValue).orElse(0);
-        if (csqValue>0) {
-            Consequence.Type type = csq.map(Consequence::getType).orElse(null);
-            int health = game.getHealth();
-            if (type == Consequence.Type.LOSE_HEALTH)
-                health -= csq.get().getValue();
-            else
-                health += csq.get().getValue();
-            game.setHealth(health);
-        }
-        setStatus(game);
+    public GameState move(GameState game, CompiledBook book, int optionNo) {
+        if (optionNo == 0)
+            return new GameState(game.id(), game.bookId(), book.sectionId(book.beginIndex()),
+                    game.sectionId(), null, Game.INITIAL_HEALTH, Game.Status.RESTARTED, game.moves() + 1);
+        int current = book.sectionIndex(game.sectionId());
+        int numOptions = book.endOption(current) - book.firstOption(current);
+        if (optionNo < 0 || optionNo > numOptions)
+            throw new InvalidOptionException(optionNo, numOptions);
+        int option = book.firstOption(current) + optionNo - 1;
+        int target = book.target(option);
+        if (target == BookGraph.NO_SECTION)
+            throw new InvalidSectionException(book.optionGotoNumber(option));
+        int health = game.health() + book.delta(option);
+        return new GameState(game.id(), game.bookId(), book.sectionId(target),
+                game.sectionId(), book.optionId(option), health, statusOf(book.type(target), health),
+                game.moves() + 1);
     }
 
     /**
-     * updates the status of the game
-     * based on the current section and health
+     * returns the status of a game on a section type and with a given health
      *
-     * @param game - context game
+     * @param type - type of the current section
+     * @param health - game health
+     * @return game status
      */
-    private void setStatus(Game game) {
-        if (game.getSection().getType() == Section.Type.END) {
-            game.setStatus(Game.Status.SUCCEEDED);
-            return;
-        }
-        if (game.getHealth() <=0) {
-            game.setStatus(Game.Status.FAILED);
-            return;
-        }
-        game.setStatus(Game.Status.ACTIVE);
+    private static Game.Status statusOf(Section.Type type, int health) {
+        if (type == Section.Type.END)
+            return Game.Status.SUCCEEDED;
+        if (health <= 0)
+            return Game.Status.FAILED;
+        return Game.Status.ACTIVE;
     }
 
     /**
@@ -231,16 +414,18 @@ public class GameService {
      * Always inserts an option to restart the game, on the start of the list
      *
      * @param game - context game
+     * @param book - compiled book of the game
+     * @param current - index of the current section
      * @return list of GameOption instances (pair position+Option)
      */
-    private List<GameOption> getCurrentOptions(Game game) {
+    private List<GameOption> getCurrentOptions(GameState game, CompiledBook book, int current) {
         List<GameOption> options = new ArrayList<>();
         options.add(createGameOption(0, RESTART_OPTION));
-        Game.Status status = game.getStatus();
+        Game.Status status = game.status();
         if (status!=Game.Status.SUCCEEDED && status!=Game.Status.FAILED) {
             int optionNo = 1;
-            for(Option opt : game.getSection().getOptions()) {
-                options.add(createGameOption(optionNo++, opt.getDescription()));
+            for (int o = book.firstOption(current); o < book.endOption(current); o++) {
+                options.add(createGameOption(optionNo++, book.optionDescription(o)));
             }
         }
         return options;
@@ -249,25 +434,26 @@ public class GameService {
     /**
      * creates an instance of GameDetails DTO to return from an API call
      * converts the context game details and status into teh DTO fields
+     * (texts come from the compiled book, so no section or option is loaded)
      *
      * @param game - context game
+     * @param book - compiled book of the game
      * @return GameDetails DTO instance
      */
-    private GameDetails toGameDetails(Game game) {
-        Optional<Option> chosenOption = Optional.ofNullable(game.getChosenOption());
-        Optional<Consequence> consequence = chosenOption
-                .map(Option::getConsequence);
-        Optional<Section> previousSection = Optional.ofNullable(game.getPreviousSection());
-        String before = previousSection
-                .map(Section::getText)
-                .orElse("");
-        String move = chosenOption
-                .map(Option::getDescription)
-                .orElse("");
-        String outcome = consequence
-                .map(Consequence::getText)
-                .orElse("");
-        switch (game.getStatus()) {
+    private GameDetails toGameDetails(GameState game, CompiledBook book) {
+        int current = book.sectionIndex(game.sectionId());
+        int previous = Optional.ofNullable(game.previousSectionId())
+                .map(book::sectionIndex)
+                .orElse(BookGraph.NO_SECTION);
+        int chosen = Optional.ofNullable(game.optionId())
+                .map(book::optionIndex)
+                .orElse(-1);
+        String before = previous == BookGraph.NO_SECTION ? "" : book.sectionText(previous);
+        String move = chosen < 0 ? "" : book.optionDescription(chosen);
+        String outcome = chosen < 0
+                ? ""
+                : Optional.ofNullable(book.consequenceText(chosen)).orElse("");
+        switch (game.status()) {
             case STARTED -> {
                 before = STARTED_BEFORE;
                 move = STARTED_MOVE;
@@ -276,31 +462,34 @@ public class GameService {
                 move = RESTARTED_MOVE;
         }
         return GameDetails.builder()
-                .game(game.getId())
-                .book(game.getBook().getTitle())
-                .health(game.getHealth())
-                .status(game.getStatus().toString())
+                .game(game.id())
+                .book(book.title())
+                .health(game.health())
+                .status(game.status().toString())
                 .before(before)
                 .move(move)
                 .outcome(outcome)
-                .position(game.getSection().getText())
-                .options(getCurrentOptions(game))
+                .position(book.sectionText(current))
+                .options(getCurrentOptions(game, book, current))
                 .build();
     }
 
     /**
      * creates an instance of GameSummary DTO to return from an API call
      * converts the context game details and status into teh DTO fields
+     * (a game on the write-behind store shows its in memory health and status)
      *
      * @param game - context game
      * @return GameSummary DTO instance
      */
     private GameSummary toGameSummary(Game game) {
+        GameState state = activeGames.find(game.getId())
+                .orElseGet(() -> GameState.of(game));
         return GameSummary.builder()
-                .game(game.getId())
-                .book(game.getBook().getId())
-                .health(game.getHealth())
-                .status(game.getStatus().toString())
+                .game(state.id())
+                .book(state.bookId())
+                .health(state.health())
+                .status(state.status().toString())
                 .build();
     }
 
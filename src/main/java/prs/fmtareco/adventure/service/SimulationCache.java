@@ -0,0 +1,105 @@
+package prs.fmtareco.adventure.service;
+
+import org.springframework.stereotype.Component;
+import prs.fmtareco.adventure.config.SimulationProperties;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/*
+    caches the results of the book simulations, per book and content version
+    - a book entry holds the results of each simulation mode for a single content version,
+      and is dropped (with the results of every mode) as soon as the content version changes
+    - bounded to a maximum number of books, evicting the least recently used
+ */
+@Component
+public class SimulationCache {
+
+    private final Map<Long, BookEntry> entries;
+
+    public SimulationCache(SimulationProperties props) {
+        int maxBooks = props.cacheSize();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BookEntry> eldest) {
+                return size() > maxBooks;
+            }
+        };
+    }
+
+    /**
+     * returns the cached result of a simulation, running and caching it when missing
+     *
+     * @param bookId - id of the simulated book
+     * @param version - content version of the simulated book
+     * @param mode - identifies the simulation mode (and its settings)
+     * @param simulation - runs the simulation
+     * @return the (cached) simulation result
+     */
+    public <T> T get(Long bookId, String version, String mode, Supplier<T> simulation) {
+        return get(bookId, version, mode, simulation, result -> true);
+    }
+
+    /**
+     * returns the cached result of a simulation, running it when missing,
+     * and caching it only if complete (a result bounded by a budget is not)
+     *
+     * @param bookId - id of the simulated book
+     * @param version - content version of the simulated book
+     * @param mode - identifies the simulation mode (and its settings)
+     * @param simulation - runs the simulation
+     * @param complete - tells if a result can be cached
+     * @return the (cached) simulation result
+     */
+    public <T> T get(Long bookId, String version, String mode, Supplier<T> simulation, Predicate<? super T> complete) {
+        Object result;
+        synchronized (entries) {
+            BookEntry entry = entries.get(bookId);
+            result = entry != null && entry.version.equals(version)
+                    ? entry.results.get(mode)
+                    : null;
+        }
+        if (result == null) {
+            T simulated = simulation.get();
+            if (complete.test(simulated))
+                put(bookId, version, mode, simulated);
+            result = simulated;
+        }
+        @SuppressWarnings("unchecked")
+        T cached = (T) result;
+        return cached;
+    }
+
+    private void put(Long bookId, String version, String mode, Object result) {
+        synchronized (entries) {
+            BookEntry entry = entries.get(bookId);
+            if (entry == null || !entry.version.equals(version)) {
+                entry = new BookEntry(version);
+                entries.put(bookId, entry);
+            }
+            entry.results.put(mode, result);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /*
+        simulation results of a book content version, per mode
+     */
+    private static final class BookEntry {
+        private final String version;
+        private final Map<String, Object> results = new HashMap<>();
+
+        private BookEntry(String version) {
+            this.version = Objects.requireNonNull(version);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package prs.fmtareco.adventure.service;
+
+import prs.fmtareco.adventure.dtos.BookPathCount;
+import prs.fmtareco.adventure.dtos.BookSimulation;
+import prs.fmtareco.adventure.dtos.ValidationJobStatus;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+    state of an asynchronous book validation
+    - written by the executor thread running it, read by the polling requests
+ */
+final class ValidationJob {
+
+    enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    enum Mode { EXPLORE, PARALLEL }
+
+    private final UUID id = UUID.randomUUID();
+    private final Long bookId;
+    private final Mode mode;
+    private final Instant submittedAt = Instant.now();
+    private final long submittedNanos = System.nanoTime();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long nodesExplored;
+    private volatile long finishedNanos;
+    private volatile BookSimulation result;
+    private volatile BookPathCount pathCount;
+    private volatile String error;
+
+    ValidationJob(Long bookId, Mode mode) {
+        this.bookId = bookId;
+        this.mode = mode;
+    }
+
+    UUID id() {
+        return id;
+    }
+
+    Long bookId() {
+        return bookId;
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void progress(long explored) {
+        nodesExplored = explored;
+    }
+
+    void complete(BookSimulation simulation) {
+        result = simulation;
+        finish(Status.COMPLETED);
+    }
+
+    void complete(BookPathCount count) {
+        pathCount = count;
+        finish(Status.COMPLETED);
+    }
+
+    void fail(String message) {
+        error = message;
+        finish(Status.FAILED);
+    }
+
+    private void finish(Status outcome) {
+        finishedNanos = System.nanoTime();
+        status = outcome;
+    }
+
+    boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    /**
+     * @return true if the job finished before the argument instant (System.nanoTime based)
+     */
+    boolean finishedBefore(long nanos) {
+        return isFinished() && finishedNanos - nanos < 0;
+    }
+
+    ValidationJobStatus toStatus() {
+        Status current = status;
+        long end = current == Status.COMPLETED || current == Status.FAILED
+                ? finishedNanos
+                : System.nanoTime();
+        return ValidationJobStatus.builder()
+                .jobId(id)
+                .bookId(bookId)
+                .mode(mode.name().toLowerCase())
+                .status(current.name())
+                .nodesExplored(nodesExplored)
+                .submittedAt(submittedAt)
+                .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(end - submittedNanos))
+                .result(result)
+                .pathCount(pathCount)
+                .error(error)
+                .build();
+    }
+}
@@ -0,0 +1,140 @@
+package prs.fmtareco.adventure.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import prs.fmtareco.adventure.config.SimulationProperties;
+import prs.fmtareco.adventure.dtos.ValidationJobStatus;
+import prs.fmtareco.adventure.exceptions.BookNotFoundException;
+import prs.fmtareco.adventure.exceptions.InvalidParameterException;
+import prs.fmtareco.adventure.exceptions.ValidationJobNotFoundException;
+import prs.fmtareco.adventure.exceptions.ValidationQueueFullException;
+import prs.fmtareco.adventure.repository.BookRepository;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class ValidationJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ValidationJobService.class);
+
+    private final BookService bookService;
+    private final BookRepository bookRepo;
+    private final ThreadPoolExecutor validationExecutor;
+    private final long retentionNanos;
+    private final Duration parallelBudget;
+    private final Map<UUID, ValidationJob> jobs = new ConcurrentHashMap<>();
+
+    private final Timer completedTimer;
+    private final Timer failedTimer;
+    private final Counter rejectedCounter;
+
+    public ValidationJobService(
+            BookService bookService,
+            BookRepository bookRepo,
+            ThreadPoolExecutor validationExecutor,
+            SimulationProperties simulationProps,
+            MeterRegistry registry) {
+        this.bookService = bookService;
+        this.bookRepo = bookRepo;
+        this.validationExecutor = validationExecutor;
+        this.retentionNanos = simulationProps.jobRetention().toNanos();
+        this.parallelBudget = simulationProps.parallelJobTimeBudget();
+
+        Gauge.builder("adventure.validation.queue.depth", validationExecutor, e -> e.getQueue().size())
+                .description("validation jobs waiting for a thread")
+                .register(registry);
+        Gauge.builder("adventure.validation.jobs.active", validationExecutor, ThreadPoolExecutor::getActiveCount)
+                .description("validation jobs running")
+                .register(registry);
+        this.completedTimer = jobTimer(registry, "completed");
+        this.failedTimer = jobTimer(registry, "failed");
+        this.rejectedCounter = Counter.builder("adventure.validation.jobs.rejected")
+                .description("validation jobs rejected while the queue was full")
+                .register(registry);
+    }
+
+    private static Timer jobTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("adventure.validation.job.duration")
+                .description("time from the submission to the end of a validation job")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * submits the validation (simulation) of a book, to run on the validation executor
+     *
+     * @param bookId - id of the book
+     * @param mode - explore (PathSimulation) or parallel (ParallelPathSimulation, bounded by
+     *               the configured number of paths and parallel-job-time-budget)
+     * @return ValidationJobStatus of the queued job
+     */
+    public ValidationJobStatus submitValidation(Long bookId, String mode) {
+        ValidationJob.Mode jobMode = switch (mode) {
+            case "explore" -> ValidationJob.Mode.EXPLORE;
+            case "parallel" -> ValidationJob.Mode.PARALLEL;
+            default -> throw new InvalidParameterException("mode", mode, "explore or parallel");
+        };
+        if (!bookRepo.existsById(bookId))
+            throw new BookNotFoundException(bookId);
+        purgeFinishedJobs();
+        ValidationJob job = new ValidationJob(bookId, jobMode);
+        jobs.put(job.id(), job);
+        try {
+            validationExecutor.execute(() -> runJob(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id());
+            rejectedCounter.increment();
+            throw new ValidationQueueFullException(bookId);
+        }
+        return job.toStatus();
+    }
+
+    /**
+     * returns the current state of a validation job
+     *
+     * @param jobId - id of the job
+     * @return ValidationJobStatus w/ the progress, or the result once completed
+     */
+    public ValidationJobStatus getValidation(UUID jobId) {
+        purgeFinishedJobs();
+        ValidationJob job = jobs.get(jobId);
+        if (job == null)
+            throw new ValidationJobNotFoundException(jobId);
+        return job.toStatus();
+    }
+
+    private void runJob(ValidationJob job) {
+        job.start();
+        Timer timer = completedTimer;
+        try {
+            switch (job.mode()) {
+                case EXPLORE -> job.complete(bookService.simulateBookPaths(job.bookId(), job::progress));
+                case PARALLEL -> job.complete(bookService.simulateBookPathsInParallel(job.bookId(), parallelBudget));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Validation job {} of book {} failed", job.id(), job.bookId(), e);
+            job.fail(e.getMessage());
+            timer = failedTimer;
+        }
+        timer.record(job.toStatus().elapsedMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * forgets the jobs finished for longer than the retention period
+     */
+    private void purgeFinishedJobs() {
+        long limit = System.nanoTime() - retentionNanos;
+        jobs.values().removeIf(job -> job.finishedBefore(limit));
+    }
+}
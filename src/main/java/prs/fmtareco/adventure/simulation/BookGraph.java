@@ -0,0 +1,149 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Consequence;
+import prs.fmtareco.adventure.model.Option;
+import prs.fmtareco.adventure.model.Section;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    compiled, read-only view of a book sections graph, based on primitive arrays
+    - sections are identified by a dense index (position on the book sections list)
+    - options of section i are stored on the range [firstOption(i), endOption(i))
+ */
+public final class BookGraph {
+
+    /**
+     * target index of the options leading to an unknown section
+     */
+    public static final int NO_SECTION = -1;
+
+    private final int[] sectionNumbers;
+    private final Section.Type[] types;
+    private final int beginIndex;
+    final int[] optionStart;
+    final int[] optionTarget;
+    private final int[] optionDelta;
+
+    BookGraph(int[] sectionNumbers, Section.Type[] types, int beginIndex,
+              int[] optionStart, int[] optionTarget, int[] optionDelta) {
+        this.sectionNumbers = sectionNumbers;
+        this.types = types;
+        this.beginIndex = beginIndex;
+        this.optionStart = optionStart;
+        this.optionTarget = optionTarget;
+        this.optionDelta = optionDelta;
+    }
+
+    /**
+     * compiles the book sections, options and consequences into the adjacency arrays
+     *
+     * @param book - book to compile
+     * @return BookGraph instance
+     */
+    public static BookGraph from(Book book) {
+        List<Section> sections = book.getSections();
+        int numSections = sections.size();
+        Map<Integer, Integer> indexes = new HashMap<>(numSections * 2);
+        int[] sectionNumbers = new int[numSections];
+        Section.Type[] types = new Section.Type[numSections];
+        int[] optionStart = new int[numSections + 1];
+        int beginIndex = NO_SECTION;
+        int numOptions = 0;
+        for (int i = 0; i < numSections; i++) {
+            Section section = sections.get(i);
+            sectionNumbers[i] = section.getSectionNumber();
+            types[i] = section.getType();
+            indexes.putIfAbsent(section.getSectionNumber(), i);
+            if (beginIndex == NO_SECTION && section.getType() == Section.Type.BEGIN)
+                beginIndex = i;
+            optionStart[i] = numOptions;
+            numOptions += section.getOptions().size();
+        }
+        optionStart[numSections] = numOptions;
+
+        int[] optionTarget = new int[numOptions];
+        int[] optionDelta = new int[numOptions];
+        int o = 0;
+        for (Section section : sections) {
+            for (Option option : section.getOptions()) {
+                optionTarget[o] = indexes.getOrDefault(option.getGotoSectionNumber(), NO_SECTION);
+                optionDelta[o] = healthDelta(option.getConsequence());
+                o++;
+            }
+        }
+        return new BookGraph(sectionNumbers, types, beginIndex, optionStart, optionTarget, optionDelta);
+    }
+
+    /**
+     * converts an option consequence into a signed health variation
+     * (as on the games, a consequence without a positive value leaves the health unchanged)
+     *
+     * @param csq - Consequence instance (optional)
+     * @return health variation (0 when there is no consequence)
+     */
+    static int healthDelta(Consequence csq) {
+        if (csq == null || csq.getValue() == null || csq.getValue() <= 0)
+            return 0;
+        int value = csq.getValue();
+        return csq.getType() == Consequence.Type.LOSE_HEALTH ? -value : value;
+    }
+
+    public int sectionCount() {
+        return sectionNumbers.length;
+    }
+
+    public int optionCount() {
+        return optionTarget.length;
+    }
+
+    /**
+     * @return index of the book initial section, or NO_SECTION
+     */
+    public int beginIndex() {
+        return beginIndex;
+    }
+
+    public int sectionNumber(int section) {
+        return sectionNumbers[section];
+    }
+
+    public Section.Type type(int section) {
+        return types[section];
+    }
+
+    public boolean isEnd(int section) {
+        return types[section] == Section.Type.END;
+    }
+
+    /**
+     * @return index of the first option of the section
+     */
+    public int firstOption(int section) {
+        return optionStart[section];
+    }
+
+    /**
+     * @return index following the last option of the section
+     */
+    public int endOption(int section) {
+        return optionStart[section + 1];
+    }
+
+    /**
+     * @return index of the section reached by the option, or NO_SECTION
+     */
+    public int target(int option) {
+        return optionTarget[option];
+    }
+
+    /**
+     * @return signed health variation applied by the option
+     */
+    public int delta(int option) {
+        return optionDelta[option];
+    }
+}
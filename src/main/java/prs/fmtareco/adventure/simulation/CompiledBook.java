@@ -0,0 +1,106 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Section;
+
+/*
+    immutable read model of a (persisted) book, to play games without loading its entities
+    - sections and options are identified by the dense indexes of the BookGraph, and are
+      mapped from/to their database ids
+    - texts (sections, option descriptions, consequences) are kept by index
+    - kept on the heap (from) or read from a memory mapped file (CompiledBookStore)
+ */
+public interface CompiledBook {
+
+    /**
+     * compiles a persisted book (sections and options must have ids)
+     *
+     * @param book - book to compile
+     * @return CompiledBook instance, kept on the heap
+     */
+    static CompiledBook from(Book book) {
+        return new HeapCompiledBook(book, BookGraph.from(book));
+    }
+
+    Long bookId();
+
+    String title();
+
+    Book.Condition condition();
+
+    /**
+     * @return content hash of the compiled book (may be null)
+     */
+    String contentHash();
+
+    /**
+     * @return sections graph of the book, for the simulations
+     */
+    BookGraph graph();
+
+    /**
+     * @return approximate heap size of this instance, in bytes
+     */
+    long weight();
+
+    int sectionCount();
+
+    int optionCount();
+
+    /**
+     * @return index of the book initial section, or BookGraph.NO_SECTION
+     */
+    int beginIndex();
+
+    int sectionNumber(int section);
+
+    Section.Type type(int section);
+
+    /**
+     * @return index of the first option of the section
+     */
+    int firstOption(int section);
+
+    /**
+     * @return index following the last option of the section
+     */
+    int endOption(int section);
+
+    /**
+     * @return index of the section reached by the option, or BookGraph.NO_SECTION
+     */
+    int target(int option);
+
+    /**
+     * @return signed health variation applied by the option
+     */
+    int delta(int option);
+
+    /**
+     * @return index of the section with the argument database id, or BookGraph.NO_SECTION
+     */
+    int sectionIndex(Integer sectionId);
+
+    Integer sectionId(int section);
+
+    String sectionText(int section);
+
+    /**
+     * @return index of the option with the argument database id, or -1
+     */
+    int optionIndex(Long optionId);
+
+    Long optionId(int option);
+
+    /**
+     * @return number of the section the option leads to (even if it doesn't exist)
+     */
+    int optionGotoNumber(int option);
+
+    String optionDescription(int option);
+
+    /**
+     * @return text of the option consequence, or null when it has no consequence
+     */
+    String consequenceText(int option);
+}
@@ -0,0 +1,214 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.simulation.MappedCompiledBook.Layout;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/*
+    directory of compiled books, one file per book, read through memory mapped buffers
+    - the book pages live on the OS page cache, not on the heap, and survive restarts
+    - files are written to a temporary file and atomically moved into place, so readers
+      never see a partial file
+    - a file that is not a valid compiled book, or not of the current book content (its content
+      hash differs from the database one: the book changed, or the ids were reused after a
+      database rebuild), is ignored (and removed), so the book is compiled again
+ */
+public final class CompiledBookStore {
+
+    private static final String EXTENSION = ".cbk";
+
+    private final Path directory;
+
+    public CompiledBookStore(Path directory) {
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Path path(Long bookId) {
+        return directory.resolve("book-" + bookId + EXTENSION);
+    }
+
+    /**
+     * maps the stored compiled book, when it's the one of the current book content
+     *
+     * @param bookId - id of the book
+     * @param contentHash - content hash of the book on the database (null = unknown, never matches)
+     * @return the mapped compiled book, or empty when it is not stored (or stale)
+     */
+    public Optional<CompiledBook> open(Long bookId, String contentHash) {
+        Optional<CompiledBook> book = map(bookId);
+        if (book.isPresent() && (contentHash == null || !contentHash.equals(book.get().contentHash()))) {
+            delete(bookId);
+            return Optional.empty();
+        }
+        return book;
+    }
+
+    private Optional<CompiledBook> map(Long bookId) {
+        Path file = path(bookId);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return Optional.of(new MappedCompiledBook(buffer));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IllegalArgumentException e) {
+            delete(bookId);
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * stores a compiled book, replacing the stored one
+     *
+     * @param book - compiled book to store
+     * @return the stored compiled book, mapped
+     */
+    public CompiledBook write(CompiledBook book) {
+        byte[] title = utf8(book.title());
+        byte[] contentHash = utf8(book.contentHash());
+        byte[][] sectionTexts = new byte[book.sectionCount()][];
+        byte[][] optionTexts = new byte[book.optionCount()][];
+        byte[][] consequenceTexts = new byte[book.optionCount()][];
+        long blobLength = length(title) + length(contentHash);
+        for (int s = 0; s < sectionTexts.length; s++) {
+            sectionTexts[s] = utf8(book.sectionText(s));
+            blobLength += length(sectionTexts[s]);
+        }
+        for (int o = 0; o < optionTexts.length; o++) {
+            optionTexts[o] = utf8(book.optionDescription(o));
+            consequenceTexts[o] = utf8(book.consequenceText(o));
+            blobLength += length(optionTexts[o]) + length(consequenceTexts[o]);
+        }
+        Layout layout = new Layout(sectionTexts.length, optionTexts.length,
+                Layout.tableCapacity(sectionTexts.length), Layout.tableCapacity(optionTexts.length),
+                (int) Math.min(blobLength, Integer.MAX_VALUE));
+        if (blobLength > Integer.MAX_VALUE || layout.size() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("book " + book.bookId() + " too large to be stored");
+
+        Path file = path(book.bookId());
+        try {
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.size());
+                write(buffer, layout, book, title, contentHash, sectionTexts, optionTexts, consequenceTexts);
+                buffer.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return map(book.bookId()).orElseThrow();
+    }
+
+    private static void write(ByteBuffer buffer, Layout layout, CompiledBook book,
+                              byte[] title, byte[] contentHash,
+                              byte[][] sectionTexts, byte[][] optionTexts, byte[][] consequenceTexts) {
+        buffer.putInt(Layout.MAGIC, MappedCompiledBook.MAGIC);
+        buffer.putInt(Layout.VERSION, MappedCompiledBook.VERSION);
+        buffer.putLong(Layout.BOOK_ID, book.bookId());
+        buffer.putInt(Layout.CONDITION, book.condition() == null ? -1 : book.condition().ordinal());
+        buffer.putInt(Layout.SECTION_COUNT, layout.sections());
+        buffer.putInt(Layout.OPTION_COUNT, layout.options());
+        buffer.putInt(Layout.BEGIN_INDEX, book.beginIndex());
+        buffer.putInt(Layout.SECTION_TABLE_CAPACITY, layout.sectionCapacity());
+        buffer.putInt(Layout.OPTION_TABLE_CAPACITY, layout.optionCapacity());
+        buffer.putInt(Layout.BLOB_LENGTH, layout.blobLength());
+
+        Blob blob = new Blob(buffer, (int) layout.blob());
+        blob.put(Layout.TITLE, title);
+        blob.put(Layout.CONTENT_HASH, contentHash);
+        int sectionMask = layout.sectionCapacity() - 1;
+        for (int s = 0; s < layout.sections(); s++) {
+            int sectionId = book.sectionId(s);
+            buffer.putInt((int) (layout.sectionNumbers() + 4L * s), book.sectionNumber(s));
+            buffer.putInt((int) (layout.sectionIds() + 4L * s), sectionId);
+            buffer.putInt((int) (layout.sectionTypes() + 4L * s), book.type(s).ordinal());
+            buffer.putInt((int) (layout.optionStart() + 4L * s), book.firstOption(s));
+            blob.put(layout.sectionTexts() + 8L * s, sectionTexts[s]);
+            int slot = Layout.slot(sectionId, sectionMask);
+            while (buffer.getInt((int) (layout.sectionValues() + 4L * slot)) != 0)
+                slot = (slot + 1) & sectionMask;
+            buffer.putInt((int) (layout.sectionKeys() + 4L * slot), sectionId);
+            buffer.putInt((int) (layout.sectionValues() + 4L * slot), s + 1);
+        }
+        buffer.putInt((int) (layout.optionStart() + 4L * layout.sections()), layout.options());
+        int optionMask = layout.optionCapacity() - 1;
+        for (int o = 0; o < layout.options(); o++) {
+            long optionId = book.optionId(o);
+            buffer.putInt((int) (layout.optionTargets() + 4L * o), book.target(o));
+            buffer.putInt((int) (layout.optionDeltas() + 4L * o), book.delta(o));
+            buffer.putInt((int) (layout.optionGotos() + 4L * o), book.optionGotoNumber(o));
+            buffer.putLong((int) (layout.optionIds() + 8L * o), optionId);
+            blob.put(layout.optionTexts() + 8L * o, optionTexts[o]);
+            blob.put(layout.consequenceTexts() + 8L * o, consequenceTexts[o]);
+            int slot = Layout.slot(optionId, optionMask);
+            while (buffer.getInt((int) (layout.optionValues() + 4L * slot)) != 0)
+                slot = (slot + 1) & optionMask;
+            buffer.putLong((int) (layout.optionKeys() + 8L * slot), optionId);
+            buffer.putInt((int) (layout.optionValues() + 4L * slot), o + 1);
+        }
+    }
+
+    /*
+        appends the texts to the blob, writing their (offset, length) reference
+     */
+    private static final class Blob {
+        private final ByteBuffer buffer;
+        private final int start;
+        private int length;
+
+        private Blob(ByteBuffer buffer, int start) {
+            this.buffer = buffer;
+            this.start = start;
+        }
+
+        private void put(long reference, byte[] text) {
+            buffer.putInt((int) reference, length);
+            if (text == null) {
+                buffer.putInt((int) reference + 4, MappedCompiledBook.NULL_TEXT);
+                return;
+            }
+            buffer.putInt((int) reference + 4, text.length);
+            buffer.put(start + length, text);
+            length += text.length;
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] text) {
+        return text == null ? 0 : text.length;
+    }
+
+    /**
+     * removes the stored compiled book, if any
+     *
+     * @param bookId - id of the book
+     */
+    public void delete(Long bookId) {
+        try {
+            Files.deleteIfExists(path(bookId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/*
+    structural diagnostics of a book sections graph, in linear time (O(sections + options))
+    - cycles: one concrete cycle (sequence of section numbers) per strongly connected
+      component holding a cycle
+    - unreachable sections: not reached from the initial section (breadth first)
+    - dead ends: sections, other than END, without options
+    - sections without end: no END section can be reached from them (breadth first
+      from the END sections over the reversed options)
+ */
+public final class GraphAnalysis {
+
+    private final BookGraph graph;
+
+    private final List<List<Integer>> cycles = new ArrayList<>();
+    private final List<Integer> unreachableSections = new ArrayList<>();
+    private final List<Integer> deadEndSections = new ArrayList<>();
+    private final List<Integer> sectionsWithoutEnd = new ArrayList<>();
+
+    public GraphAnalysis(BookGraph graph) {
+        this.graph = graph;
+    }
+
+    public static GraphAnalysis from(Book book) {
+        return new GraphAnalysis(BookGraph.from(book));
+    }
+
+    /**
+     * runs all the diagnostics
+     *
+     * @return this analysis, with the diagnostics filled
+     */
+    public GraphAnalysis run() {
+        findCycles();
+        findUnreachable();
+        findDeadEnds();
+        findSectionsWithoutEnd();
+        return this;
+    }
+
+    /**
+     * walks each cyclic component, always following an option that stays on the
+     * component, until a section repeats: the walk from that section on is a cycle
+     */
+    private void findCycles() {
+        StronglyConnectedComponents scc = StronglyConnectedComponents.of(graph);
+        int[] walkPosition = new int[graph.sectionCount()];
+        Arrays.fill(walkPosition, -1);
+        List<Integer> walk = new ArrayList<>();
+        for (int c = 0; c < scc.componentCount(); c++) {
+            if (!scc.isCyclic(c))
+                continue;
+            walk.clear();
+            int section = scc.member(c, 0);
+            while (walkPosition[section] == -1) {
+                walkPosition[section] = walk.size();
+                walk.add(section);
+                section = nextOnComponent(scc, c, section);
+            }
+            List<Integer> cycle = new ArrayList<>(walk.size() - walkPosition[section]);
+            for (int i = walkPosition[section]; i < walk.size(); i++)
+                cycle.add(graph.sectionNumber(walk.get(i)));
+            cycles.add(cycle);
+        }
+    }
+
+    private int nextOnComponent(StronglyConnectedComponents scc, int component, int section) {
+        for (int o = graph.firstOption(section); o < graph.endOption(section); o++) {
+            int target = graph.target(o);
+            if (target != BookGraph.NO_SECTION && scc.component(target) == component)
+                return target;
+        }
+        throw new IllegalStateException("section " + graph.sectionNumber(section) + " leaves its cycle");
+    }
+
+    private void findUnreachable() {
+        BitSet reached = new BitSet(graph.sectionCount());
+        int begin = graph.beginIndex();
+        if (begin != BookGraph.NO_SECTION) {
+            int[] queue = new int[graph.sectionCount()];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = begin;
+            reached.set(begin);
+            while (head < tail) {
+                int section = queue[head++];
+                for (int o = graph.firstOption(section); o < graph.endOption(section); o++) {
+                    int target = graph.target(o);
+                    if (target != BookGraph.NO_SECTION && !reached.get(target)) {
+                        reached.set(target);
+                        queue[tail++] = target;
+                    }
+                }
+            }
+        }
+        for (int s = reached.nextClearBit(0); s < graph.sectionCount(); s = reached.nextClearBit(s + 1))
+            unreachableSections.add(graph.sectionNumber(s));
+    }
+
+    private void findDeadEnds() {
+        for (int s = 0; s < graph.sectionCount(); s++) {
+            if (!graph.isEnd(s) && graph.firstOption(s) == graph.endOption(s))
+                deadEndSections.add(graph.sectionNumber(s));
+        }
+    }
+
+    private void findSectionsWithoutEnd() {
+        int numSections = graph.sectionCount();
+        // reversed options, as adjacency arrays: sources of the options reaching each section
+        int[] reverseStart = new int[numSections + 1];
+        for (int o = 0; o < graph.optionCount(); o++) {
+            int target = graph.target(o);
+            if (target != BookGraph.NO_SECTION)
+                reverseStart[target + 1]++;
+        }
+        for (int s = 0; s < numSections; s++)
+            reverseStart[s + 1] += reverseStart[s];
+        int[] reverseSource = new int[reverseStart[numSections]];
+        int[] next = Arrays.copyOf(reverseStart, numSections);
+        for (int s = 0; s < numSections; s++) {
+            for (int o = graph.firstOption(s); o < graph.endOption(s); o++) {
+                int target = graph.target(o);
+                if (target != BookGraph.NO_SECTION)
+                    reverseSource[next[target]++] = s;
+            }
+        }
+
+        BitSet reachesEnd = new BitSet(numSections);
+        int[] queue = new int[numSections];
+        int head = 0;
+        int tail = 0;
+        for (int s = 0; s < numSections; s++) {
+            if (graph.isEnd(s)) {
+                reachesEnd.set(s);
+                queue[tail++] = s;
+            }
+        }
+        while (head < tail) {
+            int section = queue[head++];
+            for (int r = reverseStart[section]; r < reverseStart[section + 1]; r++) {
+                int source = reverseSource[r];
+                if (!reachesEnd.get(source)) {
+                    reachesEnd.set(source);
+                    queue[tail++] = source;
+                }
+            }
+        }
+        for (int s = reachesEnd.nextClearBit(0); s < numSections; s = reachesEnd.nextClearBit(s + 1))
+            sectionsWithoutEnd.add(graph.sectionNumber(s));
+    }
+
+    /**
+     * @return one cycle (section numbers, in the options order) per group of sections in a loop
+     */
+    public List<List<Integer>> cycles() {
+        return cycles;
+    }
+
+    /**
+     * @return numbers of the sections not reachable from the initial section
+     */
+    public List<Integer> unreachableSections() {
+        return unreachableSections;
+    }
+
+    /**
+     * @return numbers of the sections, other than END, without options
+     */
+    public List<Integer> deadEndSections() {
+        return deadEndSections;
+    }
+
+    /**
+     * @return numbers of the sections from which no END section can be reached
+     */
+    public List<Integer> sectionsWithoutEnd() {
+        return sectionsWithoutEnd;
+    }
+
+    public int sectionCount() {
+        return graph.sectionCount();
+    }
+
+    public int optionCount() {
+        return graph.optionCount();
+    }
+}
@@ -0,0 +1,183 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Game;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/*
+    explores the game states (section, health) reachable from the initial section of a given book
+    - applies the same rules as the GameService: an END section succeeds, otherwise
+      a health of zero or less fails
+    - health is bounded by a cap, so the number of states is bounded by sections x cap
+    - each state is explored once (memoized on a primitive hash set of packed keys)
+    - the states graph is condensed into its strongly connected components to count
+      the paths: a path entering a states cycle is counted once as a loop path
+ */
+public final class HealthExplorer {
+
+    private static final int SUCCESS = -2;
+    private static final int FAILURE = -3;
+
+    private final BookGraph graph;
+    private final int healthCap;
+
+    private int numberOfStates;
+    private BigInteger successfulPaths = BigInteger.ZERO;
+    private BigInteger failedPaths = BigInteger.ZERO;
+    private BigInteger loopPaths = BigInteger.ZERO;
+
+    public HealthExplorer(BookGraph graph, int healthCap) {
+        if (healthCap < 1)
+            throw new IllegalArgumentException("health cap must be positive: " + healthCap);
+        this.graph = graph;
+        this.healthCap = healthCap;
+    }
+
+    public static HealthExplorer from(Book book, int healthCap) {
+        return new HealthExplorer(BookGraph.from(book), healthCap);
+    }
+
+    /**
+     * packs a state into a long key
+     */
+    static long stateKey(int section, int health) {
+        return ((long) section << 32) | health;
+    }
+
+    /**
+     * explores all the reachable states (breadth first), storing the transitions
+     * between states as adjacency arrays, and counts the paths from the initial state
+     *
+     * @return this explorer, with the path counters filled
+     */
+    public HealthExplorer run() {
+        int begin = graph.beginIndex();
+        if (begin == BookGraph.NO_SECTION)
+            return this;
+        LongHashSet states = new LongHashSet(graph.sectionCount());
+        int[] stateSection = new int[Math.max(16, graph.sectionCount())];
+        int[] stateHealth = new int[stateSection.length];
+        int[] edgeStart = new int[stateSection.length + 1];
+        int[] edgeTarget = new int[Math.max(16, graph.optionCount())];
+        int numEdges = 0;
+
+        int initialHealth = Math.min(Game.INITIAL_HEALTH, healthCap);
+        states.add(stateKey(begin, initialHealth));
+        stateSection[0] = begin;
+        stateHealth[0] = initialHealth;
+        for (int state = 0; state < states.size(); state++) {
+            int section = stateSection[state];
+            edgeStart[state] = numEdges;
+            for (int o = graph.firstOption(section); o < graph.endOption(section); o++) {
+                int target = graph.target(o);
+                int health = stateHealth[state] + graph.delta(o);
+                int next;
+                if (target == BookGraph.NO_SECTION)
+                    next = FAILURE;
+                else if (graph.isEnd(target))
+                    next = SUCCESS;
+                else if (health <= 0)
+                    next = FAILURE;
+                else {
+                    health = Math.min(health, healthCap);
+                    int size = states.size();
+                    next = states.add(stateKey(target, health));
+                    if (next == size) {
+                        if (size == stateSection.length) {
+                            stateSection = Arrays.copyOf(stateSection, size * 2);
+                            stateHealth = Arrays.copyOf(stateHealth, size * 2);
+                            edgeStart = Arrays.copyOf(edgeStart, size * 2 + 1);
+                        }
+                        stateSection[next] = target;
+                        stateHealth[next] = health;
+                    }
+                }
+                if (numEdges == edgeTarget.length)
+                    edgeTarget = Arrays.copyOf(edgeTarget, numEdges * 2);
+                edgeTarget[numEdges++] = next;
+            }
+        }
+        numberOfStates = states.size();
+        edgeStart[numberOfStates] = numEdges;
+        countPaths(edgeStart, edgeTarget);
+        return this;
+    }
+
+    /**
+     * counts the paths departing from each states component, visiting the
+     * successor components first. The initial state is state 0.
+     */
+    private void countPaths(int[] edgeStart, int[] edgeTarget) {
+        StronglyConnectedComponents scc =
+                StronglyConnectedComponents.compute(numberOfStates, edgeStart, edgeTarget);
+        int numComponents = scc.componentCount();
+        BigInteger[] success = new BigInteger[numComponents];
+        BigInteger[] failure = new BigInteger[numComponents];
+        BigInteger[] loops = new BigInteger[numComponents];
+        for (int c = 0; c < numComponents; c++) {
+            BigInteger s = BigInteger.ZERO;
+            BigInteger f = BigInteger.ZERO;
+            BigInteger l = scc.isCyclic(c) ? BigInteger.ONE : BigInteger.ZERO;
+            for (int m = 0; m < scc.componentSize(c); m++) {
+                int state = scc.member(c, m);
+                for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                    int next = edgeTarget[e];
+                    if (next == SUCCESS) {
+                        s = s.add(BigInteger.ONE);
+                        continue;
+                    }
+                    if (next == FAILURE) {
+                        f = f.add(BigInteger.ONE);
+                        continue;
+                    }
+                    int nc = scc.component(next);
+                    if (nc == c)
+                        continue;
+                    s = s.add(success[nc]);
+                    f = f.add(failure[nc]);
+                    l = l.add(loops[nc]);
+                }
+            }
+            success[c] = s;
+            failure[c] = f;
+            loops[c] = l;
+        }
+        int start = scc.component(0);
+        successfulPaths = success[start];
+        failedPaths = failure[start];
+        loopPaths = loops[start];
+    }
+
+    /**
+     * @return number of distinct (section, health) states reached
+     */
+    public int numberOfStates() {
+        return numberOfStates;
+    }
+
+    /**
+     * returns the number of successful paths
+     * @return number of paths
+     */
+    public BigInteger numberOfSuccessfulPaths() {
+        return successfulPaths;
+    }
+
+    /**
+     * returns the number of paths that end in FAILURE
+     * @return number of paths
+     */
+    public BigInteger numberOfFailedPaths() {
+        return failedPaths;
+    }
+
+    /**
+     * returns the number of paths entering a loop
+     * @return number of paths
+     */
+    public BigInteger numberOfLoopPaths() {
+        return loopPaths;
+    }
+}
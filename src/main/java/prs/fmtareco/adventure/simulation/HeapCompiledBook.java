@@ -0,0 +1,198 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Consequence;
+import prs.fmtareco.adventure.model.Option;
+import prs.fmtareco.adventure.model.Section;
+
+import java.util.List;
+
+/*
+    compiled book kept on the heap
+    - the sections graph (types, option targets, consequence deltas) is the BookGraph
+    - sections and options are mapped from their database ids by primitive hash sets
+    - texts (sections, option descriptions, consequences) are kept flattened, by index
+ */
+final class HeapCompiledBook implements CompiledBook {
+
+    private final Long bookId;
+    private final String title;
+    private final Book.Condition condition;
+    private final String contentHash;
+    private final BookGraph graph;
+    private final int[] sectionIds;
+    private final long[] optionIds;
+    private final int[] optionGotoNumbers;
+    private final LongHashSet sectionIndexes;
+    private final LongHashSet optionIndexes;
+    private final String[] sectionTexts;
+    private final String[] optionDescriptions;
+    private final String[] consequenceTexts;
+    private final long weight;
+
+    HeapCompiledBook(Book book, BookGraph graph) {
+        this.bookId = book.getId();
+        this.title = book.getTitle();
+        this.condition = book.getCondition();
+        this.contentHash = book.getContentHash();
+        this.graph = graph;
+
+        List<Section> sections = book.getSections();
+        int numOptions = graph.optionCount();
+        this.sectionIds = new int[sections.size()];
+        this.sectionTexts = new String[sections.size()];
+        this.sectionIndexes = new LongHashSet(sections.size());
+        this.optionIds = new long[numOptions];
+        this.optionGotoNumbers = new int[numOptions];
+        this.optionDescriptions = new String[numOptions];
+        this.consequenceTexts = new String[numOptions];
+        this.optionIndexes = new LongHashSet(numOptions);
+        long textChars = 0;
+        int o = 0;
+        for (int s = 0; s < sections.size(); s++) {
+            Section section = sections.get(s);
+            sectionIds[s] = requireId(section.getId(), section);
+            sectionIndexes.add(sectionIds[s]);
+            sectionTexts[s] = section.getText();
+            textChars += length(sectionTexts[s]);
+            for (Option option : section.getOptions()) {
+                optionIds[o] = requireId(option.getId(), section);
+                optionIndexes.add(optionIds[o]);
+                optionGotoNumbers[o] = option.getGotoSectionNumber();
+                optionDescriptions[o] = option.getDescription();
+                Consequence csq = option.getConsequence();
+                consequenceTexts[o] = csq == null ? null : csq.getText();
+                textChars += length(optionDescriptions[o]) + length(consequenceTexts[o]);
+                o++;
+            }
+        }
+        // texts (2 bytes per char, at most) + per section / per option arrays and hash tables
+        this.weight = 256 + 2 * textChars + 64L * sections.size() + 96L * numOptions;
+    }
+
+    private static <T extends Number> T requireId(T id, Section section) {
+        if (id == null)
+            throw new IllegalArgumentException(
+                    "section " + section.getSectionNumber() + " (or its options) not persisted");
+        return id;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    @Override
+    public Long bookId() {
+        return bookId;
+    }
+
+    @Override
+    public String title() {
+        return title;
+    }
+
+    @Override
+    public Book.Condition condition() {
+        return condition;
+    }
+
+    @Override
+    public String contentHash() {
+        return contentHash;
+    }
+
+    @Override
+    public BookGraph graph() {
+        return graph;
+    }
+
+    @Override
+    public long weight() {
+        return weight;
+    }
+
+    @Override
+    public int sectionCount() {
+        return graph.sectionCount();
+    }
+
+    @Override
+    public int optionCount() {
+        return graph.optionCount();
+    }
+
+    @Override
+    public int beginIndex() {
+        return graph.beginIndex();
+    }
+
+    @Override
+    public int sectionNumber(int section) {
+        return graph.sectionNumber(section);
+    }
+
+    @Override
+    public Section.Type type(int section) {
+        return graph.type(section);
+    }
+
+    @Override
+    public int firstOption(int section) {
+        return graph.firstOption(section);
+    }
+
+    @Override
+    public int endOption(int section) {
+        return graph.endOption(section);
+    }
+
+    @Override
+    public int target(int option) {
+        return graph.target(option);
+    }
+
+    @Override
+    public int delta(int option) {
+        return graph.delta(option);
+    }
+
+    @Override
+    public int sectionIndex(Integer sectionId) {
+        return sectionId == null ? BookGraph.NO_SECTION : sectionIndexes.indexOf(sectionId);
+    }
+
+    @Override
+    public Integer sectionId(int section) {
+        return sectionIds[section];
+    }
+
+    @Override
+    public String sectionText(int section) {
+        return sectionTexts[section];
+    }
+
+    @Override
+    public int optionIndex(Long optionId) {
+        return optionId == null ? -1 : optionIndexes.indexOf(optionId);
+    }
+
+    @Override
+    public Long optionId(int option) {
+        return optionIds[option];
+    }
+
+    @Override
+    public int optionGotoNumber(int option) {
+        return optionGotoNumbers[option];
+    }
+
+    @Override
+    public String optionDescription(int option) {
+        return optionDescriptions[option];
+    }
+
+    @Override
+    public String consequenceText(int option) {
+        return consequenceTexts[option];
+    }
+}
@@ -0,0 +1,91 @@
+package prs.fmtareco.adventure.simulation;
+
+import java.util.Arrays;
+
+/*
+    open addressing (linear probing) hash set of primitive long keys
+    - each added key gets a dense ordinal (0, 1, 2, ...) following the insertion order
+    - no boxing and no allocation per key, besides the table growth
+ */
+public final class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] ordinals;
+    private int mask;
+    private int size;
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        ordinals = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * adds the key to the set (Long.MIN_VALUE is reserved)
+     *
+     * @param key - key to add
+     * @return the key ordinal, if already present, or the new ordinal (equal to the previous size)
+     */
+    public int add(long key) {
+        int s = slot(key, mask);
+        while (keys[s] != EMPTY) {
+            if (keys[s] == key)
+                return ordinals[s];
+            s = (s + 1) & mask;
+        }
+        keys[s] = key;
+        ordinals[s] = size;
+        if (++size * 2 > keys.length)
+            grow();
+        return size - 1;
+    }
+
+    /**
+     * @return the key ordinal, or -1 if the key is not on the set
+     */
+    public int indexOf(long key) {
+        int s = slot(key, mask);
+        while (keys[s] != EMPTY) {
+            if (keys[s] == key)
+                return ordinals[s];
+            s = (s + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean contains(long key) {
+        return indexOf(key) != -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldOrdinals = ordinals;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY)
+                continue;
+            int s = slot(oldKeys[i], mask);
+            while (keys[s] != EMPTY)
+                s = (s + 1) & mask;
+            keys[s] = oldKeys[i];
+            ordinals[s] = oldOrdinals[i];
+        }
+    }
+}
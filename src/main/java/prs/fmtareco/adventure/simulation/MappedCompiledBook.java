@@ -0,0 +1,277 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Section;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+    compiled book read from a (memory mapped) buffer, with the CompiledBookStore file layout
+    - every accessor reads the buffer directly (absolute reads): nothing but the texts
+      asked for is allocated, and the heap doesn't grow with the book size
+    - the section and option ids are mapped to their indexes by open addressing
+      tables stored on the buffer
+ */
+final class MappedCompiledBook implements CompiledBook {
+
+    static final int MAGIC = 0x41445642; // "ADVB"
+    static final int VERSION = 2; // 2: consequences without a positive value have no health delta
+    static final int NULL_TEXT = -1;
+
+    private static final Section.Type[] TYPES = Section.Type.values();
+    private static final Book.Condition[] CONDITIONS = Book.Condition.values();
+
+    private final ByteBuffer buffer;
+    private final Layout layout;
+    private final Long bookId;
+    private final int beginIndex;
+
+    MappedCompiledBook(ByteBuffer buffer) {
+        if (buffer.getInt(Layout.MAGIC) != MAGIC || buffer.getInt(Layout.VERSION) != VERSION)
+            throw new IllegalArgumentException("not a compiled book (or unsupported version)");
+        this.buffer = buffer;
+        this.layout = new Layout(
+                buffer.getInt(Layout.SECTION_COUNT),
+                buffer.getInt(Layout.OPTION_COUNT),
+                buffer.getInt(Layout.SECTION_TABLE_CAPACITY),
+                buffer.getInt(Layout.OPTION_TABLE_CAPACITY),
+                buffer.getInt(Layout.BLOB_LENGTH));
+        if (layout.size() > buffer.capacity())
+            throw new IllegalArgumentException("truncated compiled book");
+        this.bookId = buffer.getLong(Layout.BOOK_ID);
+        this.beginIndex = buffer.getInt(Layout.BEGIN_INDEX);
+    }
+
+    /*
+        byte offsets of the header fields and of the tables on a compiled book file
+        (text references are offset + length on the UTF-8 blob, NULL_TEXT length for null)
+     */
+    record Layout(int sections, int options, int sectionCapacity, int optionCapacity, int blobLength) {
+
+        static final int MAGIC = 0;
+        static final int VERSION = 4;
+        static final int BOOK_ID = 8;
+        static final int CONDITION = 16;
+        static final int SECTION_COUNT = 20;
+        static final int OPTION_COUNT = 24;
+        static final int BEGIN_INDEX = 28;
+        static final int SECTION_TABLE_CAPACITY = 32;
+        static final int OPTION_TABLE_CAPACITY = 36;
+        static final int TITLE = 40;
+        static final int CONTENT_HASH = 48;
+        static final int BLOB_LENGTH = 56;
+        static final int HEADER_SIZE = 64;
+
+        long sectionNumbers()   { return HEADER_SIZE; }
+        long sectionIds()       { return sectionNumbers() + 4L * sections; }
+        long sectionTypes()     { return sectionIds() + 4L * sections; }
+        long optionStart()      { return sectionTypes() + 4L * sections; }
+        long sectionTexts()     { return optionStart() + 4L * (sections + 1); }
+        long optionTargets()    { return sectionTexts() + 8L * sections; }
+        long optionDeltas()     { return optionTargets() + 4L * options; }
+        long optionGotos()      { return optionDeltas() + 4L * options; }
+        long optionTexts()      { return optionGotos() + 4L * options; }
+        long consequenceTexts() { return optionTexts() + 8L * options; }
+        long optionIds()        { return align8(consequenceTexts() + 8L * options); }
+        long sectionKeys()      { return optionIds() + 8L * options; }
+        long sectionValues()    { return sectionKeys() + 4L * sectionCapacity; }
+        long optionKeys()       { return align8(sectionValues() + 4L * sectionCapacity); }
+        long optionValues()     { return optionKeys() + 8L * optionCapacity; }
+        long blob()             { return optionValues() + 4L * optionCapacity; }
+        long size()             { return blob() + blobLength; }
+
+        private static long align8(long offset) {
+            return (offset + 7) & ~7L;
+        }
+
+        /**
+         * @return power of 2 capacity of an open addressing table, at most half full
+         */
+        static int tableCapacity(int size) {
+            return Integer.highestOneBit(Math.max(4, size) * 2 - 1) << 1;
+        }
+
+        static int slot(int key, int mask) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+
+    private int intAt(long offset) {
+        return buffer.getInt((int) offset);
+    }
+
+    private String text(long reference) {
+        int length = intAt(reference + 4);
+        if (length == NULL_TEXT)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get((int) (layout.blob() + intAt(reference)), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Long bookId() {
+        return bookId;
+    }
+
+    @Override
+    public String title() {
+        return text(Layout.TITLE);
+    }
+
+    @Override
+    public Book.Condition condition() {
+        int ordinal = buffer.getInt(Layout.CONDITION);
+        return ordinal < 0 ? null : CONDITIONS[ordinal];
+    }
+
+    @Override
+    public String contentHash() {
+        return text(Layout.CONTENT_HASH);
+    }
+
+    /**
+     * copies the sections graph arrays from the buffer (the texts are not read)
+     */
+    @Override
+    public BookGraph graph() {
+        int numSections = layout.sections();
+        int numOptions = layout.options();
+        int[] sectionNumbers = new int[numSections];
+        Section.Type[] types = new Section.Type[numSections];
+        int[] optionStart = new int[numSections + 1];
+        int[] optionTarget = new int[numOptions];
+        int[] optionDelta = new int[numOptions];
+        for (int s = 0; s < numSections; s++) {
+            sectionNumbers[s] = sectionNumber(s);
+            types[s] = type(s);
+            optionStart[s] = firstOption(s);
+        }
+        optionStart[numSections] = numOptions;
+        for (int o = 0; o < numOptions; o++) {
+            optionTarget[o] = target(o);
+            optionDelta[o] = delta(o);
+        }
+        return new BookGraph(sectionNumbers, types, beginIndex, optionStart, optionTarget, optionDelta);
+    }
+
+    /**
+     * the mapped pages are not on the heap, only this view
+     */
+    @Override
+    public long weight() {
+        return 256;
+    }
+
+    @Override
+    public int sectionCount() {
+        return layout.sections();
+    }
+
+    @Override
+    public int optionCount() {
+        return layout.options();
+    }
+
+    @Override
+    public int beginIndex() {
+        return beginIndex;
+    }
+
+    @Override
+    public int sectionNumber(int section) {
+        return intAt(layout.sectionNumbers() + 4L * section);
+    }
+
+    @Override
+    public Section.Type type(int section) {
+        return TYPES[intAt(layout.sectionTypes() + 4L * section)];
+    }
+
+    @Override
+    public int firstOption(int section) {
+        return intAt(layout.optionStart() + 4L * section);
+    }
+
+    @Override
+    public int endOption(int section) {
+        return intAt(layout.optionStart() + 4L * (section + 1));
+    }
+
+    @Override
+    public int target(int option) {
+        return intAt(layout.optionTargets() + 4L * option);
+    }
+
+    @Override
+    public int delta(int option) {
+        return intAt(layout.optionDeltas() + 4L * option);
+    }
+
+    @Override
+    public int sectionIndex(Integer sectionId) {
+        if (sectionId == null)
+            return BookGraph.NO_SECTION;
+        int mask = layout.sectionCapacity() - 1;
+        int s = Layout.slot(sectionId, mask);
+        int value;
+        while ((value = intAt(layout.sectionValues() + 4L * s)) != 0) {
+            if (intAt(layout.sectionKeys() + 4L * s) == sectionId)
+                return value - 1;
+            s = (s + 1) & mask;
+        }
+        return BookGraph.NO_SECTION;
+    }
+
+    @Override
+    public Integer sectionId(int section) {
+        return intAt(layout.sectionIds() + 4L * section);
+    }
+
+    @Override
+    public String sectionText(int section) {
+        return text(layout.sectionTexts() + 8L * section);
+    }
+
+    @Override
+    public int optionIndex(Long optionId) {
+        if (optionId == null)
+            return -1;
+        int mask = layout.optionCapacity() - 1;
+        int s = Layout.slot(optionId, mask);
+        int value;
+        while ((value = intAt(layout.optionValues() + 4L * s)) != 0) {
+            if (buffer.getLong((int) (layout.optionKeys() + 8L * s)) == optionId)
+                return value - 1;
+            s = (s + 1) & mask;
+        }
+        return -1;
+    }
+
+    @Override
+    public Long optionId(int option) {
+        return buffer.getLong((int) (layout.optionIds() + 8L * option));
+    }
+
+    @Override
+    public int optionGotoNumber(int option) {
+        return intAt(layout.optionGotos() + 4L * option);
+    }
+
+    @Override
+    public String optionDescription(int option) {
+        return text(layout.optionTexts() + 8L * option);
+    }
+
+    @Override
+    public String consequenceText(int option) {
+        return text(layout.consequenceTexts() + 8L * option);
+    }
+}
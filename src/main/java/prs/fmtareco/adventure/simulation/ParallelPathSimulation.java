@@ -0,0 +1,262 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    enumerates, in parallel, every path departing from the initial section of a given book
+    - a path never repeats a section: an option leading to a section on the path
+      (the initial one included) is a loop
+    - applies the rules of PathSimulation, in the same order: a loop, then a negative
+      health (or an unknown section) fails, then an END section succeeds
+    - the exploration is split into fork/join tasks at the branch points closer to the
+      initial section, deeper sections are walked sequentially by each task
+    - each task keeps its own counters, which are added up when the tasks are joined
+    - the number of paths grows exponentially with the branches that rejoin, so the run is
+      bounded by a number of paths and a deadline: the tasks add their counts to a shared
+      total every CHECK_INTERVAL steps, and all stop once either is exceeded (the counters
+      then hold the paths enumerated so far, at most maxPaths plus CHECK_INTERVAL per task)
+ */
+public final class ParallelPathSimulation {
+
+    /**
+     * tasks are only split while the worker has few queued tasks, to be stolen
+     */
+    private static final int MAX_SURPLUS_TASKS = 3;
+
+    /**
+     * number of options applied by a task between checks of the budget
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final BookGraph graph;
+    private final int splitDepth;
+
+    private final AtomicLong pathsCounted = new AtomicLong();
+    private volatile boolean budgetExhausted;
+    private long maxPaths;
+    private long budgetNanos;
+    private long startNanos;
+
+    private long successfulPaths;
+    private long failedPaths;
+    private long loopPaths;
+
+    public ParallelPathSimulation(BookGraph graph, int splitDepth) {
+        this.graph = graph;
+        this.splitDepth = splitDepth;
+    }
+
+    public static ParallelPathSimulation from(Book book, int splitDepth) {
+        return new ParallelPathSimulation(BookGraph.from(book), splitDepth);
+    }
+
+    /**
+     * enumerates the paths on the argument pool, until all are counted or the budget is exhausted
+     *
+     * @param pool - fork/join pool running the tasks
+     * @param maxPaths - number of paths after which the enumeration stops
+     * @param budgetNanos - duration after which the enumeration stops
+     * @return this simulation, with the path counters filled
+     */
+    public ParallelPathSimulation run(ForkJoinPool pool, long maxPaths, long budgetNanos) {
+        this.maxPaths = maxPaths;
+        this.budgetNanos = budgetNanos;
+        this.startNanos = System.nanoTime();
+        pathsCounted.set(0);
+        budgetExhausted = false;
+        int begin = graph.beginIndex();
+        if (begin == BookGraph.NO_SECTION)
+            return this;
+        BitSet onPath = new BitSet(graph.sectionCount());
+        onPath.set(begin);
+        Totals totals = pool.invoke(new PathTask(begin, Game.INITIAL_HEALTH, onPath, 0));
+        successfulPaths = totals.success;
+        failedPaths = totals.failure;
+        loopPaths = totals.loops;
+        return this;
+    }
+
+    /**
+     * applies an option, counting the path outcome when the option ends the path
+     *
+     * @return the section where the path continues, or NO_SECTION if it ended
+     */
+    private int applyOption(int option, int health, BitSet onPath, Totals totals) {
+        int target = graph.target(option);
+        if (target != BookGraph.NO_SECTION && onPath.get(target)) {
+            totals.loops++;
+            return BookGraph.NO_SECTION;
+        }
+        if (health < 0 || target == BookGraph.NO_SECTION) {
+            totals.failure++;
+            return BookGraph.NO_SECTION;
+        }
+        if (graph.isEnd(target)) {
+            totals.success++;
+            return BookGraph.NO_SECTION;
+        }
+        return target;
+    }
+
+    /**
+     * adds the paths counted by a task since its last check to the shared total
+     *
+     * @return true if the enumeration must stop (by this or another task)
+     */
+    private boolean checkBudget(Totals totals) {
+        if (budgetExhausted)
+            return true;
+        long counted = totals.success + totals.failure + totals.loops;
+        long total = pathsCounted.addAndGet(counted - totals.reported);
+        totals.reported = counted;
+        if (total >= maxPaths || System.nanoTime() - startNanos >= budgetNanos)
+            budgetExhausted = true;
+        return budgetExhausted;
+    }
+
+    /*
+        path counters of a task (and of its subtasks, after being joined)
+     */
+    private static final class Totals {
+        private long success;
+        private long failure;
+        private long loops;
+        private long reported;
+
+        private void add(Totals other) {
+            success += other.success;
+            failure += other.failure;
+            loops += other.loops;
+        }
+    }
+
+    /*
+        enumerates the paths departing from a section, reached with a given health,
+        where onPath holds the sections of the path until that section (owned by the task)
+     */
+    private final class PathTask extends RecursiveTask<Totals> {
+
+        private final int section;
+        private final int health;
+        private final BitSet onPath;
+        private final int depth;
+
+        private PathTask(int section, int health, BitSet onPath, int depth) {
+            this.section = section;
+            this.health = health;
+            this.onPath = onPath;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Totals compute() {
+            Totals totals = new Totals();
+            if (checkBudget(totals))
+                return totals;
+            if (depth >= splitDepth || getSurplusQueuedTaskCount() > MAX_SURPLUS_TASKS) {
+                walk(totals);
+                return totals;
+            }
+            List<PathTask> subtasks = new ArrayList<>();
+            for (int o = graph.firstOption(section); o < graph.endOption(section); o++) {
+                int nextHealth = health + graph.delta(o);
+                int next = applyOption(o, nextHealth, onPath, totals);
+                if (next == BookGraph.NO_SECTION)
+                    continue;
+                BitSet path = (BitSet) onPath.clone();
+                path.set(next);
+                subtasks.add(new PathTask(next, nextHealth, path, depth + 1));
+            }
+            invokeAll(subtasks);
+            for (PathTask subtask : subtasks)
+                totals.add(subtask.join());
+            return totals;
+        }
+
+        /**
+         * walks sequentially (depth first, explicit stack) all the paths departing from the task section
+         */
+        private void walk(Totals totals) {
+            int capacity = Math.min(graph.sectionCount(), 64);
+            int[] stackSection = new int[capacity];
+            int[] stackHealth = new int[capacity];
+            int[] stackOption = new int[capacity];
+            stackSection[0] = section;
+            stackHealth[0] = health;
+            stackOption[0] = graph.firstOption(section);
+            int stackDepth = 1;
+            int steps = 0;
+            while (stackDepth > 0) {
+                if (++steps == CHECK_INTERVAL) {
+                    steps = 0;
+                    if (checkBudget(totals))
+                        return;
+                }
+                int top = stackDepth - 1;
+                int current = stackSection[top];
+                int option = stackOption[top];
+                if (option == graph.endOption(current)) {
+                    if (top > 0)
+                        onPath.clear(current);
+                    stackDepth--;
+                    continue;
+                }
+                stackOption[top] = option + 1;
+                int nextHealth = stackHealth[top] + graph.delta(option);
+                int next = applyOption(option, nextHealth, onPath, totals);
+                if (next == BookGraph.NO_SECTION)
+                    continue;
+                if (stackDepth == stackSection.length) {
+                    stackSection = Arrays.copyOf(stackSection, stackDepth * 2);
+                    stackHealth = Arrays.copyOf(stackHealth, stackDepth * 2);
+                    stackOption = Arrays.copyOf(stackOption, stackDepth * 2);
+                }
+                onPath.set(next);
+                stackSection[stackDepth] = next;
+                stackHealth[stackDepth] = nextHealth;
+                stackOption[stackDepth] = graph.firstOption(next);
+                stackDepth++;
+            }
+        }
+    }
+
+    /**
+     * @return true if the last run stopped before enumerating all the paths
+     */
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    /**
+     * returns the number of successful paths
+     * @return number of paths
+     */
+    public long numberOfSuccessfulPaths() {
+        return successfulPaths;
+    }
+
+    /**
+     * returns the number of paths that end in FAILURE
+     * @return number of paths
+     */
+    public long numberOfFailedPaths() {
+        return failedPaths;
+    }
+
+    /**
+     * returns the number of paths entering a loop
+     * @return number of paths
+     */
+    public long numberOfLoopPaths() {
+        return loopPaths;
+    }
+}
@@ -0,0 +1,104 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+
+import java.math.BigInteger;
+
+/*
+    counts the paths departing from the initial section of a given book, without walking them
+    - the sections graph is condensed into its strongly connected components
+    - counts are memoized per component, following the components topological order
+    - a path entering a cycle is counted once as a loop path, and keeps being counted
+      on the paths leaving the cycle
+    - consequences are not applied: counts are structural (health is ignored)
+ */
+public final class PathCounter {
+
+    private final BookGraph graph;
+
+    private BigInteger successfulPaths = BigInteger.ZERO;
+    private BigInteger failedPaths = BigInteger.ZERO;
+    private BigInteger loopPaths = BigInteger.ZERO;
+
+    public PathCounter(BookGraph graph) {
+        this.graph = graph;
+    }
+
+    public static PathCounter from(Book book) {
+        return new PathCounter(BookGraph.from(book));
+    }
+
+    /**
+     * counts the successful, failed and loop paths departing from each component,
+     * visiting the successor components first
+     *
+     * @return this counter, with the path counters filled
+     */
+    public PathCounter run() {
+        int begin = graph.beginIndex();
+        if (begin == BookGraph.NO_SECTION)
+            return this;
+        StronglyConnectedComponents scc = StronglyConnectedComponents.of(graph);
+        int numComponents = scc.componentCount();
+        BigInteger[] success = new BigInteger[numComponents];
+        BigInteger[] failure = new BigInteger[numComponents];
+        BigInteger[] loops = new BigInteger[numComponents];
+        for (int c = 0; c < numComponents; c++) {
+            BigInteger s = BigInteger.ZERO;
+            BigInteger f = BigInteger.ZERO;
+            BigInteger l = scc.isCyclic(c) ? BigInteger.ONE : BigInteger.ZERO;
+            for (int m = 0; m < scc.componentSize(c); m++) {
+                int section = scc.member(c, m);
+                if (graph.isEnd(section)) {
+                    s = s.add(BigInteger.ONE);
+                    continue;
+                }
+                for (int o = graph.firstOption(section); o < graph.endOption(section); o++) {
+                    int target = graph.target(o);
+                    if (target == BookGraph.NO_SECTION) {
+                        f = f.add(BigInteger.ONE);
+                        continue;
+                    }
+                    int tc = scc.component(target);
+                    if (tc == c)
+                        continue;
+                    s = s.add(success[tc]);
+                    f = f.add(failure[tc]);
+                    l = l.add(loops[tc]);
+                }
+            }
+            success[c] = s;
+            failure[c] = f;
+            loops[c] = l;
+        }
+        int start = scc.component(begin);
+        successfulPaths = success[start];
+        failedPaths = failure[start];
+        loopPaths = loops[start];
+        return this;
+    }
+
+    /**
+     * returns the number of successful paths
+     * @return number of paths
+     */
+    public BigInteger numberOfSuccessfulPaths() {
+        return successfulPaths;
+    }
+
+    /**
+     * returns the number of paths that end in FAILURE
+     * @return number of paths
+     */
+    public BigInteger numberOfFailedPaths() {
+        return failedPaths;
+    }
+
+    /**
+     * returns the number of paths entering a loop
+     * @return number of paths
+     */
+    public BigInteger numberOfLoopPaths() {
+        return loopPaths;
+    }
+}
@@ -0,0 +1,144 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Game;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+    estimates the outcomes of a given book by playing random games (Monte Carlo sampling)
+    - on each section one of the options is chosen at random (uniformly)
+    - applies the same rules as the GameService: an END section succeeds, otherwise
+      a health of zero or less fails
+    - a game returning to a section it already went through is counted as a loop,
+      and a game stuck on a section without options as a failure
+    - deterministic for a given seed, and nothing is allocated per game or per move
+ */
+public final class PathSampler {
+
+    /**
+     * number of games played between checks of the time budget
+     */
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    private final BookGraph graph;
+    private final long seed;
+
+    private long samples;
+    private long successfulPaths;
+    private long failedPaths;
+    private long loopPaths;
+    private boolean budgetExhausted;
+
+    public PathSampler(BookGraph graph, long seed) {
+        this.graph = graph;
+        this.seed = seed;
+    }
+
+    public static PathSampler from(Book book, long seed) {
+        return new PathSampler(BookGraph.from(book), seed);
+    }
+
+    /**
+     * plays random games until reaching the number of samples or exhausting the time budget
+     *
+     * @param maxSamples - number of games to play
+     * @param timeBudgetNanos - maximum duration of the sampling
+     * @return this sampler, with the outcome counters filled
+     */
+    public PathSampler run(long maxSamples, long timeBudgetNanos) {
+        samples = successfulPaths = failedPaths = loopPaths = 0;
+        budgetExhausted = false;
+        int begin = graph.beginIndex();
+        if (begin == BookGraph.NO_SECTION)
+            return this;
+        SplittableRandom random = new SplittableRandom(seed);
+        // the number of the game that last went through each section
+        int[] reachedOn = new int[graph.sectionCount()];
+        int game = 0;
+        long start = System.nanoTime();
+        while (samples < maxSamples) {
+            if (samples % CLOCK_CHECK_INTERVAL == 0 && samples > 0
+                    && System.nanoTime() - start > timeBudgetNanos) {
+                budgetExhausted = true;
+                break;
+            }
+            if (++game == Integer.MAX_VALUE) {
+                Arrays.fill(reachedOn, 0);
+                game = 1;
+            }
+            play(begin, game, reachedOn, random);
+            samples++;
+        }
+        return this;
+    }
+
+    /**
+     * plays a single random game from the initial section, until it ends
+     */
+    private void play(int begin, int game, int[] reachedOn, SplittableRandom random) {
+        int section = begin;
+        int health = Game.INITIAL_HEALTH;
+        reachedOn[section] = game;
+        while (true) {
+            int first = graph.firstOption(section);
+            int numOptions = graph.endOption(section) - first;
+            if (numOptions == 0) {
+                failedPaths++;
+                return;
+            }
+            int option = first + random.nextInt(numOptions);
+            int target = graph.target(option);
+            health += graph.delta(option);
+            if (target == BookGraph.NO_SECTION) {
+                failedPaths++;
+                return;
+            }
+            if (graph.isEnd(target)) {
+                successfulPaths++;
+                return;
+            }
+            if (health <= 0) {
+                failedPaths++;
+                return;
+            }
+            if (reachedOn[target] == game) {
+                loopPaths++;
+                return;
+            }
+            reachedOn[target] = game;
+            section = target;
+        }
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * @return number of games played
+     */
+    public long numberOfSamples() {
+        return samples;
+    }
+
+    /**
+     * @return true if the sampling stopped before the requested number of games
+     */
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    public long numberOfSuccessfulPaths() {
+        return successfulPaths;
+    }
+
+    public long numberOfFailedPaths() {
+        return failedPaths;
+    }
+
+    public long numberOfLoopPaths() {
+        return loopPaths;
+    }
+}
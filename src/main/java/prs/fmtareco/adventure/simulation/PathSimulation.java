@@ -0,0 +1,150 @@
+package prs.fmtareco.adventure.simulation;
+
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Game;
+
+import java.util.BitSet;
+import java.util.function.LongConsumer;
+
+/*
+    simulates all possible paths departing from the initial section of a given book
+    - walks the compiled book graph depth first, using an explicit stack
+    - a section is only expanded the first time it is reached (visited)
+    - an option leading to a section on the current path is counted as a loop
+ */
+public final class PathSimulation {
+
+    /**
+     * number of expanded sections between progress reports
+     */
+    private static final int PROGRESS_INTERVAL = 4096;
+
+    private final BookGraph graph;
+
+    private int successfulPaths;
+    private int failedPaths;
+    private int loopPaths;
+    private long nodesExplored;
+
+    public PathSimulation(BookGraph graph) {
+        this.graph = graph;
+    }
+
+    public static PathSimulation from(Book book) {
+        return new PathSimulation(BookGraph.from(book));
+    }
+
+    /**
+     * applies all possible moves departing from the book initial section
+     * the stack holds, per depth, the section, the health when reaching it
+     * and the next option to be applied
+     *
+     * @return this simulation, with the path counters filled
+     */
+    public PathSimulation run() {
+        return run(explored -> {});
+    }
+
+    /**
+     * applies all possible moves departing from the book initial section,
+     * reporting periodically the number of sections expanded so far
+     *
+     * @param progress - receives the number of expanded sections
+     * @return this simulation, with the path counters filled
+     */
+    public PathSimulation run(LongConsumer progress) {
+        successfulPaths = 0;
+        failedPaths = 0;
+        loopPaths = 0;
+        nodesExplored = 0;
+        int begin = graph.beginIndex();
+        if (begin == BookGraph.NO_SECTION) {
+            progress.accept(nodesExplored);
+            return this;
+        }
+
+        // each stacked section (except the initial one) is visited at most once
+        int maxDepth = graph.sectionCount() + 1;
+        int[] stackSection = new int[maxDepth];
+        int[] stackHealth = new int[maxDepth];
+        int[] stackOption = new int[maxDepth];
+        BitSet visited = new BitSet(graph.sectionCount());
+        BitSet onPath = new BitSet(graph.sectionCount());
+
+        stackSection[0] = begin;
+        stackHealth[0] = Game.INITIAL_HEALTH;
+        stackOption[0] = graph.firstOption(begin);
+        nodesExplored = 1;
+        int depth = 1;
+        while (depth > 0) {
+            int top = depth - 1;
+            int section = stackSection[top];
+            int option = stackOption[top];
+            if (option == graph.endOption(section)) {
+                // the initial section is not part of the path
+                if (top > 0)
+                    onPath.clear(section);
+                depth--;
+                continue;
+            }
+            stackOption[top] = option + 1;
+            int target = graph.target(option);
+            if (top > 0 && target != BookGraph.NO_SECTION && onPath.get(target)) {
+                loopPaths++;
+                continue;
+            }
+            int health = stackHealth[top] + graph.delta(option);
+            if (health < 0 || target == BookGraph.NO_SECTION) {
+                failedPaths++;
+                continue;
+            }
+            if (graph.isEnd(target)) {
+                successfulPaths++;
+                continue;
+            }
+            if (visited.get(target))
+                continue;
+            visited.set(target);
+            onPath.set(target);
+            stackSection[depth] = target;
+            stackHealth[depth] = health;
+            stackOption[depth] = graph.firstOption(target);
+            depth++;
+            if (++nodesExplored % PROGRESS_INTERVAL == 0)
+                progress.accept(nodesExplored);
+        }
+        progress.accept(nodesExplored);
+        return this;
+    }
+
+    /**
+     * @return number of sections expanded by the last run
+     */
+    public long numberOfNodesExplored() {
+        return nodesExplored;
+    }
+
+    /**
+     * returns the number of successful simulated paths
+     * @return number of paths
+     */
+    public int numberOfSuccessfulPaths() {
+        return successfulPaths;
+    }
+
+    /**
+     * returns the number of simulated paths that end in FAILURE
+     * @return number of paths
+     */
+    public int numberOfFailedPaths() {
+        return failedPaths;
+    }
+
+    /**
+     * returns the number of detected loop paths on the simulated games
+     * @return number of paths
+     */
+    public int numberOfLoopPaths() {
+        return loopPaths;
+    }
+}
@@ -0,0 +1,152 @@
+package prs.fmtareco.adventure.simulation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+    strongly connected components of a graph stored as adjacency arrays (Tarjan algorithm)
+    - iterative, to support very deep graphs without exhausting the call stack
+    - components are numbered in reverse topological order: every component reachable
+      from component c has a number lower than c (or equal, for its own nodes)
+ */
+public final class StronglyConnectedComponents {
+
+    private final int[] component;
+    private final int componentCount;
+    private final int[] memberStart;
+    private final int[] members;
+    private final BitSet cyclic;
+
+    private StronglyConnectedComponents(int[] component, int componentCount, BitSet cyclic) {
+        this.component = component;
+        this.componentCount = componentCount;
+        this.cyclic = cyclic;
+        this.memberStart = new int[componentCount + 1];
+        this.members = new int[component.length];
+        for (int c : component)
+            memberStart[c + 1]++;
+        for (int c = 0; c < componentCount; c++)
+            memberStart[c + 1] += memberStart[c];
+        int[] next = Arrays.copyOf(memberStart, componentCount);
+        for (int node = 0; node < component.length; node++)
+            members[next[component[node]]++] = node;
+    }
+
+    /**
+     * computes the components of the book sections graph
+     *
+     * @param graph - compiled book
+     * @return StronglyConnectedComponents instance
+     */
+    public static StronglyConnectedComponents of(BookGraph graph) {
+        return compute(graph.sectionCount(), graph.optionStart, graph.optionTarget);
+    }
+
+    /**
+     * computes the components of a graph where the edges of node v are on the
+     * range [edgeStart[v], edgeStart[v+1]) of edgeTarget (negative targets are ignored)
+     *
+     * @param nodeCount - number of nodes
+     * @param edgeStart - first edge of each node (nodeCount + 1 entries)
+     * @param edgeTarget - target node of each edge
+     * @return StronglyConnectedComponents instance
+     */
+    static StronglyConnectedComponents compute(int nodeCount, int[] edgeStart, int[] edgeTarget) {
+        int[] index = new int[nodeCount];
+        int[] low = new int[nodeCount];
+        int[] component = new int[nodeCount];
+        Arrays.fill(index, -1);
+        int[] sccStack = new int[nodeCount];
+        int sccDepth = 0;
+        BitSet onStack = new BitSet(nodeCount);
+        BitSet selfLoop = new BitSet(nodeCount);
+        BitSet cyclic = new BitSet();
+        int[] callNode = new int[nodeCount];
+        int[] callEdge = new int[nodeCount];
+        int nextIndex = 0;
+        int componentCount = 0;
+
+        for (int root = 0; root < nodeCount; root++) {
+            if (index[root] != -1)
+                continue;
+            index[root] = low[root] = nextIndex++;
+            sccStack[sccDepth++] = root;
+            onStack.set(root);
+            callNode[0] = root;
+            callEdge[0] = edgeStart[root];
+            int callDepth = 1;
+            while (callDepth > 0) {
+                int top = callDepth - 1;
+                int node = callNode[top];
+                int edge = callEdge[top];
+                if (edge < edgeStart[node + 1]) {
+                    callEdge[top] = edge + 1;
+                    int target = edgeTarget[edge];
+                    if (target < 0)
+                        continue;
+                    if (index[target] == -1) {
+                        index[target] = low[target] = nextIndex++;
+                        sccStack[sccDepth++] = target;
+                        onStack.set(target);
+                        callNode[callDepth] = target;
+                        callEdge[callDepth] = edgeStart[target];
+                        callDepth++;
+                    } else if (onStack.get(target)) {
+                        low[node] = Math.min(low[node], index[target]);
+                        if (target == node)
+                            selfLoop.set(node);
+                    }
+                    continue;
+                }
+                if (low[node] == index[node]) {
+                    int size = 0;
+                    int member;
+                    do {
+                        member = sccStack[--sccDepth];
+                        onStack.clear(member);
+                        component[member] = componentCount;
+                        size++;
+                    } while (member != node);
+                    if (size > 1 || selfLoop.get(node))
+                        cyclic.set(componentCount);
+                    componentCount++;
+                }
+                callDepth--;
+                if (callDepth > 0) {
+                    int parent = callNode[callDepth - 1];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+            }
+        }
+        return new StronglyConnectedComponents(component, componentCount, cyclic);
+    }
+
+    public int componentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return component of the node
+     */
+    public int component(int node) {
+        return component[node];
+    }
+
+    /**
+     * @return true if the component holds a cycle (more than one node or a self loop)
+     */
+    public boolean isCyclic(int component) {
+        return cyclic.get(component);
+    }
+
+    public int componentSize(int component) {
+        return memberStart[component + 1] - memberStart[component];
+    }
+
+    /**
+     * @return the position-th node of the component
+     */
+    public int member(int component, int position) {
+        return members[memberStart[component] + position];
+    }
+}
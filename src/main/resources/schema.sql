@@ -8,23 +8,41 @@
 CREATE EXTENSION IF NOT EXISTS citext WITH SCHEMA public;
 
 
+-- --------------------
+-- Id sequences (Hibernate allocates ids in pooled blocks of 50,
+-- so inserts can be batched)
+-- --------------------
+CREATE SEQUENCE IF NOT EXISTS books_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS categories_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS section_texts_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS sections_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS options_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS consequences_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS games_seq START WITH 1 INCREMENT BY 50;
+
+
 -- --------------------
 -- Books
 -- --------------------
 CREATE TABLE IF NOT EXISTS books (
-    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY DEFAULT nextval('books_seq'),
     title VARCHAR(255) NOT NULL,
     author VARCHAR(255) NOT NULL,
     difficulty VARCHAR(20) NOT NULL, -- Easy, Medium and Hard
     condition VARCHAR(20) NOT NULL,
-    CONSTRAINT uniq_books_title_author UNIQUE (title, author)
+    content_hash VARCHAR(64),   -- SHA-256 of sections, options and consequences
+    version INT NOT NULL DEFAULT 1  -- a changed book file is loaded as a new version
 );
+ALTER TABLE books ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+ALTER TABLE books ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 1;
+ALTER TABLE books DROP CONSTRAINT IF EXISTS uniq_books_title_author;
+CREATE UNIQUE INDEX IF NOT EXISTS uniq_books_title_author_version ON books (title, author, version);
 
 -- --------------------
 -- Book Categories
 -- --------------------
 CREATE TABLE IF NOT EXISTS categories (
-    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY DEFAULT nextval('categories_seq'),
     name VARCHAR(255) NOT NULL,
     CONSTRAINT uniq_categories_name UNIQUE (name)
 );
@@ -40,23 +58,48 @@ CREATE TABLE IF NOT EXISTS book_categories (
     FOREIGN KEY (category_id) REFERENCES categories(id) ON DELETE CASCADE
 );
 
+-- --------------------
+-- Section Texts (compressed, loaded only when read)
+-- --------------------
+CREATE TABLE IF NOT EXISTS section_texts (
+    id BIGINT PRIMARY KEY DEFAULT nextval('section_texts_seq'),
+    codec VARCHAR(10) NOT NULL,  -- PLAIN | DEFLATE
+    text_length INT NOT NULL,    -- UTF-8 bytes, before compression
+    data BYTEA NOT NULL
+);
+
 -- --------------------
 -- Book Sections
 -- --------------------
 CREATE TABLE IF NOT EXISTS sections (
-    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY DEFAULT nextval('sections_seq'),
     book_id BIGINT NOT NULL REFERENCES books(id) ON DELETE CASCADE,
     section_number INT NOT NULL,
     type VARCHAR(10) NOT NULL,   -- BEGIN | NODE | END
-    text TEXT NOT NULL,          -- unlimited length
+    text TEXT,                   -- legacy, moved to section_texts
+    text_id BIGINT REFERENCES section_texts(id),
     CONSTRAINT uniq_sections_book_section UNIQUE (book_id, section_number)
 );
+ALTER TABLE sections ADD COLUMN IF NOT EXISTS text_id BIGINT REFERENCES section_texts(id);
+ALTER TABLE sections ALTER COLUMN text DROP NOT NULL;
+
+-- moves the legacy (inline) section texts to section_texts, as plain text
+WITH legacy AS (
+    SELECT s.id AS section_id, s.text, m.base + s.id AS text_id
+    FROM sections s, (SELECT COALESCE(MAX(id), 0) AS base FROM section_texts) m
+    WHERE s.text_id IS NULL AND s.text IS NOT NULL
+), moved AS (
+    INSERT INTO section_texts (id, codec, text_length, data)
+    SELECT text_id, 'PLAIN', octet_length(text), convert_to(text, 'UTF8') FROM legacy
+)
+UPDATE sections s SET text_id = l.text_id, text = NULL
+FROM legacy l WHERE s.id = l.section_id;
 
 -- --------------------
 -- Section Options
 -- --------------------
 CREATE TABLE IF NOT EXISTS options (
-    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY DEFAULT nextval('options_seq'),
     section_id BIGINT NOT NULL REFERENCES sections(id) ON DELETE CASCADE,
     description TEXT NOT NULL,
     goto_section_number INT NOT NULL,
@@ -67,7 +110,7 @@ CREATE TABLE IF NOT EXISTS options (
 -- Option Consequence
 -- --------------------
 CREATE TABLE IF NOT EXISTS consequences (
-    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY DEFAULT nextval('consequences_seq'),
     option_id BIGINT NOT NULL REFERENCES options(id) ON DELETE CASCADE,
     type VARCHAR(20) NOT NULL,   -- GAIN_HEALTH | LOSE_HEALTH
     value INT NOT NULL,
@@ -78,14 +121,70 @@ CREATE TABLE IF NOT EXISTS consequences (
 -- Games
 -- --------------------
 CREATE TABLE IF NOT EXISTS games (
-    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY DEFAULT nextval('games_seq'),
     book_id BIGINT NOT NULL REFERENCES books(id) ON DELETE CASCADE,
     section_id BIGINT NOT NULL REFERENCES sections(id) ON DELETE CASCADE,
     previous_section_id BIGINT REFERENCES sections(id) ON DELETE CASCADE,
     option_id BIGINT REFERENCES options(id) ON DELETE CASCADE,
     health INT NOT NULL DEFAULT 10,
-    status VARCHAR(20) NOT NULL   -- STARTED | RESTARTED | STOPPED | FAILED | SUCCEEDED
+    status VARCHAR(20) NOT NULL,  -- STARTED | RESTARTED | STOPPED | FAILED | SUCCEEDED
+    moves INT NOT NULL DEFAULT 0  -- number of moves taken
 );
+ALTER TABLE games ADD COLUMN IF NOT EXISTS moves INT NOT NULL DEFAULT 0;
+
+-- --------------------
+-- Game Moves (insert-only history, games holds the snapshot after the last move)
+-- --------------------
+CREATE TABLE IF NOT EXISTS game_moves (
+    game_id BIGINT NOT NULL REFERENCES games(id) ON DELETE CASCADE,
+    move_number INT NOT NULL,    -- 1, 2, ... per game
+    option_no INT NOT NULL,      -- 0 = RESTART
+    section_id BIGINT NOT NULL,
+    previous_section_id BIGINT,
+    option_id BIGINT,
+    health INT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    moved_at TIMESTAMPTZ NOT NULL,
+    PRIMARY KEY (game_id, move_number)
+);
+
+-- --------------------
+-- Book Sources (manifest of the books files loaded, to skip the unchanged ones)
+-- --------------------
+CREATE TABLE IF NOT EXISTS book_sources (
+    source VARCHAR(512) PRIMARY KEY,    -- path of the file (books/...)
+    file_hash VARCHAR(64) NOT NULL,     -- SHA-256 of the file
+    loaded_at TIMESTAMPTZ NOT NULL
+);
+-- the unchanged books of a changed file are found on books.content_hash
+DROP TABLE IF EXISTS book_source_books;
+
+-- --------------------
+-- Id sequences of tables created with identity columns
+-- moves the ids to the sequences and makes sure the next blocks
+-- are allocated above the existing rows
+-- --------------------
+ALTER TABLE books ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE categories ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE section_texts ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE sections ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE options ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE consequences ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE games ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE books ALTER COLUMN id SET DEFAULT nextval('books_seq');
+ALTER TABLE categories ALTER COLUMN id SET DEFAULT nextval('categories_seq');
+ALTER TABLE section_texts ALTER COLUMN id SET DEFAULT nextval('section_texts_seq');
+ALTER TABLE sections ALTER COLUMN id SET DEFAULT nextval('sections_seq');
+ALTER TABLE options ALTER COLUMN id SET DEFAULT nextval('options_seq');
+ALTER TABLE consequences ALTER COLUMN id SET DEFAULT nextval('consequences_seq');
+ALTER TABLE games ALTER COLUMN id SET DEFAULT nextval('games_seq');
+SELECT setval('books_seq', MAX(id)) FROM books HAVING MAX(id) >= (SELECT last_value FROM books_seq);
+SELECT setval('categories_seq', MAX(id)) FROM categories HAVING MAX(id) >= (SELECT last_value FROM categories_seq);
+SELECT setval('section_texts_seq', MAX(id)) FROM section_texts HAVING MAX(id) >= (SELECT last_value FROM section_texts_seq);
+SELECT setval('sections_seq', MAX(id)) FROM sections HAVING MAX(id) >= (SELECT last_value FROM sections_seq);
+SELECT setval('options_seq', MAX(id)) FROM options HAVING MAX(id) >= (SELECT last_value FROM options_seq);
+SELECT setval('consequences_seq', MAX(id)) FROM consequences HAVING MAX(id) >= (SELECT last_value FROM consequences_seq);
+SELECT setval('games_seq', MAX(id)) FROM games HAVING MAX(id) >= (SELECT last_value FROM games_seq);
 
 -- --------------------
 -- Indexes
@@ -0,0 +1,134 @@
+package prs.fmtareco.adventure.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import prs.fmtareco.adventure.loader.BookEntry;
+import prs.fmtareco.adventure.loader.BookSourceManifest;
+import prs.fmtareco.adventure.loader.bundle.BookBundle;
+import prs.fmtareco.adventure.loader.bundle.BookBundleTool;
+import prs.fmtareco.adventure.loader.bundle.BookBundleWriter;
+import prs.fmtareco.adventure.loader.json.BookJson;
+import prs.fmtareco.adventure.loader.mapper.BookMapper;
+import prs.fmtareco.adventure.loader.mapper.OptionMapper;
+import prs.fmtareco.adventure.loader.mapper.SectionMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    load times of the books files, JSON against bundle (mvn test -Pbenchmark)
+    - both read the files from disk, and both hash the JSON file first, as BooksLoader.parse does
+    - JSON: the file is parsed and its books mapped
+    - bundle: the bundle file is memory mapped, checked against the JSON hash and its books mapped
+    - the timings are logged, only the equivalence of the loaded books is asserted
+ */
+@Tag("benchmark")
+public class BookBundleBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(BookBundleBenchmarkTest.class);
+
+    private static final Path BOOKS = Path.of("src/main/resources/books");
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 200);
+
+    private final BookMapper bookMapper = new BookMapper(new SectionMapper(new OptionMapper()), null);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void jsonAndBundleLoadTimes() throws IOException {
+        List<Path> jsons = new ArrayList<>();
+        List<Path> bundles = new ArrayList<>();
+        for (Path file : jsonFiles()) {
+            Path json = Files.copy(file, directory.resolve(jsons.size() + ".json"));
+            Path bundle = directory.resolve(bundles.size() + BookBundle.EXTENSION);
+            Files.write(bundle, BookBundleWriter.write(BookBundleTool.read(json), hash(json)));
+            jsons.add(json);
+            bundles.add(bundle);
+        }
+
+        long jsonHashes = 0, bundleHashes = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            jsonHashes = jsonRounds(jsons, Math.max(1, ROUNDS / 4));
+            bundleHashes = bundleRounds(jsons, bundles, Math.max(1, ROUNDS / 4));
+        }
+        long start = System.nanoTime();
+        jsonHashes = jsonRounds(jsons, ROUNDS);
+        long json = System.nanoTime() - start;
+        start = System.nanoTime();
+        bundleHashes = bundleRounds(jsons, bundles, ROUNDS);
+        long bundle = System.nanoTime() - start;
+
+        log.info("{} rounds of {} files : JSON {} ms, bundle {} ms ({})",
+                ROUNDS, jsons.size(), json / 1_000_000, bundle / 1_000_000,
+                String.format("%.1fx", (double) json / bundle));
+        assertEquals(jsonHashes, bundleHashes);
+    }
+
+    /**
+     * hash + parse + map of the JSON files
+     */
+    private long jsonRounds(List<Path> jsons, int rounds) throws IOException {
+        long hashes = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (Path file : jsons) {
+                hash(file);
+                for (BookJson json : BookBundleTool.read(file))
+                    hashes += bookMapper.contentFromJson(json).getContentHash().hashCode();
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * hash of the JSON files + map of their bundles
+     */
+    private static long bundleRounds(List<Path> jsons, List<Path> bundles, int rounds) throws IOException {
+        long hashes = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < jsons.size(); i++) {
+                String fileHash = hash(jsons.get(i));
+                BookBundle bundle;
+                try (FileChannel channel = FileChannel.open(bundles.get(i), StandardOpenOption.READ)) {
+                    bundle = BookBundle.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+                assertEquals(fileHash, bundle.sourceHash());
+                for (BookEntry entry : bundle.entries())
+                    hashes += entry.content().get().getContentHash().hashCode();
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * the JSON books files of the resources (but the empty ones)
+     */
+    private static List<Path> jsonFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(BOOKS)) {
+            List<Path> files = new ArrayList<>();
+            for (Path p : paths.filter(p -> p.toString().endsWith(".json")).sorted().toList())
+                if (Files.size(p) > 0)
+                    files.add(p);
+            assertFalse(files.isEmpty());
+            return files;
+        }
+    }
+
+    private static String hash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return BookSourceManifest.hash(in);
+        }
+    }
+}
@@ -1,26 +1,101 @@
 package prs.fmtareco.adventure.integration;
 
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.http.MediaType;
+import prs.fmtareco.adventure.dtos.BookLoadResult;
+import prs.fmtareco.adventure.dtos.BookRequest;
+import prs.fmtareco.adventure.dtos.OptionRequest;
+import prs.fmtareco.adventure.dtos.SectionRequest;
+import prs.fmtareco.adventure.loader.BookBulkLoader;
+import prs.fmtareco.adventure.loader.StreamingBookLoader;
+import prs.fmtareco.adventure.loader.json.BookJson;
+import prs.fmtareco.adventure.loader.json.OptionJson;
+import prs.fmtareco.adventure.loader.json.SectionJson;
+import prs.fmtareco.adventure.loader.mapper.BookMapper;
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.BookValidator;
+import prs.fmtareco.adventure.model.Section;
+import prs.fmtareco.adventure.service.BookService;
 import prs.fmtareco.adventure.support.TestJson;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.hamcrest.number.OrderingComparison.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@SpringBootTest
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "adventure.loader.background=false",
+        "adventure.loader.stream-chunk-size=100"})
 @AutoConfigureMockMvc
 public class BookIntegrationTest {
+    private static final Path WATCHED;
+
+    static {
+        try {
+            WATCHED = Files.createTempDirectory("watched-books");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void watchedDirectory(DynamicPropertyRegistry registry) {
+        registry.add("adventure.loader.watch-directory", WATCHED::toString);
+        registry.add("adventure.loader.watch-debounce", () -> "200ms");
+    }
+
     @Autowired
     private MockMvc mvc;
 
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private BookBulkLoader bulkLoader;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StreamingBookLoader streamingLoader;
+
+    @Autowired
+    private BookMapper bookMapper;
+
     /**
      * GET
      * checks the books API Get all books endpoint
@@ -75,4 +150,275 @@ public class BookIntegrationTest {
                         .content(TestJson.validBook()))
                 .andExpect(status().is2xxSuccessful());
     }
+
+    /**
+     * creates a 2000 sections book and checks that the ids come from
+     * sequence blocks and the inserts go out in JDBC batches
+     * - 6000 rows (sections, texts and options) and a few hundred statements
+     */
+    @Test
+    void largeBookInsertsAreBatched() {
+        int size = 2000;
+        List<SectionRequest> sections = new ArrayList<>();
+        for (int number = 1; number <= size; number++) {
+            sections.add(SectionRequest.builder()
+                    .id(number)
+                    .text("Section " + number)
+                    .type(number == 1 ? "BEGIN" : number == size ? "END" : "NODE")
+                    .options(number == size ? List.of() : List.of(OptionRequest.builder()
+                            .description("Go to " + (number + 1))
+                            .gotoId(number + 1)
+                            .build()))
+                    .build());
+        }
+        BookRequest request = BookRequest.builder()
+                .title("Large Adventure " + Instant.now())
+                .author("Tester")
+                .difficulty("EASY")
+                .categories(List.of("FICTION"))
+                .sections(sections)
+                .build();
+
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+        bookService.createBook(request);
+
+        assertTrue(stats.getEntityInsertCount() >= 3L * size - 1);
+        assertTrue(stats.getPrepareStatementCount() < size / 5,
+                "statements: " + stats.getPrepareStatementCount());
+    }
+
+    /**
+     * bulk loads (COPY) a batch of books
+     * - the new book is loaded, with its condition
+     * - the book repeated in the batch is skipped
+     * - the book with a repeated section is rejected
+     * - the loaded book is then served by the API
+     */
+    @Test
+    void bulkLoadCopiesBooks() throws Exception {
+        String title = "Bulk Adventure " + Instant.now();
+        List<SectionJson> sections = List.of(
+                new SectionJson(1, "Start", Section.Type.BEGIN,
+                        List.of(new OptionJson("End", 2, null))),
+                new SectionJson(2, "Finish", Section.Type.END, List.of()));
+        List<SectionJson> repeated = List.of(
+                new SectionJson(1, "Start", Section.Type.BEGIN, List.of()),
+                new SectionJson(1, "Again", Section.Type.END, List.of()));
+        List<BookLoadResult> results = bulkLoader.load(List.of(
+                new BookJson(title, "Tester", Book.Difficulty.EASY, List.of("FICTION"), sections),
+                new BookJson(title, "Tester", Book.Difficulty.EASY, List.of("FICTION"), sections),
+                new BookJson(title + " (broken)", "Tester", Book.Difficulty.EASY, List.of(), repeated)));
+
+        assertEquals(BookLoadResult.LOADED, results.get(0).status());
+        assertEquals("OK", results.get(0).condition());
+        assertEquals(BookLoadResult.SKIPPED, results.get(1).status());
+        assertEquals(BookLoadResult.REJECTED, results.get(2).status());
+
+        mvc.perform(get("/api/books").param("title", title))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(is(1)));
+    }
+
+    /**
+     * reloads a book of the catalog
+     * - the same content is skipped, pointing to the stored book
+     * - a changed content is loaded as a new version, the first one is kept
+     */
+    @Test
+    void changedBookIsLoadedAsNewVersion() {
+        String title = "Versioned Adventure " + Instant.now();
+        List<SectionJson> sections = List.of(
+                new SectionJson(1, "Start", Section.Type.BEGIN,
+                        List.of(new OptionJson("End", 2, null))),
+                new SectionJson(2, "Finish", Section.Type.END, List.of()));
+        List<SectionJson> changed = List.of(
+                new SectionJson(1, "Start again", Section.Type.BEGIN,
+                        List.of(new OptionJson("End", 2, null))),
+                new SectionJson(2, "Finish", Section.Type.END, List.of()));
+        BookJson book = new BookJson(title, "Tester", Book.Difficulty.EASY, List.of("FICTION"), sections);
+
+        BookLoadResult first = bulkLoader.save(List.of(book)).getFirst();
+        BookLoadResult same = bulkLoader.save(List.of(book)).getFirst();
+        BookLoadResult next = bulkLoader.save(List.of(
+                new BookJson(title, "Tester", Book.Difficulty.EASY, List.of("FICTION"), changed))).getFirst();
+
+        assertEquals(BookLoadResult.LOADED, first.status());
+        assertEquals(1, first.version());
+        assertEquals(BookLoadResult.SKIPPED, same.status());
+        assertEquals(first.id(), same.id());
+        assertEquals(BookLoadResult.LOADED, next.status());
+        assertEquals(2, next.version());
+        assertNotEquals(first.contentHash(), next.contentHash());
+        assertEquals(2, bookService.listAllFiltered(title, null, null, null, null, Pageable.unpaged())
+                .getTotalElements());
+    }
+
+    /**
+     * POST
+     * imports books from NDJSON, one result line per book
+     * - the first book is created, its repetition skipped
+     * - the line that can't be bound is rejected, without stopping the import
+     */
+    @Test
+    void bulkImportStreamsResults() throws Exception {
+        String book = TestJson.validBook().replaceAll("\\s*\n\\s*", " ");
+        String body = book + "\n" + book + "\n" + "{\"title\": \"Broken\", \"sections\": \"none\"}\n";
+        MvcResult result = mvc.perform(post("/api/books/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+        List<String> lines = result.getResponse().getContentAsString().lines().toList();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"LOADED\""));
+        assertTrue(lines.get(1).contains("\"SKIPPED\""));
+        assertTrue(lines.get(2).contains("\"REJECTED\""));
+    }
+
+    /**
+     * a books file copied to the watched directory is loaded,
+     * with its status on the bookfiles actuator endpoint
+     */
+    @Test
+    void watchedBooksFileIsLoaded() throws Exception {
+        String title = "Watched Adventure " + Instant.now();
+        List<SectionJson> sections = List.of(
+                new SectionJson(1, "Start", Section.Type.BEGIN,
+                        List.of(new OptionJson("End", 2, null))),
+                new SectionJson(2, "Finish", Section.Type.END, List.of()));
+        Files.write(WATCHED.resolve("watched.json"), objectMapper.writeValueAsBytes(List.of(
+                new BookJson(title, "Tester", Book.Difficulty.EASY, List.of("FICTION"), sections))));
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!mvc.perform(get("/actuator/bookfiles/watched.json")).andReturn()
+                .getResponse().getContentAsString().contains("\"LOADED\"")) {
+            assertTrue(System.currentTimeMillis() < deadline, "watched file not loaded");
+            Thread.sleep(100);
+        }
+        mvc.perform(get("/actuator/bookfiles/watched.json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.load.loaded").value(1));
+        mvc.perform(get("/api/books").param("title", title))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(is(1)));
+    }
+
+    /**
+     * streams a book of many sections (several chunks)
+     * - its content hash is the one of the book mapped in memory
+     * - streamed again, it's skipped
+     */
+    @Test
+    void largeBookIsStreamed() throws Exception {
+        String title = "Streamed Adventure " + Instant.now();
+        int count = 1050;
+        List<SectionJson> sections = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Section.Type type = i == 1 ? Section.Type.BEGIN : i == count ? Section.Type.END : Section.Type.NODE;
+            List<OptionJson> options = i == count ? List.of()
+                    : List.of(new OptionJson("Go on", i + 1, null), new OptionJson("Go back", Math.max(1, i - 1), null));
+            sections.add(new SectionJson(i, "Section " + i + " of a long adventure", type, options));
+        }
+        BookJson book = new BookJson(title, "Tester", Book.Difficulty.HARD, List.of("FICTION"), sections.reversed());
+        Path file = Files.createTempFile("streamed-book", ".json");
+        Files.write(file, objectMapper.writeValueAsBytes(book));
+
+        BookLoadResult first = streamingLoader.load(file).getFirst();
+        BookLoadResult again = streamingLoader.load(file).getFirst();
+
+        assertEquals(BookLoadResult.LOADED, first.status());
+        assertEquals("OK", first.condition());
+        assertEquals(bookMapper.contentFromJson(book).getContentHash(), first.contentHash());
+        assertEquals(BookLoadResult.SKIPPED, again.status());
+        mvc.perform(get("/api/books/" + first.id()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value(title));
+    }
+
+    /**
+     * streams books breaking the rules of BookValidator (in sections of later chunks)
+     * - the condition of each streamed book is the one of the book validated in memory
+     */
+    @Test
+    void streamedConditionMatchesTheValidator() throws Exception {
+        String title = "Streamed Condition " + Instant.now();
+        int count = 250;
+        List<BookJson> books = List.of(
+                chainBook(title + " ok", count, sections -> {}),
+                chainBook(title + " no begin", count,
+                        sections -> sections.set(0, section(1, Section.Type.NODE, 2))),
+                chainBook(title + " two begins", count,
+                        sections -> sections.set(150, section(151, Section.Type.BEGIN, 152))),
+                chainBook(title + " no end", count,
+                        sections -> sections.set(count - 1, section(count, Section.Type.NODE, 1))),
+                chainBook(title + " unknown goto", count,
+                        sections -> sections.set(180, section(181, Section.Type.NODE, count + 5))),
+                chainBook(title + " no options", count,
+                        sections -> sections.set(120, new SectionJson(121, "Dead end", Section.Type.NODE, List.of()))),
+                chainBook(title + " no end and unknown goto", count, sections -> {
+                    sections.set(count - 1, section(count, Section.Type.NODE, 1));
+                    sections.set(10, section(11, Section.Type.NODE, 0));
+                }),
+                chainBook(title + " unknown goto and no options", count, sections -> {
+                    sections.set(220, new SectionJson(221, "Dead end", Section.Type.NODE, List.of()));
+                    sections.set(30, section(31, Section.Type.NODE, -1));
+                }));
+        Path file = Files.createTempFile("streamed-conditions", ".json");
+        Files.write(file, objectMapper.writeValueAsBytes(books));
+
+        List<BookLoadResult> results = streamingLoader.load(file);
+
+        assertEquals(books.size(), results.size());
+        Set<Book.Condition> conditions = EnumSet.noneOf(Book.Condition.class);
+        for (int i = 0; i < books.size(); i++) {
+            Book.Condition expected = BookValidator.validate(bookMapper.contentFromJson(books.get(i))).condition();
+            conditions.add(expected);
+            assertEquals(BookLoadResult.LOADED, results.get(i).status(), books.get(i).title());
+            assertEquals(expected.name(), results.get(i).condition(), books.get(i).title());
+        }
+        assertEquals(EnumSet.allOf(Book.Condition.class), conditions);
+    }
+
+    /**
+     * a valid book of chained sections (1 -> 2 -> ... -> count), changed by the test
+     */
+    private static BookJson chainBook(String title, int count, Consumer<List<SectionJson>> change) {
+        List<SectionJson> sections = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++)
+            sections.add(i == count
+                    ? new SectionJson(i, "The end", Section.Type.END, List.of())
+                    : section(i, i == 1 ? Section.Type.BEGIN : Section.Type.NODE, i + 1));
+        change.accept(sections);
+        return new BookJson(title, "Tester", Book.Difficulty.EASY, List.of("FICTION"), sections);
+    }
+
+    private static SectionJson section(int number, Section.Type type, int gotoId) {
+        return new SectionJson(number, "Section " + number, type, List.of(new OptionJson("Go to " + gotoId, gotoId, null)));
+    }
+
+    /**
+     * GET
+     * an out of range validation option is a client error (400)
+     */
+    @Test
+    void invalidExploreParameterIsBadRequest() throws Exception {
+        mvc.perform(get("/api/books/1/validate").param("mode", "health").param("healthCap", "0"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/books/1/validate").param("mode", "sample").param("samples", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * GET
+     * the readiness includes the books load, UP once the books files are loaded
+     */
+    @Test
+    void readinessReportsBooksLoad() throws Exception {
+        mvc.perform(get("/actuator/health/readiness"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("UP"));
+    }
 }
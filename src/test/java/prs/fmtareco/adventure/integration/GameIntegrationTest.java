@@ -5,21 +5,30 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import prs.fmtareco.adventure.model.Game;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
-@SpringBootTest
+@SpringBootTest(properties = "adventure.loader.background=false")
 @AutoConfigureMockMvc
 public class GameIntegrationTest {
     @Autowired
     private MockMvc mvc;
 
+    @Autowired
+    private JdbcTemplate jdbc;
+
     /**
      * GET
      * tests the games API w/ different filters
@@ -124,6 +133,81 @@ public class GameIntegrationTest {
                 "The salty breeze carries the cries of distant gulls as your ship sails across the shimmering Jade Sea. Rumors speak of hidden treasure on the Isle of Serpents.");
     }
 
+    /**
+     * POST/GET
+     * plays the successful flow in one multi-move request, the options after the
+     * end of the game being ignored, and checks the game history
+     */
+    @Test
+    void successfulPiratesGameInOneRequest() throws Exception {
+        int bookId = getValidBookId();
+        int gameId = startGame(bookId);
+        mvc.perform(post("/api/games/" + gameId + "/moves")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"options\": [1, 1, 1, 1, 1, 1]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.applied").value(4))
+                .andExpect(jsonPath("$.steps.length()").value(4))
+                .andExpect(jsonPath("$.steps[3].status").value("SUCCEEDED"))
+                .andExpect(jsonPath("$.game.status").value("SUCCEEDED"))
+                .andExpect(jsonPath("$.game.position").value(
+                        "You reach a secret pirate hideout filled with treasure. The crew celebrates your discovery."));
+        MvcResult history = mvc.perform(get("/api/games/" + gameId + "/moves"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(history))
+                .andExpect(status().isOk());
+        assertEquals(4, history.getResponse().getContentAsString().lines().count());
+    }
+
+    /**
+     * POST/GET
+     * the moves of an active game are only logged (its row keeps the last snapshot), the game
+     * details being read from the last move, and the row is written once the game ends
+     */
+    @Test
+    void gameRowIsWrittenAsSnapshots() throws Exception {
+        int bookId = getValidBookId();
+        int gameId = startGame(bookId);
+        postMove(gameId, 1, 10, Game.Status.ACTIVE,
+                "After hours of waiting, the storm clears and the Isle of Serpents looms ahead, shrouded in mist.");
+        assertEquals(0, gameRowMoves(gameId));
+        mvc.perform(get("/api/games/" + gameId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("ACTIVE"))
+                .andExpect(jsonPath("$.position").value(
+                        "After hours of waiting, the storm clears and the Isle of Serpents looms ahead, shrouded in mist."));
+
+        postMove(gameId, 1, 10, Game.Status.ACTIVE,
+                "You step onto the white sands of the Isle of Serpents. Ancient ruins rise above the jungle canopy.");
+        postMove(gameId, 1, 10, Game.Status.ACTIVE,
+                "From the top of the ruins, you spot a hidden lagoon surrounded by jagged cliffs.");
+        postMove(gameId, 1, 10, Game.Status.SUCCEEDED,
+                "You reach a secret pirate hideout filled with treasure. The crew celebrates your discovery.");
+        assertEquals(4, gameRowMoves(gameId));
+    }
+
+    private int gameRowMoves(int gameId) {
+        return jdbc.queryForObject("SELECT moves FROM games WHERE id = ?", Integer.class, (long) gameId);
+    }
+
+    /**
+     * POST
+     * a multi-move request stops at the first invalid option, keeping the previous moves
+     */
+    @Test
+    void multiMoveStopsAtInvalidOption() throws Exception {
+        int bookId = getValidBookId();
+        int gameId = startGame(bookId);
+        mvc.perform(post("/api/games/" + gameId + "/moves")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"options\": [1, 9, 1]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.applied").value(1))
+                .andExpect(jsonPath("$.steps.length()").value(2))
+                .andExpect(jsonPath("$.steps[1].error").isNotEmpty())
+                .andExpect(jsonPath("$.game.status").value("ACTIVE"));
+    }
 
     /**
      * POST
@@ -0,0 +1,160 @@
+package prs.fmtareco.adventure.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.util.unit.DataSize;
+import prs.fmtareco.adventure.config.GameplayProperties;
+import prs.fmtareco.adventure.model.Game;
+import prs.fmtareco.adventure.model.GameMove;
+import prs.fmtareco.adventure.model.GameState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class ActiveGameStoreTest {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Mock
+    JdbcTemplate jdbc;
+
+    @Mock
+    GameMoveLog moveLog;
+
+    @TempDir
+    Path directory;
+
+    ActiveGameStore store;
+
+    @BeforeEach
+    void startStore() {
+        store = startStore(directory);
+    }
+
+    private ActiveGameStore startStore(Path journalDirectory) {
+        GameplayProperties props = new GameplayProperties(DataSize.ofMegabytes(64), false, Path.of("compiled-books"),
+                true, Duration.ofHours(1), BATCH_SIZE, 100_000, journalDirectory, BATCH_SIZE, 20);
+        ActiveGameStore started = new ActiveGameStore(jdbc, moveLog, props, new SimpleMeterRegistry());
+        started.start();
+        return started;
+    }
+
+    @AfterEach
+    void stopStore() throws IOException {
+        store.stop();
+    }
+
+    /**
+     * a game missing from the store is read once, the next moves apply to the in memory state
+     */
+    @Test
+    void gameIsLoadedOnceAndMovedInMemory() {
+        AtomicInteger loads = new AtomicInteger();
+        GameState initial = state(0);
+
+        GameState moved = store.update(1L, 1, () -> { loads.incrementAndGet(); return initial; }, this::next);
+        assertEquals(state(1), moved);
+        assertEquals(moved, store.get(1L, () -> fail("game read again")));
+        assertEquals(state(2), store.update(1L, 1, () -> fail("game read again"), this::next));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * a failed flush keeps the moves, the changed games and the journal, and the next
+     * flush writes them (and only then deletes the journal files)
+     */
+    @Test
+    void failedFlushIsRetried() throws IOException {
+        GameState moved = store.update(1L, 1, () -> state(0), this::next);
+        doThrow(new IllegalStateException("database down"))
+                .doNothing()
+                .when(moveLog).insert(anyCollection(), eq(BATCH_SIZE));
+
+        assertThrows(IllegalStateException.class, store::flush);
+        assertEquals(List.of("journal-1.log", "journal-2.log"), journalFiles());
+        assertEquals(List.of(moved), GameJournal.read(List.of(directory.resolve("journal-1.log"))).stream()
+                .map(GameMove::state)
+                .toList());
+
+        store.flush();
+        verify(moveLog, times(2)).insert(argThat(moves -> isMove(moves, moved)), eq(BATCH_SIZE));
+        verify(jdbc).batchUpdate(anyString(), eq(List.of(moved)), eq(BATCH_SIZE),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(List.of("journal-3.log"), journalFiles());
+    }
+
+    /**
+     * the journal of a previous run is replayed with the newest state of each game,
+     * whatever the order of its lines
+     */
+    @Test
+    void replayWritesTheNewestState() throws IOException {
+        Path previous = directory.resolve("previous");
+        Files.createDirectories(previous);
+        Instant now = Instant.now();
+        Files.write(previous.resolve("journal-1.log"), List.of(
+                GameJournal.toLine(new GameMove(state(5), 1, now)),
+                GameJournal.toLine(new GameMove(state(6), 1, now)),
+                GameJournal.toLine(new GameMove(state(4), 1, now))));
+
+        ActiveGameStore replayed = startStore(previous);
+        try {
+            verify(moveLog).insert(argThat(moves -> moves.size() == 3), eq(BATCH_SIZE));
+            verify(jdbc).batchUpdate(anyString(),
+                    argThat((Collection<GameState> states) -> states.size() == 1 && states.contains(state(6))),
+                    eq(BATCH_SIZE), any(ParameterizedPreparedStatementSetter.class));
+            assertEquals(List.of("journal-2.log"), journalFiles(previous));
+        } finally {
+            replayed.stop();
+        }
+    }
+
+    private List<String> journalFiles() throws IOException {
+        return journalFiles(directory);
+    }
+
+    private static List<String> journalFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static boolean isMove(Collection<GameMove> moves, GameState state) {
+        return moves != null && moves.size() == 1 && moves.iterator().next().state().equals(state);
+    }
+
+    private GameState next(GameState state) {
+        return state(state.moves() + 1);
+    }
+
+    private static GameState state(int moves) {
+        return new GameState(1L, 7L, 12 + moves, moves == 0 ? null : 11 + moves, moves == 0 ? null : 100L + moves,
+                10, Game.Status.ACTIVE, moves);
+    }
+}
@@ -0,0 +1,102 @@
+package prs.fmtareco.adventure.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import prs.fmtareco.adventure.model.Game;
+import prs.fmtareco.adventure.model.GameMove;
+import prs.fmtareco.adventure.model.GameState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameJournalTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * a move written as a journal line is read back unchanged (optional ids included)
+     */
+    @Test
+    void movesAreReadBackFromTheirLines() {
+        GameMove first = move(1L, 0, null, null, Game.Status.STARTED);
+        GameMove next = move(1L, 1, 10, 100L, Game.Status.ACTIVE);
+
+        assertEquals(first, GameJournal.fromLine(GameJournal.toLine(first)));
+        assertEquals(next, GameJournal.fromLine(GameJournal.toLine(next)));
+    }
+
+    /**
+     * appended moves are read from the journal files, in order
+     */
+    @Test
+    void appendedMovesAreReadFromTheFiles() throws IOException {
+        List<GameMove> moves = List.of(
+                move(1L, 1, 10, 100L, Game.Status.ACTIVE),
+                move(2L, 1, 20, 200L, Game.Status.ACTIVE),
+                move(1L, 2, 11, 101L, Game.Status.SUCCEEDED));
+        try (GameJournal journal = new GameJournal(directory)) {
+            journal.append(moves.get(0));
+            journal.seal();
+            journal.append(moves.get(1));
+            journal.append(moves.get(2));
+            assertEquals(moves, GameJournal.read(journal.files()));
+        }
+    }
+
+    /**
+     * lines left truncated or malformed (crash while writing) are skipped
+     */
+    @Test
+    void truncatedAndMalformedLinesAreSkipped() throws IOException {
+        GameMove move = move(1L, 1, 10, 100L, Game.Status.ACTIVE);
+        String line = GameJournal.toLine(move);
+
+        assertNull(GameJournal.fromLine(""));
+        assertNull(GameJournal.fromLine(line.substring(0, line.length() - 3) + ","));
+        assertNull(GameJournal.fromLine(line.substring(0, line.lastIndexOf(','))));
+        assertNull(GameJournal.fromLine(line.replace("ACTIVE", "LOST")));
+        assertNull(GameJournal.fromLine(line.replaceFirst("^1,", "x,")));
+        assertNull(GameJournal.fromLine(line + ",1"));
+
+        Path file = directory.resolve("journal-1.log");
+        Files.writeString(file, line + "\n" + line.replace("ACTIVE", "LOST") + "\n" + line.substring(0, 10));
+        assertEquals(List.of(move), GameJournal.read(List.of(file)));
+    }
+
+    /**
+     * sealing opens the next file, only the files before the open one are sealed
+     * (a restart continues the sequence, and seals the files of the previous run)
+     */
+    @Test
+    void sealedFilesPrecedeTheOpenFile() throws IOException {
+        GameMove move = move(1L, 1, 10, 100L, Game.Status.ACTIVE);
+        try (GameJournal journal = new GameJournal(directory)) {
+            assertEquals(List.of(), journal.sealedFiles());
+            journal.append(move);
+            journal.seal();
+            List<Path> sealed = journal.sealedFiles();
+            assertEquals(List.of(directory.resolve("journal-1.log")), sealed);
+            assertEquals(List.of(move), GameJournal.read(sealed));
+
+            journal.append(move);
+            assertEquals(sealed, journal.sealedFiles());
+            GameJournal.delete(sealed);
+            assertEquals(List.of(directory.resolve("journal-2.log")), journal.files());
+        }
+        try (GameJournal journal = new GameJournal(directory)) {
+            assertEquals(List.of(directory.resolve("journal-2.log")), journal.sealedFiles());
+            assertEquals(directory.resolve("journal-3.log"), journal.files().getLast());
+        }
+    }
+
+    private static GameMove move(Long gameId, int moves, Integer previousSectionId, Long optionId, Game.Status status) {
+        GameState state = new GameState(gameId, 7L, 12, previousSectionId, optionId, 10 - moves, status, moves);
+        return new GameMove(state, moves, Instant.ofEpochMilli(1_700_000_000_000L + moves));
+    }
+}
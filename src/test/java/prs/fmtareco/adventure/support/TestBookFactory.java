@@ -136,6 +136,48 @@ public class TestBookFactory {
         return book;
     }
 
+    /**
+     * creates a long valid book, where each middle section leads to the next and to the previous one
+     * @param numSections - number of sections of the book
+     * @return the new book
+     */
+    public static Book createLongBook(int numSections) {
+        Book book = Book.create(
+                "The Never ending Corridor",
+                "Long Walker",
+                Book.Difficulty.HARD);
+        addSection(book,Section.Type.BEGIN, 1, new int[] { 2 });
+        for (int sectionNo = 2; sectionNo < numSections; sectionNo++) {
+            addSection(book,Section.Type.NODE, sectionNo, new int[] { sectionNo + 1, sectionNo - 1 });
+        }
+        addSection(book,Section.Type.END, numSections);
+        book.setBookCondition();
+        return book;
+    }
+
+    /**
+     * creates a valid book made of layers of two sections, where both sections of a layer
+     * lead to both sections of the next layer (2^layers distinct paths)
+     * @param layers - number of layers of the book
+     * @return the new book
+     */
+    public static Book createLayeredBook(int layers) {
+        Book book = Book.create(
+                "The Garden of Forking Paths",
+                "Jorge Layered",
+                Book.Difficulty.HARD);
+        int endNo = 2 * layers + 2;
+        addSection(book,Section.Type.BEGIN, 1, new int[] { 2, 3 });
+        for (int layer = 1; layer <= layers; layer++) {
+            int[] next = layer < layers ? new int[] { 2 * layer + 2, 2 * layer + 3 } : new int[] { endNo };
+            addSection(book,Section.Type.NODE, 2 * layer, next);
+            addSection(book,Section.Type.NODE, 2 * layer + 1, next);
+        }
+        addSection(book,Section.Type.END, endNo);
+        book.setBookCondition();
+        return book;
+    }
+
     /**
      * adds a new section without options to jump to others
      * @param book - the book being built
@@ -0,0 +1,98 @@
+package prs.fmtareco.adventure.unit;
+
+import org.junit.jupiter.api.Test;
+import prs.fmtareco.adventure.loader.BookEntry;
+import prs.fmtareco.adventure.loader.BookSourceManifest;
+import prs.fmtareco.adventure.loader.bundle.BookBundle;
+import prs.fmtareco.adventure.loader.bundle.BookBundleTool;
+import prs.fmtareco.adventure.loader.bundle.BookBundleWriter;
+import prs.fmtareco.adventure.loader.json.BookJson;
+import prs.fmtareco.adventure.loader.mapper.BookMapper;
+import prs.fmtareco.adventure.loader.mapper.OptionMapper;
+import prs.fmtareco.adventure.loader.mapper.SectionMapper;
+import prs.fmtareco.adventure.model.Book;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BookBundleTest {
+
+    private static final Path BOOKS = Path.of("src/main/resources/books");
+
+    private final BookMapper bookMapper = new BookMapper(new SectionMapper(new OptionMapper()), null);
+
+    @Test
+    void bundleBooksMatchTheJsonBooks() throws IOException {
+        for (Path file : jsonFiles()) {
+            List<BookJson> books = BookBundleTool.read(file);
+            String sourceHash = sourceHash(file);
+            BookBundle bundle = BookBundle.read(ByteBuffer.wrap(BookBundleWriter.write(books, sourceHash)));
+
+            assertEquals(sourceHash, bundle.sourceHash());
+            assertEquals(books.size(), bundle.size());
+            List<BookEntry> entries = bundle.entries();
+            for (int i = 0; i < books.size(); i++) {
+                BookJson json = books.get(i);
+                BookEntry entry = entries.get(i);
+                assertEquals(json.title(), entry.title());
+                assertEquals(json.author(), entry.author());
+                assertEquals(Objects.requireNonNullElse(json.categories(), List.of()), entry.categories());
+                Book book = entry.content().get();
+                Book expected = bookMapper.contentFromJson(json);
+                assertEquals(expected.getContentHash(), book.getContentHash(), file + " : " + json.title());
+                assertEquals(expected.getDifficulty(), book.getDifficulty());
+                assertEquals(expected.getSections().size(), book.getSections().size());
+            }
+        }
+    }
+
+    @Test
+    void bundleIsReadFromADirectBuffer() throws IOException {
+        Path file = jsonFiles().getFirst();
+        List<BookJson> books = BookBundleTool.read(file);
+        byte[] bytes = BookBundleWriter.write(books, sourceHash(file));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        BookEntry entry = BookBundle.read(direct).entries().getFirst();
+        assertEquals(books.getFirst().title(), entry.title());
+        assertEquals(bookMapper.contentFromJson(books.getFirst()).getContentHash(),
+                entry.content().get().getContentHash());
+    }
+
+    @Test
+    void notABundleIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BookBundle.read(ByteBuffer.wrap(new byte[64])));
+        byte[] bytes = BookBundleWriter.write(List.of(), "00".repeat(32));
+        assertThrows(IllegalArgumentException.class,
+                () -> BookBundle.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1)));
+    }
+
+    /**
+     * the JSON books files of the resources (but the empty ones)
+     */
+    private static List<Path> jsonFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(BOOKS)) {
+            List<Path> files = new ArrayList<>();
+            for (Path p : paths.filter(p -> p.toString().endsWith(".json")).sorted().toList())
+                if (Files.size(p) > 0)
+                    files.add(p);
+            assertFalse(files.isEmpty());
+            return files;
+        }
+    }
+
+    private static String sourceHash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return BookSourceManifest.hash(in);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package prs.fmtareco.adventure.unit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import prs.fmtareco.adventure.config.SimulationProperties;
+import prs.fmtareco.adventure.dtos.OutcomeRate;
+import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.Option;
+import prs.fmtareco.adventure.model.Section;
+import prs.fmtareco.adventure.service.SimulationCache;
+import prs.fmtareco.adventure.simulation.BookGraph;
+import prs.fmtareco.adventure.simulation.CompiledBook;
+import prs.fmtareco.adventure.simulation.CompiledBookStore;
+import prs.fmtareco.adventure.simulation.GraphAnalysis;
+import prs.fmtareco.adventure.simulation.HealthExplorer;
+import prs.fmtareco.adventure.simulation.ParallelPathSimulation;
+import prs.fmtareco.adventure.simulation.PathCounter;
+import prs.fmtareco.adventure.simulation.PathSampler;
+import prs.fmtareco.adventure.simulation.PathSimulation;
+import prs.fmtareco.adventure.support.TestBookFactory;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BookSimulationTest {
+
+    /**
+     * a valid book with a single path has one successful path
+     */
+    @Test
+    void simulateValidBook() {
+        Book book = TestBookFactory.createValidBook();
+        PathSimulation simulation = PathSimulation.from(book).run();
+        assertEquals(1, simulation.numberOfSuccessfulPaths());
+        assertEquals(0, simulation.numberOfFailedPaths());
+        assertEquals(0, simulation.numberOfLoopPaths());
+    }
+
+    /**
+     * options returning to a section already on the path are counted as loops
+     */
+    @Test
+    void simulateBookWithLoops() {
+        Book book = TestBookFactory.createBookWithConsequences();
+        PathSimulation simulation = PathSimulation.from(book).run();
+        assertEquals(1, simulation.numberOfSuccessfulPaths());
+        assertEquals(0, simulation.numberOfFailedPaths());
+        assertEquals(2, simulation.numberOfLoopPaths());
+    }
+
+    /**
+     * options leading to unknown sections are counted as failures
+     */
+    @Test
+    void simulateBookWithInvalidGoTo() {
+        Book book = TestBookFactory.createBookWithInvalidGoTo();
+        PathSimulation simulation = PathSimulation.from(book).run();
+        assertEquals(0, simulation.numberOfSuccessfulPaths());
+        assertEquals(1, simulation.numberOfFailedPaths());
+    }
+
+    /**
+     * very long books must be simulated without exhausting the call stack
+     */
+    @Test
+    void simulateLongBook() {
+        Book book = TestBookFactory.createLongBook(100_000);
+        PathSimulation simulation = PathSimulation.from(book).run();
+        assertEquals(1, simulation.numberOfSuccessfulPaths());
+        assertEquals(0, simulation.numberOfFailedPaths());
+        assertEquals(99_998, simulation.numberOfLoopPaths());
+    }
+
+    /**
+     * counting a valid book with a single path
+     */
+    @Test
+    void countValidBook() {
+        Book book = TestBookFactory.createValidBook();
+        PathCounter counter = PathCounter.from(book).run();
+        assertEquals(BigInteger.ONE, counter.numberOfSuccessfulPaths());
+        assertEquals(BigInteger.ZERO, counter.numberOfFailedPaths());
+        assertEquals(BigInteger.ZERO, counter.numberOfLoopPaths());
+    }
+
+    /**
+     * the sections cycle is condensed and counted once as a loop
+     */
+    @Test
+    void countBookWithLoops() {
+        Book book = TestBookFactory.createBookWithConsequences();
+        PathCounter counter = PathCounter.from(book).run();
+        assertEquals(BigInteger.ONE, counter.numberOfSuccessfulPaths());
+        assertEquals(BigInteger.ZERO, counter.numberOfFailedPaths());
+        assertEquals(BigInteger.ONE, counter.numberOfLoopPaths());
+    }
+
+    /**
+     * shared sub paths are counted without being walked, beyond the int/long range
+     */
+    @Test
+    void countLayeredBook() {
+        Book book = TestBookFactory.createLayeredBook(2_500);
+        PathCounter counter = PathCounter.from(book).run();
+        assertEquals(BigInteger.TWO.pow(2_500), counter.numberOfSuccessfulPaths());
+        assertEquals(BigInteger.ZERO, counter.numberOfFailedPaths());
+        assertEquals(BigInteger.ZERO, counter.numberOfLoopPaths());
+    }
+
+    /**
+     * exploring the health states distinguishes the paths that run out of health
+     */
+    @Test
+    void exploreBookWithConsequences() {
+        Book book = TestBookFactory.createBookWithConsequences();
+        HealthExplorer explorer = HealthExplorer.from(book, 100).run();
+        assertEquals(BigInteger.TWO, explorer.numberOfSuccessfulPaths());
+        assertEquals(BigInteger.valueOf(3), explorer.numberOfFailedPaths());
+        assertEquals(BigInteger.ZERO, explorer.numberOfLoopPaths());
+        assertEquals(6, explorer.numberOfStates());
+    }
+
+    /**
+     * health gains are bounded by the cap, so cycles gaining health are detected as loops
+     */
+    @Test
+    void exploreLongBookWithHealthCap() {
+        Book book = TestBookFactory.createLongBook(1_000);
+        HealthExplorer explorer = HealthExplorer.from(book, 100).run();
+        assertTrue(explorer.numberOfStates() <= 1_000 * 100);
+        assertEquals(1, explorer.numberOfSuccessfulPaths().signum());
+        assertEquals(1, explorer.numberOfLoopPaths().signum());
+        assertEquals(BigInteger.ZERO, explorer.numberOfFailedPaths());
+    }
+
+    /**
+     * the health cap must be positive
+     */
+    @Test
+    void exploreWithInvalidHealthCap() {
+        Book book = TestBookFactory.createValidBook();
+        assertThrows(IllegalArgumentException.class, () -> HealthExplorer.from(book, 0));
+    }
+
+    /**
+     * enumerating every path, a section on the path is never repeated,
+     * and the rules are applied in the order of the (pruned) simulation
+     */
+    @Test
+    void simulateBookWithConsequencesInParallel() {
+        Book book = TestBookFactory.createBookWithConsequences();
+        ParallelPathSimulation simulation = ParallelPathSimulation.from(book, 4)
+                .run(ForkJoinPool.commonPool(), 1_000, Long.MAX_VALUE);
+        PathSimulation explored = PathSimulation.from(book).run();
+        assertFalse(simulation.isBudgetExhausted());
+        assertEquals(explored.numberOfSuccessfulPaths(), simulation.numberOfSuccessfulPaths());
+        assertEquals(explored.numberOfFailedPaths(), simulation.numberOfFailedPaths());
+        assertEquals(explored.numberOfLoopPaths(), simulation.numberOfLoopPaths());
+    }
+
+    /**
+     * the enumeration stops once the number of paths is exceeded
+     */
+    @Test
+    void parallelSimulationStopsOnBudget() {
+        Book book = TestBookFactory.createLayeredBook(24);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelPathSimulation simulation = ParallelPathSimulation.from(book, 8).run(pool, 10_000, Long.MAX_VALUE);
+            assertTrue(simulation.isBudgetExhausted());
+            assertTrue(simulation.numberOfSuccessfulPaths() >= 10_000);
+            assertTrue(simulation.numberOfSuccessfulPaths() < 1L << 24);
+
+            simulation = ParallelPathSimulation.from(book, 8).run(pool, Long.MAX_VALUE, 0);
+            assertTrue(simulation.isBudgetExhausted());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * the counters of all the split tasks are added up
+     */
+    @Test
+    void simulateLayeredBookInParallel() {
+        Book book = TestBookFactory.createLayeredBook(16);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelPathSimulation simulation = ParallelPathSimulation.from(book, 8).run(pool, 1L << 20, Long.MAX_VALUE);
+            assertFalse(simulation.isBudgetExhausted());
+            assertEquals(1L << 16, simulation.numberOfSuccessfulPaths());
+            assertEquals(0, simulation.numberOfFailedPaths());
+            assertEquals(0, simulation.numberOfLoopPaths());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * random games estimate the outcome rates, repeatably for the same seed
+     */
+    @Test
+    void sampleBookWithConsequences() {
+        Book book = TestBookFactory.createBookWithConsequences();
+        PathSampler sampler = PathSampler.from(book, 42).run(100_000, Long.MAX_VALUE);
+        assertEquals(100_000, sampler.numberOfSamples());
+        assertFalse(sampler.isBudgetExhausted());
+        assertEquals(100_000, sampler.numberOfSuccessfulPaths()
+                + sampler.numberOfFailedPaths() + sampler.numberOfLoopPaths());
+
+        OutcomeRate success = OutcomeRate.of(sampler.numberOfSuccessfulPaths(), sampler.numberOfSamples());
+        assertTrue(success.lower() < 0.25 && 0.25 < success.upper());
+        OutcomeRate failure = OutcomeRate.of(sampler.numberOfFailedPaths(), sampler.numberOfSamples());
+        assertTrue(failure.lower() < 0.5 && 0.5 < failure.upper());
+
+        PathSampler again = PathSampler.from(book, 42).run(100_000, Long.MAX_VALUE);
+        assertEquals(sampler.numberOfSuccessfulPaths(), again.numberOfSuccessfulPaths());
+        assertEquals(sampler.numberOfLoopPaths(), again.numberOfLoopPaths());
+    }
+
+    /**
+     * the sampling stops when the time budget is exhausted
+     */
+    @Test
+    void sampleWithTimeBudget() {
+        Book book = TestBookFactory.createLongBook(1_000);
+        PathSampler sampler = PathSampler.from(book, 7).run(Long.MAX_VALUE, 10_000_000L);
+        assertTrue(sampler.isBudgetExhausted());
+        assertTrue(sampler.numberOfSamples() > 0);
+    }
+
+    /**
+     * the content hash is stable and changes with the book content
+     */
+    @Test
+    void contentHashFollowsContent() {
+        Book book = TestBookFactory.createBookWithConsequences();
+        String hash = book.refreshContentHash();
+        assertEquals(64, hash.length());
+        assertEquals(hash, TestBookFactory.createBookWithConsequences().refreshContentHash());
+
+        book.getSections().getFirst().setText("changed");
+        assertNotEquals(hash, book.refreshContentHash());
+    }
+
+    /**
+     * cached results are reused for the same content version, dropped when the version
+     * changes, and the least recently used books are evicted
+     */
+    @Test
+    void cacheSimulationResults() {
+        SimulationCache cache = new SimulationCache(
+                new SimulationProperties(100, 0, 12, 1_000_000, Duration.ofSeconds(1), Duration.ofMinutes(1),
+                        1_000, Duration.ofSeconds(1), 2,
+                        1, 1, Duration.ofMinutes(1), 1));
+        AtomicInteger runs = new AtomicInteger();
+        Supplier<Integer> simulation = runs::incrementAndGet;
+
+        assertEquals(1, cache.get(1L, "v1", "count", simulation));
+        assertEquals(1, cache.get(1L, "v1", "count", simulation));
+        assertEquals(2, cache.get(1L, "v1", "explore", simulation));
+        assertEquals(3, cache.get(1L, "v2", "count", simulation));
+        assertEquals(4, cache.get(1L, "v2", "explore", simulation));
+
+        cache.get(2L, "v1", "count", simulation);
+        cache.get(1L, "v2", "count", simulation);
+        cache.get(3L, "v1", "count", simulation);
+        assertEquals(2, cache.size());
+        assertEquals(6, runs.get());
+        assertEquals(3, cache.get(1L, "v2", "count", simulation));
+        assertEquals(7, cache.get(2L, "v1", "count", simulation));
+    }
+
+    /**
+     * the progress reports end with the total number of sections explored
+     * (the begin section is not marked visited, as on GameSimulation: the option of section 2
+     * back to section 1 expands it once more, 10_000 expansions on 10_000 sections)
+     */
+    @Test
+    void simulationReportsProgress() {
+        Book book = TestBookFactory.createLongBook(10_000);
+        List<Long> reports = new ArrayList<>();
+        PathSimulation simulation = PathSimulation.from(book).run(reports::add);
+        assertFalse(reports.isEmpty());
+        assertEquals(simulation.numberOfNodesExplored(), reports.getLast());
+        assertEquals(10_000, simulation.numberOfNodesExplored());
+    }
+
+    /**
+     * a book with loops has a concrete cycle reported, and no other diagnostics
+     */
+    @Test
+    void analyzeBookWithLoops() {
+        GraphAnalysis analysis = GraphAnalysis.from(TestBookFactory.createBookWithConsequences()).run();
+        assertEquals(1, analysis.cycles().size());
+        List<Integer> cycle = analysis.cycles().getFirst();
+        assertTrue(cycle.size() >= 2);
+        assertTrue(List.of(10, 20, 30).containsAll(cycle));
+        assertTrue(analysis.unreachableSections().isEmpty());
+        assertTrue(analysis.deadEndSections().isEmpty());
+        assertTrue(analysis.sectionsWithoutEnd().isEmpty());
+    }
+
+    /**
+     * dead ends, unreachable sections and sections not leading to an END are reported
+     */
+    @Test
+    void analyzeBrokenBooks() {
+        GraphAnalysis analysis = GraphAnalysis.from(TestBookFactory.createBookWithNonEndWithoutOptions()).run();
+        assertTrue(analysis.cycles().isEmpty());
+        assertEquals(List.of(3), analysis.unreachableSections());
+        assertEquals(List.of(2), analysis.deadEndSections());
+        assertEquals(List.of(1, 2), analysis.sectionsWithoutEnd());
+
+        analysis = GraphAnalysis.from(TestBookFactory.createBookWithInvalidGoTo()).run();
+        assertEquals(List.of(2, 3), analysis.unreachableSections());
+        assertTrue(analysis.deadEndSections().isEmpty());
+        assertEquals(List.of(1, 2), analysis.sectionsWithoutEnd());
+    }
+
+    /**
+     * a very long book is analysed (iteratively) in linear time
+     */
+    @Test
+    void analyzeLongBook() {
+        GraphAnalysis analysis = GraphAnalysis.from(TestBookFactory.createLongBook(100_000)).run();
+        assertEquals(1, analysis.cycles().size());
+        assertTrue(analysis.unreachableSections().isEmpty());
+        assertTrue(analysis.sectionsWithoutEnd().isEmpty());
+    }
+
+    /**
+     * the compiled book maps the sections and options ids to the graph indexes, and keeps their texts
+     */
+    @Test
+    void compileBook() {
+        Book book = TestBookFactory.createBookWithConsequences();
+        int sectionId = 100;
+        long optionId = 1000;
+        for (Section section : book.getSections()) {
+            section.setId(sectionId++);
+            for (Option option : section.getOptions())
+                option.setId(optionId++);
+        }
+        CompiledBook compiled = CompiledBook.from(book);
+        assertEquals(book.getTitle(), compiled.title());
+        assertEquals(Book.Condition.OK, compiled.condition());
+        assertTrue(compiled.weight() > 0);
+        for (Section section : book.getSections()) {
+            int index = compiled.sectionIndex(section.getId());
+            assertEquals(section.getId(), compiled.sectionId(index));
+            assertEquals(section.getSectionNumber(), compiled.graph().sectionNumber(index));
+            assertEquals(section.getText(), compiled.sectionText(index));
+            for (Option option : section.getOptions()) {
+                int o = compiled.optionIndex(option.getId());
+                assertTrue(o >= compiled.graph().firstOption(index) && o < compiled.graph().endOption(index));
+                assertEquals(option.getDescription(), compiled.optionDescription(o));
+                assertEquals(option.getConsequence().getText(), compiled.consequenceText(o));
+            }
+        }
+        assertEquals(BookGraph.NO_SECTION, compiled.sectionIndex(99));
+        assertThrows(IllegalArgumentException.class,
+                () -> CompiledBook.from(TestBookFactory.createValidBook()));
+    }
+
+    /**
+     * a stored compiled book is mapped back with the same content, until deleted,
+     * and only while its content hash is the one of the book
+     */
+    @Test
+    void storeCompiledBook(@TempDir Path directory) {
+        Book book = storedBook();
+        CompiledBook compiled = CompiledBook.from(book);
+        CompiledBookStore store = new CompiledBookStore(directory);
+        assertTrue(store.open(7L, compiled.contentHash()).isEmpty());
+        store.write(compiled);
+        CompiledBook mapped = store.open(7L, compiled.contentHash()).orElseThrow();
+        assertEquals(compiled.contentHash(), mapped.contentHash());
+        assertEquals(compiled.title(), mapped.title());
+        assertEquals(compiled.condition(), mapped.condition());
+        assertEquals(compiled.beginIndex(), mapped.beginIndex());
+        assertEquals(compiled.optionCount(), mapped.optionCount());
+        for (int s = 0; s < compiled.sectionCount(); s++) {
+            assertEquals(s, mapped.sectionIndex(compiled.sectionId(s)));
+            assertEquals(compiled.sectionNumber(s), mapped.sectionNumber(s));
+            assertEquals(compiled.type(s), mapped.type(s));
+            assertEquals(compiled.sectionText(s), mapped.sectionText(s));
+            assertEquals(compiled.endOption(s), mapped.endOption(s));
+        }
+        for (int o = 0; o < compiled.optionCount(); o++) {
+            assertEquals(o, mapped.optionIndex(compiled.optionId(o)));
+            assertEquals(compiled.target(o), mapped.target(o));
+            assertEquals(compiled.delta(o), mapped.delta(o));
+            assertEquals(compiled.optionDescription(o), mapped.optionDescription(o));
+            assertEquals(compiled.consequenceText(o), mapped.consequenceText(o));
+        }
+        assertEquals(BookGraph.NO_SECTION, mapped.sectionIndex(99));
+        assertEquals(PathSimulation.from(book).run().numberOfSuccessfulPaths(),
+                new PathSimulation(mapped.graph()).run().numberOfSuccessfulPaths());
+        store.delete(7L);
+        assertTrue(store.open(7L, compiled.contentHash()).isEmpty());
+    }
+
+    /**
+     * a stored compiled book of another content (changed book, or ids reused after a database
+     * rebuild) is not mapped, and removed
+     */
+    @Test
+    void staleCompiledBookIsNotMapped(@TempDir Path directory) {
+        Book book = storedBook();
+        CompiledBookStore store = new CompiledBookStore(directory);
+        store.write(CompiledBook.from(book));
+
+        assertTrue(store.open(7L, null).isEmpty());
+        store.write(CompiledBook.from(book));
+        assertTrue(store.open(7L, "another content").isEmpty());
+        assertTrue(store.open(7L, book.getContentHash()).isEmpty());
+    }
+
+    /**
+     * book 7, with the ids and content hash of a persisted book
+     */
+    private static Book storedBook() {
+        Book book = TestBookFactory.createBookWithConsequences();
+        book.setId(7L);
+        int sectionId = 100;
+        long optionId = 1000;
+        for (Section section : book.getSections()) {
+            section.setId(sectionId++);
+            for (Option option : section.getOptions())
+                option.setId(optionId++);
+        }
+        book.refreshContentHash();
+        return book;
+    }
+}
@@ -4,8 +4,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 import prs.fmtareco.adventure.model.Book;
+import prs.fmtareco.adventure.model.BookValidator;
+import prs.fmtareco.adventure.model.Section;
+import prs.fmtareco.adventure.model.SectionText;
 import prs.fmtareco.adventure.support.TestBookFactory;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -54,5 +63,105 @@ public class BookValidationTest {
         assertFalse(book.isValid());
     }
 
+    @Test
+    void validBookHasNoViolations() {
+        BookValidator.Result result = BookValidator.validate(TestBookFactory.createValidBook());
+        assertTrue(result.isValid());
+        assertTrue(result.violations().isEmpty());
+    }
+
+    @Test
+    void invalidGotoViolationsReferenceSectionAndOption() {
+        Book book = TestBookFactory.createBookWithInvalidGoTo();
+        BookValidator.Result result = book.validate();
+        assertSame(Book.Condition.INVALID_GOTO, result.condition());
+        assertEquals(2, result.violations().size());
+        BookValidator.Violation first = result.violations().getFirst();
+        assertSame(Book.Condition.INVALID_GOTO, first.rule());
+        assertEquals(1, first.sectionNumber());
+        assertEquals(0, first.optionIndex());
+        assertEquals(result.violations(), book.getViolations());
+    }
+
+    @Test
+    void allViolationsAreReported() {
+        BookValidator.Result result = BookValidator.validate(TestBookFactory.createNoEndBook());
+        assertSame(Book.Condition.NO_END, result.condition());
+        assertEquals(
+                List.of(Book.Condition.NO_END, Book.Condition.INVALID_GOTO),
+                result.violations().stream().map(BookValidator.Violation::rule).toList());
+
+        result = BookValidator.validate(TestBookFactory.createMultipleBeginsBook());
+        assertSame(Book.Condition.INVALID_BEGIN, result.condition());
+        assertEquals(
+                List.of(10, 11),
+                result.violations().stream().map(BookValidator.Violation::sectionNumber).toList());
+    }
+
+    @Test
+    void sectionsAreFoundByNumber() {
+        Book book = TestBookFactory.createMultipleBeginsBook();
+        assertEquals(10, book.getInitialSection().orElseThrow().getSectionNumber());
+        assertEquals(Section.Type.NODE, book.getSectionNumber(20).orElseThrow().getType());
+        assertTrue(book.getSectionNumber(40).isEmpty());
+
+        book.addSection(Section.create(40, "Late Section", Section.Type.END));
+        assertEquals(40, book.getSectionNumber(40).orElseThrow().getSectionNumber());
+        assertTrue(Book.create("Sparse", "Bill Sparse", Book.Difficulty.EASY).getSectionNumber(1).isEmpty());
+    }
+
+    @Test
+    void sparseSectionsAreFoundByNumber() {
+        Book book = Book.create("Sparse", "Bill Sparse", Book.Difficulty.EASY);
+        book.addSection(Section.create(1, "Initial Section", Section.Type.BEGIN));
+        book.addSection(Section.create(1000, "Middle Section", Section.Type.NODE));
+        book.addSection(Section.create(1_000_000, "End Section", Section.Type.END));
+        book.addSection(Section.create(1000, "Duplicated Section", Section.Type.NODE));
+        assertEquals("Initial Section", book.getSectionNumber(1).orElseThrow().getText());
+        assertEquals("Middle Section", book.getSectionNumber(1000).orElseThrow().getText());
+        assertEquals("End Section", book.getSectionNumber(1_000_000).orElseThrow().getText());
+        for (int missing : new int[] { 0, 2, 999, 1001, 999_999, -1, Integer.MIN_VALUE, Integer.MAX_VALUE })
+            assertTrue(book.getSectionNumber(missing).isEmpty(), "section " + missing);
+
+        // enough random numbers to collide on the open addressing slots (found by probing)
+        int[] numbers = new Random(42).ints().distinct().limit(200).toArray();
+        Set<Integer> known = new HashSet<>();
+        Book many = Book.create("Many", "Bill Sparse", Book.Difficulty.EASY);
+        for (int number : numbers) {
+            many.addSection(Section.create(number, "Section " + number, Section.Type.NODE));
+            known.add(number);
+        }
+        for (int number : numbers) {
+            assertEquals("Section " + number, many.getSectionNumber(number).orElseThrow().getText());
+            if (!known.contains(number + 1))
+                assertTrue(many.getSectionNumber(number + 1).isEmpty());
+        }
+    }
 
+    @Test
+    void longSectionTextsAreCompressed() {
+        String text = "You walk down the long, dark corridor, ça va ✓. ".repeat(100);
+        SectionText stored = SectionText.of(text);
+        assertSame(SectionText.Codec.DEFLATE, stored.getCodec());
+        assertTrue(stored.getData().length < stored.getLength());
+        // read back from the stored form only (as loaded from the database), not the cached text
+        assertEquals(text, SectionText.text(stored.getCodec(), stored.getLength(), stored.getData()));
+
+        stored = SectionText.of("Short text");
+        assertSame(SectionText.Codec.PLAIN, stored.getCodec());
+        assertEquals("Short text", SectionText.text(stored.getCodec(), stored.getLength(), stored.getData()));
+        assertEquals(text, Section.create(1, text, Section.Type.BEGIN).getText());
+    }
+
+    @Test
+    void corruptedSectionTextsAreReported() {
+        SectionText stored = SectionText.of("You walk down the long, dark corridor. ".repeat(100));
+        byte[] truncated = Arrays.copyOf(stored.getData(), stored.getData().length / 2);
+        assertThrows(IllegalStateException.class,
+                () -> SectionText.text(stored.getCodec(), stored.getLength(), truncated));
+        byte[] garbage = new byte[stored.getData().length];
+        Arrays.fill(garbage, (byte) 0x7f);
+        assertThrows(IllegalStateException.class,
+                () -> SectionText.text(stored.getCodec(), stored.getLength(), garbage));
+    }
 }
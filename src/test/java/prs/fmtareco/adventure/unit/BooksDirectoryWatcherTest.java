@@ -0,0 +1,60 @@
+package prs.fmtareco.adventure.unit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+import prs.fmtareco.adventure.config.LoaderProperties;
+import prs.fmtareco.adventure.loader.BooksDirectoryWatcher;
+import prs.fmtareco.adventure.loader.BooksLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BooksDirectoryWatcherTest {
+
+    @Mock
+    BooksLoader booksLoader;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * a failed startup load doesn't stop the watcher, the files of the directory are still loaded
+     */
+    @Test
+    void filesAreLoadedAfterFailedStartupLoad() throws Exception {
+        Path file = Files.writeString(directory.resolve("new.json"), "[]");
+        BooksLoader.FileLoad load = new BooksLoader.FileLoad(file.toAbsolutePath().toString(), "hash",
+                false, 3, 0, 0, null);
+        when(booksLoader.progress()).thenReturn(new BooksLoader.Progress(BooksLoader.State.FAILED, 0, 0, 0, 0, 0, 0, 0));
+        when(booksLoader.loadFile(file)).thenReturn(load);
+
+        LoaderProperties props = new LoaderProperties(false, 500, false, 0, directory,
+                Duration.ofMillis(50), DataSize.ofMegabytes(32), 1000);
+        BooksDirectoryWatcher watcher = new BooksDirectoryWatcher(booksLoader, props);
+        watcher.onApplicationReady();
+        try {
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (!isLoaded(watcher.status("new.json")) && System.nanoTime() < deadline)
+                Thread.sleep(20);
+
+            BooksDirectoryWatcher.FileStatus status = watcher.status("new.json");
+            assertTrue(isLoaded(status));
+            assertEquals(load, status.load());
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    private static boolean isLoaded(BooksDirectoryWatcher.FileStatus status) {
+        return status != null && status.state() == BooksDirectoryWatcher.FileState.LOADED;
+    }
+}
@@ -0,0 +1,52 @@
+package prs.fmtareco.adventure.unit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.health.contributor.Status;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.util.unit.DataSize;
+import prs.fmtareco.adventure.config.LoaderProperties;
+import prs.fmtareco.adventure.loader.BookBulkLoader;
+import prs.fmtareco.adventure.loader.BookSourceManifest;
+import prs.fmtareco.adventure.loader.BooksLoader;
+import prs.fmtareco.adventure.loader.BooksLoaderHealthIndicator;
+import prs.fmtareco.adventure.loader.StreamingBookLoader;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BooksLoaderHealthTest {
+
+    @Mock
+    BookBulkLoader bulkLoader;
+
+    @Mock
+    BookSourceManifest manifest;
+
+    @Mock
+    StreamingBookLoader streamingLoader;
+
+    /**
+     * the books load is out of service until done, and down when it aborts
+     */
+    @Test
+    void abortedLoadIsDown() {
+        LoaderProperties props = new LoaderProperties(false, 500, false, 0, null,
+                Duration.ofSeconds(2), DataSize.ofMegabytes(32), 1000);
+        BooksLoader loader = new BooksLoader(null, bulkLoader, props, manifest, streamingLoader, null);
+        BooksLoaderHealthIndicator indicator = new BooksLoaderHealthIndicator(loader);
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+
+        when(manifest.fileHashes()).thenThrow(new DataAccessResourceFailureException("database down"));
+        loader.loadAllBooks();
+
+        assertEquals(BooksLoader.State.FAILED, loader.progress().state());
+        assertEquals(Status.DOWN, indicator.health().getStatus());
+        assertEquals(0, loader.progress().filesDone());
+    }
+}
@@ -4,13 +4,16 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
+import prs.fmtareco.adventure.exceptions.InvalidOptionException;
 import prs.fmtareco.adventure.model.Book;
 import prs.fmtareco.adventure.model.Consequence;
 import prs.fmtareco.adventure.model.Game;
+import prs.fmtareco.adventure.model.GameState;
+import prs.fmtareco.adventure.model.Option;
 import prs.fmtareco.adventure.model.Section;
 import prs.fmtareco.adventure.service.GameService;
+import prs.fmtareco.adventure.simulation.CompiledBook;
 import prs.fmtareco.adventure.support.TestBookFactory;
-import prs.fmtareco.adventure.support.TestGameFactory;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,20 +28,21 @@ public class GameValidationTest {
      */
     @Test
     void concludeSimpleGame() {
-        Book book = TestBookFactory.createValidBook();
-        Game game = TestGameFactory.createGame(book);
-        assertSame(Game.Status.STARTED, game.getStatus());
-        assertEquals(10, game.getHealth());
-        assertNotNull(game.getSection());
-
-        service.applyOption(game, 1);
-        assertEquals(Section.Type.NODE, game.getSection().getType());
-        assertEquals(2, game.getSection().getSectionNumber());
-
-        service.applyOption(game, 1);
-        assertEquals(Section.Type.END, game.getSection().getType());
-        assertEquals(30, game.getHealth());
-        assertEquals(3, game.getSection().getSectionNumber());
+        CompiledBook book = compile(TestBookFactory.createValidBook());
+        GameState game = start(book);
+        assertSame(Game.Status.STARTED, game.status());
+        assertEquals(10, game.health());
+        assertEquals(1, sectionNumber(book, game));
+
+        game = service.move(game, book, 1);
+        assertEquals(Section.Type.NODE, sectionType(book, game));
+        assertEquals(2, sectionNumber(book, game));
+
+        game = service.move(game, book, 1);
+        assertEquals(Section.Type.END, sectionType(book, game));
+        assertEquals(30, game.health());
+        assertEquals(3, sectionNumber(book, game));
+        assertSame(Game.Status.SUCCEEDED, game.status());
     }
 
     /**
@@ -46,21 +50,19 @@ public class GameValidationTest {
      */
     @Test
     public void restartSimpleGame() {
-        Book book = TestBookFactory.createValidBook();
-        Game game = TestGameFactory.createGame(book);
-        assertSame(Game.Status.STARTED, game.getStatus());
-        assertNotNull(game.getSection());
-        assertEquals(10, game.getHealth());
-
-        service.applyOption(game, 1);
-        assertEquals(Section.Type.NODE, game.getSection().getType());
-        assertEquals(2, game.getSection().getSectionNumber());
-        assertEquals(20, game.getHealth());
-
-        service.applyOption(game, 0);
-        assertEquals(Section.Type.BEGIN, game.getSection().getType());
-        assertEquals(1, game.getSection().getSectionNumber());
-        assertEquals(10, game.getHealth());
+        CompiledBook book = compile(TestBookFactory.createValidBook());
+        GameState game = start(book);
+
+        game = service.move(game, book, 1);
+        assertEquals(Section.Type.NODE, sectionType(book, game));
+        assertEquals(2, sectionNumber(book, game));
+        assertEquals(20, game.health());
+
+        game = service.move(game, book, 0);
+        assertEquals(Section.Type.BEGIN, sectionType(book, game));
+        assertEquals(1, sectionNumber(book, game));
+        assertEquals(10, game.health());
+        assertSame(Game.Status.RESTARTED, game.status());
     }
 
     /**
@@ -68,23 +70,20 @@ public class GameValidationTest {
      */
     @Test
     public void playGameGoodOptions() {
-        Book book = TestBookFactory.createBookWithConsequences();
-        Game game = TestGameFactory.createGame(book);
-        assertSame(Game.Status.STARTED, game.getStatus());
-        assertNotNull(game.getSection());
-        assertEquals(10, game.getSection().getSectionNumber());
-
-        service.applyOption(game, 1);
-        assertEquals(Section.Type.NODE, game.getSection().getType());
-        assertEquals(20, game.getSection().getSectionNumber());
-        assertEquals(17, game.getHealth());
-
-        service.applyOption(game, 1);
-        assertEquals(Section.Type.END, game.getSection().getType());
-        assertEquals(50, game.getSection().getSectionNumber());
-        assertEquals(24, game.getHealth());
-        assertSame(Game.Status.SUCCEEDED, game.getStatus());
-
+        CompiledBook book = compile(TestBookFactory.createBookWithConsequences());
+        GameState game = start(book);
+        assertEquals(10, sectionNumber(book, game));
+
+        game = service.move(game, book, 1);
+        assertEquals(Section.Type.NODE, sectionType(book, game));
+        assertEquals(20, sectionNumber(book, game));
+        assertEquals(17, game.health());
+
+        game = service.move(game, book, 1);
+        assertEquals(Section.Type.END, sectionType(book, game));
+        assertEquals(50, sectionNumber(book, game));
+        assertEquals(24, game.health());
+        assertSame(Game.Status.SUCCEEDED, game.status());
     }
 
     /**
@@ -92,53 +91,137 @@ public class GameValidationTest {
      */
     @Test
     public void playGameBadOptions() {
-        Book book = TestBookFactory.createBookWithConsequences();
-        Game game = TestGameFactory.createGame(book);
-        assertSame(Game.Status.STARTED, game.getStatus());
-        assertNotNull(game.getSection());
-        assertEquals(10, game.getSection().getSectionNumber());
-
-        service.applyOption(game, 2);
-        assertEquals(Section.Type.NODE, game.getSection().getType());
-        assertEquals(30, game.getSection().getSectionNumber());
-        assertEquals(3, game.getHealth());
-
-        service.applyOption(game, 1);
-        assertEquals(Section.Type.BEGIN, game.getSection().getType());
-        assertEquals(10, game.getSection().getSectionNumber());
-        assertEquals(-4, game.getHealth());
-        assertSame(Game.Status.FAILED, game.getStatus());
-
-        service.applyOption(game, 0);
-        assertEquals(Section.Type.BEGIN, game.getSection().getType());
-        assertEquals(10, game.getSection().getSectionNumber());
+        CompiledBook book = compile(TestBookFactory.createBookWithConsequences());
+        GameState game = start(book);
+        assertEquals(10, sectionNumber(book, game));
+
+        game = service.move(game, book, 2);
+        assertEquals(Section.Type.NODE, sectionType(book, game));
+        assertEquals(30, sectionNumber(book, game));
+        assertEquals(3, game.health());
+
+        game = service.move(game, book, 1);
+        assertEquals(Section.Type.BEGIN, sectionType(book, game));
+        assertEquals(10, sectionNumber(book, game));
+        assertEquals(-4, game.health());
+        assertSame(Game.Status.FAILED, game.status());
+
+        game = service.move(game, book, 0);
+        assertEquals(Section.Type.BEGIN, sectionType(book, game));
+        assertEquals(10, sectionNumber(book, game));
     }
 
     /**
-     * applies directly a series of consequences on an active game
+     * applies a series of consequences on a game
+     * (a consequence without a positive value leaves the health unchanged)
      */
     @Test
     public void applyConsequences() {
-        Book book = TestBookFactory.createBookWithConsequences();
-        Game game = TestGameFactory.createGame(book);
-        assertSame(Game.Status.STARTED, game.getStatus());
-        assertNotNull(game.getSection());
-        assertEquals(10, game.getSection().getSectionNumber());
-
-        Consequence csqDown = Consequence.create(
-                Consequence.Type.LOSE_HEALTH, 6, "Lose 6");
-        service.applyConsequence(game, csqDown);
-        assertEquals(4, game.getHealth());
-
-        Consequence csqUp = Consequence.create(
-                Consequence.Type.GAIN_HEALTH, 7, "Gain 7");
-        service.applyConsequence(game, csqUp);
-        assertEquals(11, game.getHealth());
-
-        Consequence csqEnd = Consequence.create(
-                Consequence.Type.LOSE_HEALTH, 17, "Lose 17");
-        service.applyConsequence(game, csqEnd);
-        assertEquals(-6, game.getHealth());
-        assertSame(Game.Status.FAILED, game.getStatus());
+        Book source = Book.create("The Consequences", "Tester", Book.Difficulty.EASY);
+        source.addSection(section(1, Section.Type.BEGIN,
+                option(2, Consequence.Type.LOSE_HEALTH, 6),
+                option(2, Consequence.Type.LOSE_HEALTH, -3)));
+        source.addSection(section(2, Section.Type.NODE, option(3, Consequence.Type.GAIN_HEALTH, 7)));
+        source.addSection(section(3, Section.Type.NODE, option(4, Consequence.Type.LOSE_HEALTH, 17)));
+        source.addSection(section(4, Section.Type.NODE, Option.create("Move to 5", 5)));
+        source.addSection(section(5, Section.Type.END));
+        CompiledBook book = compile(source);
+
+        assertEquals(10, service.move(start(book), book, 2).health());
+
+        GameState game = service.move(start(book), book, 1);
+        assertEquals(4, game.health());
+        game = service.move(game, book, 1);
+        assertEquals(11, game.health());
+        game = service.move(game, book, 1);
+        assertEquals(-6, game.health());
+        assertSame(Game.Status.FAILED, game.status());
+    }
+
+    /**
+     * an option out of the current section options is rejected, the game is left as before
+     */
+    @Test
+    public void invalidOptionIsRejected() {
+        CompiledBook book = compile(TestBookFactory.createValidBook());
+        GameState game = start(book);
+
+        assertThrows(InvalidOptionException.class, () -> service.move(game, book, 2));
+        assertThrows(InvalidOptionException.class, () -> service.move(game, book, -1));
+        assertEquals(start(book), game);
+    }
+
+    /**
+     * plays the basic flow on the game state (by ids), as the write-behind store does
+     */
+    @Test
+    public void moveOnCompiledBook() {
+        CompiledBook compiled = compile(TestBookFactory.createValidBook());
+        Integer begin = compiled.sectionId(compiled.beginIndex());
+        GameState game = new GameState(5L, 1L, begin, null, null, Game.INITIAL_HEALTH, Game.Status.STARTED, 0);
+
+        game = service.move(game, compiled, 1);
+        assertEquals(2, compiled.sectionNumber(compiled.sectionIndex(game.sectionId())));
+        assertEquals(begin, game.previousSectionId());
+        assertNotNull(game.optionId());
+        assertEquals(20, game.health());
+        assertSame(Game.Status.ACTIVE, game.status());
+
+        game = service.move(game, compiled, 1);
+        assertEquals(30, game.health());
+        assertSame(Game.Status.SUCCEEDED, game.status());
+        assertTrue(game.isFinished());
+
+        game = service.move(game, compiled, 0);
+        assertEquals(begin, game.sectionId());
+        assertEquals(Game.INITIAL_HEALTH, game.health());
+        assertSame(Game.Status.RESTARTED, game.status());
+        assertNull(game.optionId());
+        assertEquals(5L, game.id());
+        assertEquals(3, game.moves());
+    }
+
+    /**
+     * compiles a book, with ids set on the book, its sections and options (as when stored)
+     */
+    private static CompiledBook compile(Book book) {
+        book.setId(1L);
+        int sectionId = 100;
+        long optionId = 1000;
+        for (Section section : book.getSections()) {
+            section.setId(sectionId++);
+            for (Option option : section.getOptions())
+                option.setId(optionId++);
+        }
+        return CompiledBook.from(book);
+    }
+
+    /**
+     * a new game of the book, on its initial section
+     */
+    private static GameState start(CompiledBook book) {
+        return new GameState(5L, book.bookId(), book.sectionId(book.beginIndex()), null, null,
+                Game.INITIAL_HEALTH, Game.Status.STARTED, 0);
+    }
+
+    private static int sectionNumber(CompiledBook book, GameState game) {
+        return book.sectionNumber(book.sectionIndex(game.sectionId()));
+    }
+
+    private static Section.Type sectionType(CompiledBook book, GameState game) {
+        return book.type(book.sectionIndex(game.sectionId()));
+    }
+
+    private static Section section(int number, Section.Type type, Option... options) {
+        Section section = Section.create(number, "Section " + number, type);
+        for (Option option : options)
+            section.addOption(option);
+        return section;
+    }
+
+    private static Option option(int gotoNumber, Consequence.Type type, int value) {
+        Option option = Option.create("Move to " + gotoNumber + " (" + value + ")", gotoNumber);
+        option.setConsequence(Consequence.create(type, value, type + " " + value));
+        return option;
     }
-}
\ No newline at end of file
+}